@@ -1,6 +1,8 @@
 package com.example.chess_project_p2p_hybrid;
 
 
+import com.example.chess_project_p2p_hybrid.client.controller.MainController;
+import com.example.chess_project_p2p_hybrid.client.util.ClientSession;
 import com.example.chess_project_p2p_hybrid.client.util.SceneNavigator;
 import javafx.application.Application;
 import javafx.stage.Stage;
@@ -12,6 +14,13 @@ public class ChessApp extends Application {
         SceneNavigator.showLoginScene();
     }
 
+    @Override
+    public void stop() {
+        // Đóng cửa sổ: dừng engine (luồng tìm, bảng chuyển vị) nếu đã từng tạo
+        MainController controller = ClientSession.getInstance().getMainController();
+        if (controller != null) controller.shutdown();
+    }
+
     public static void main(String[] args) {
         launch();
     }
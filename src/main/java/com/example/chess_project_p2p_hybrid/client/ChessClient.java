@@ -2,10 +2,15 @@ package com.example.chess_project_p2p_hybrid.client;
 
 import com.example.chess_project_p2p_hybrid.client.connection.*;
 import com.example.chess_project_p2p_hybrid.client.util.ClientSession;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import javafx.application.Platform;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -15,7 +20,7 @@ import java.util.function.Consumer;
  */
 public class ChessClient {
     private final ServerConnection serverConnection;
-    private final DirectPeer directPeer;
+    private final PeerTransport directPeer;
     private final PeerFallbackManager fallbackManager;
     private final ClientSession session;
     
@@ -24,18 +29,44 @@ public class ChessClient {
     private String lastHost;
     private int lastPort;
 
+    // Resume token server cấp khi đăng nhập: kết nối lại trong thời gian ân hạn thì giữ nguyên phòng và ván đấu
+    private static final int MAX_RECONNECT_ATTEMPTS = 8;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 8000;
+    private volatile String resumeToken;
+    private volatile String resumeTokenOwner;
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+
+    // Token rendezvous của phòng hiện tại: dùng lại để đục lỗ sau khi một bên kết nối lại Server
+    private volatile String punchToken;
+    private volatile int rendezvousPort;
+
     public ChessClient(ClientSession session) {
         this.session = session;
         
         // Khởi tạo các thành phần
         // Lưu ý: Host/Port server nên lấy từ config, tạm thời hardcode hoặc truyền vào sau
         this.serverConnection = new ServerConnection("localhost", 9999); 
-        this.directPeer = new DirectPeer();
+        this.directPeer = createPeerTransport();
         this.fallbackManager = new PeerFallbackManager(serverConnection, directPeer);
+        // -Dchess.p2p.race=true: gửi nước đi qua cả P2P và Relay, lấy bản tới trước
+        this.fallbackManager.setRacing(Boolean.getBoolean("chess.p2p.race"));
+        this.fallbackManager.setPathStatsListener(this::showPathStats);
+        this.fallbackManager.startProbing();
         
         setupHandlers();
     }
     
+    /**
+     * Kênh P2P theo thuộc tính hệ thống chess.p2p.transport: "udp" dùng UdpPeer (chịu mất gói tốt hơn),
+     * mặc định là DirectPeer qua TCP. Hai người chơi phải dùng cùng một loại, nếu không sẽ chỉ đi qua Relay.
+     */
+    private static PeerTransport createPeerTransport() {
+        if ("udp".equalsIgnoreCase(System.getProperty("chess.p2p.transport"))) {
+            return new UdpPeer();
+        }
+        return new DirectPeer();
+    }
+
     public void setStatusCallback(Consumer<String> callback) {
         this.statusCallback = callback;
         this.fallbackManager.setStatusCallback(callback);
@@ -59,45 +90,71 @@ public class ChessClient {
 
         // Xử lý tin nhắn từ P2P
         directPeer.setOnMessageReceived(this::handleP2PMessage);
-        directPeer.setOnDisconnect(() -> updateStatus("Mất kết nối P2P! Chuyển sang chế độ Relay."));
-        directPeer.setOnConnectionEstablished(this::sendHandshake);
+        directPeer.setOnDisconnect(() -> {
+            updateStatus("Mất kết nối P2P! Chuyển sang chế độ Relay.");
+            fallbackManager.onPathChanged();
+        });
+        directPeer.setOnConnectionEstablished(() -> {
+            sendHandshake();
+            fallbackManager.onPathChanged();
+        });
+        if (directPeer instanceof UdpPeer udpPeer) {
+            udpPeer.setOnPunchResult(this::reportPunchResult);
+        }
     }
 
     public void connectToServer(String host, int port, String playerName) {
         new Thread(() -> {
             try {
-                updateStatus("Đang kết nối Server...");
-                this.lastHost = host;
-                this.lastPort = port;
-                
-                // Re-init peer nếu cần đổi host/port
-                // Ở đây giả sử dùng peer đã tạo
-                serverConnection.connect(host, port);
-                
-                // Đăng nhập & Gửi port P2P
-                JsonObject loginPayload = new JsonObject();
-                loginPayload.addProperty("event", "login");
-                loginPayload.addProperty("name", playerName);
-                loginPayload.addProperty("p2p_port", directPeer.getListeningPort());
-                
-                serverConnection.send(new Message(playerName, "server", MessageType.LOGIN, loginPayload.toString()));
-                
-                session.setPlayerName(playerName);
-
-                updateStatus("Đã kết nối Server.");
-                
+                login(host, port, playerName);
             } catch (Exception e) {
                 updateStatus("Lỗi kết nối Server: " + e.getMessage());
             }
         }).start();
     }
 
+    private void login(String host, int port, String playerName) throws IOException {
+        updateStatus("Đang kết nối Server...");
+        this.lastHost = host;
+        this.lastPort = port;
+        
+        // Re-init peer nếu cần đổi host/port
+        // Ở đây giả sử dùng peer đã tạo
+        serverConnection.connect(host, port);
+        
+        // Đăng nhập & Gửi port P2P
+        JsonObject loginPayload = new JsonObject();
+        loginPayload.addProperty("event", "login");
+        loginPayload.addProperty("name", playerName);
+        loginPayload.addProperty("p2p_port", directPeer.getListeningPort());
+        JsonArray candidates = new JsonArray();
+        DirectPeer.localAddresses().forEach(candidates::add);
+        loginPayload.add("p2p_candidates", candidates);
+        // Cùng người chơi: xin khôi phục phiên cũ (server bỏ qua nếu token đã hết hạn)
+        String token = resumeToken;
+        if (token != null && playerName.equals(resumeTokenOwner)) {
+            loginPayload.addProperty("resumeToken", token);
+        }
+        
+        serverConnection.queue(new Message(playerName, "server", MessageType.LOGIN, loginPayload.toString()));
+        
+        session.setPlayerName(playerName);
+        // Nối lại server khi P2P không có: nước chưa ACK đi qua Relay, chung một lần ghi với LOGIN (onPathChanged() flush)
+        fallbackManager.onPathChanged();
+
+        updateStatus("Đã kết nối Server.");
+    }
+
     public void send(Message message) {
         fallbackManager.send(message);
     }
     
     // Xử lý tin nhắn đến từ Server (System, PeerInfo, Relay Move)
     private void handleServerMessage(Message msg) {
+        if (msg.getType() == MessageType.SYSTEM) {
+            rememberResumeToken(msg);
+            if (msg.getContent() != null && msg.getContent().contains("opponent_resumed")) punchThroughNat();
+        }
         MessageHandler handler = session.getMessageHandler();
         if (handler == null) return;
 
@@ -107,12 +164,16 @@ public class ChessClient {
             case MOVE -> {
                 // Nhận Move qua đường Relay (Server)
                 System.out.println("[Client] Received RELAYED MOVE");
-                handler.onMove(msg);
+                fallbackManager.receive(msg, handler::onMove);
             }
+            case ACK -> fallbackManager.onAck(msg);
+            case PING -> fallbackManager.onPing(msg, false);
+            case PONG -> fallbackManager.onPong(msg, false);
             case CHAT -> handler.onChat(msg);
             case ERROR -> handler.onError(msg);
             default -> {}
         }
+        recycleIfControl(msg);
     }
 
     // Xử lý tin nhắn đến từ P2P (Move, Chat trực tiếp)
@@ -123,12 +184,38 @@ public class ChessClient {
         switch (msg.getType()) {
             case MOVE -> {
                 System.out.println("[Client] Received P2P MOVE");
-                handler.onMove(msg);
+                fallbackManager.receive(msg, handler::onMove);
             }
+            case ACK -> fallbackManager.onAck(msg);
+            case PING -> fallbackManager.onPing(msg, true);
+            case PONG -> fallbackManager.onPong(msg, true);
             case CHAT -> handler.onChat(msg);
             case SYSTEM -> handler.onSystem(msg);
             default -> {}
         }
+        recycleIfControl(msg);
+    }
+
+    // PING/PONG/ACK chỉ dùng trong lúc xử lý, không ai giữ lại: trả về bể cho vòng đọc
+    private static void recycleIfControl(Message msg) {
+        MessageType type = msg.getType();
+        if (type == MessageType.ACK || type == MessageType.PING || type == MessageType.PONG) msg.recycle();
+    }
+
+    private void rememberResumeToken(Message msg) {
+        if (msg.getContent() == null || !msg.getContent().contains("resumeToken")) return;
+        try {
+            JsonObject json = JsonParser.parseString(msg.getContent()).getAsJsonObject();
+            if (!json.has("resumeToken")) return;
+            resumeToken = json.get("resumeToken").getAsString();
+            resumeTokenOwner = msg.getTo();
+            if (json.has("resumed") && json.get("resumed").getAsBoolean()) {
+                updateStatus("Đã kết nối lại Server, tiếp tục ván đấu.");
+                punchThroughNat();
+            }
+        } catch (Exception e) {
+            System.err.println("[Client] Invalid login response: " + e.getMessage());
+        }
     }
 
     private void handlePeerInfo(Message msg) {
@@ -139,16 +226,50 @@ public class ChessClient {
             boolean isHost = json.get("isHost").getAsBoolean();
             
             updateStatus("Tìm thấy đối thủ: " + host + ":" + port);
+            fallbackManager.startNewGame();
             
-            // Server chỉ định ai là người chủ động kết nối
-            if (isHost) {
-                directPeer.connect(host, port);
+            // Cả hai bên cùng đua kết nối tới mọi địa chỉ ứng viên; server chỉ định host là bên chọn socket thắng
+            List<String> candidates = new ArrayList<>();
+            if (json.has("candidates")) {
+                json.getAsJsonArray("candidates").forEach(e -> candidates.add(e.getAsString()));
+            } else {
+                candidates.add(host);
             }
+            directPeer.connect(candidates, port, isHost);
+            // UDP: cả hai bên cùng đục lỗ NAT qua rendezvous của server
+            punchToken = json.has("punchToken") ? json.get("punchToken").getAsString() : null;
+            if (punchToken != null) rendezvousPort = json.get("rendezvousPort").getAsInt();
+            punchThroughNat();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
+    // Đục lỗ NAT qua rendezvous nếu đang dùng UDP và chưa có đường P2P
+    private void punchThroughNat() {
+        String token = punchToken;
+        if (directPeer instanceof UdpPeer udpPeer && token != null && lastHost != null && !udpPeer.isConnected()) {
+            udpPeer.punch(lastHost, rendezvousPort, token);
+        }
+    }
+
+    private void showPathStats(PeerFallbackManager.PathStats stats) {
+        if (session.getMainController() != null) {
+            Platform.runLater(() -> session.getMainController().showPathStats(stats));
+        }
+    }
+
+    public PeerFallbackManager.PathStats getPathStats() {
+        return fallbackManager.pathStats();
+    }
+
+    private void reportPunchResult(boolean success) {
+        JsonObject json = new JsonObject();
+        json.addProperty("event", "punch_result");
+        json.addProperty("success", success);
+        serverConnection.send(new Message(session.getPlayerName(), "server", MessageType.SYSTEM, json.toString()));
+    }
+
     private void sendHandshake() {
         JsonObject json = new JsonObject();
         json.addProperty("event", "handshake");
@@ -161,13 +282,36 @@ public class ChessClient {
     }
 
     public void shutdown() {
+        fallbackManager.shutdown();
         serverConnection.close();
         directPeer.shutdown();
     }
 
+    /**
+     * Kết nối lại Server sau khi rớt mạng, thử lại với thời gian chờ tăng dần.
+     * Có resume token thì server trả lại đúng phòng và các tin bị lỡ, ván đấu không bị kết thúc.
+     */
     public void reconnect() {
-        if (lastHost != null && !lastHost.isEmpty()) {
-            connectToServer(lastHost, lastPort, session.getPlayerName());
-        }
+        if (lastHost == null || lastHost.isEmpty() || !reconnecting.compareAndSet(false, true)) return;
+        new Thread(() -> {
+            try {
+                long delay = 500;
+                for (int attempt = 1; attempt <= MAX_RECONNECT_ATTEMPTS; attempt++) {
+                    try {
+                        login(lastHost, lastPort, session.getPlayerName());
+                        return;
+                    } catch (IOException e) {
+                        updateStatus("Kết nối lại thất bại (lần " + attempt + "), thử lại sau " + delay + " ms...");
+                    }
+                    Thread.sleep(delay);
+                    delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+                }
+                updateStatus("Không thể kết nối lại Server.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                reconnecting.set(false);
+            }
+        }, "server-reconnect").start();
     }
 }
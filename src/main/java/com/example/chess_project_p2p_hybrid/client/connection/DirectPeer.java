@@ -1,13 +1,35 @@
 package com.example.chess_project_p2p_hybrid.client.connection;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -17,29 +39,103 @@ import java.util.function.Consumer;
  * - Low latency (TCP NoDelay).
  * - Dùng để gửi MOVE và CHAT.
  * - Tự động đóng vai trò Server (lắng nghe) hoặc Client (kết nối) tùy ngữ cảnh.
+ * - NIO: một luồng selector duy nhất lo accept / connect / đọc / ghi, không luồng nào bị chặn.
+ *   send() chỉ xếp frame vào hàng đợi rồi đánh thức selector, nên nước đi không bao giờ phải chờ
+ *   một lần connect hay close đang dở. Callback chạy trên callbackExecutor (tuần tự, giữ thứ tự tin nhắn).
+ * - Happy eyeballs: connect() nhiều ứng viên thử lần lượt cách nhau ATTEMPT_DELAY (không chờ lần trước thất bại),
+ *   mỗi lần có hạn ATTEMPT_TIMEOUT. Cả hai bên cùng đua nên có thể nối được nhiều socket; bên quyết định (host)
+ *   giữ socket xong đầu tiên và gửi dòng SELECT trên đó, bên kia giữ mọi socket làm ứng viên tới khi nhận SELECT.
+ * - Ghi theo lô: mọi frame đã queue() tới lúc flush() được mã hóa UTF-8 vào một buffer dùng lại (FrameEncoder)
+ *   và đi trong một lần write, nên một loạt tin gửi dồn chỉ tốn một syscall. send() là queue() + flush().
  */
-public class DirectPeer {
-    private ServerSocket serverSocket; // Để lắng nghe kết nối đến
-    private Socket activeSocket;       // Socket đang hoạt động (dù là accept hay connect)
-    private PrintWriter out;
-    private BufferedReader in;
+public class DirectPeer implements PeerTransport {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // Một lô ghi dừng gom khi vượt ngưỡng này, phần còn lại đi ở lô sau
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+    private static final long ATTEMPT_DELAY_NANOS = 100_000_000L;
+    private static final long ATTEMPT_TIMEOUT_NANOS = 1_500_000_000L;
+    // Socket đã nối nhưng bên quyết định chưa chọn: quá hạn thì đóng
+    private static final long CANDIDATE_TIMEOUT_NANOS = 5_000_000_000L;
+    private static final int MAX_SELECT_LINE = 256;
+    private static final String SELECT_CONTENT = "{\"event\":\"p2p_select\"}";
+    private static final String SELECT_TEXT = new Message("peer", "peer", MessageType.SYSTEM, SELECT_CONTENT).toJson();
+    private static final byte[] SELECT_LINE = (SELECT_TEXT + "\n").getBytes(StandardCharsets.UTF_8);
+
+    private final Selector selector;
+    private ServerSocketChannel serverChannel; // Để lắng nghe kết nối đến
+    private SocketChannel activeChannel;       // Kết nối đang hoạt động (dù là accept hay connect), chỉ luồng selector đụng tới
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE); // Dòng đầu của ứng viên
+    private final FrameReader reader = new FrameReader();                         // Kết nối hoạt động
+
+    // Việc cần làm trên luồng selector (connect, close) và frame chờ ghi
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<String> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Lô đang ghi dở (null khi đã ghi hết), chỉ luồng selector đụng tới
+    private final FrameEncoder encoder = new FrameEncoder(READ_BUFFER_SIZE, true);
+    private ByteBuffer pendingWrite;
+    private volatile long writes;
+
+    // Happy eyeballs, chỉ luồng selector đụng tới
+    private boolean decider;                                             // Bên chọn socket thắng (bên gọi connect)
+    private boolean racing;                                              // Bên quyết định đang đua, chưa có kết quả
+    private final ArrayDeque<InetSocketAddress> pendingCandidates = new ArrayDeque<>();
+    private long nextAttemptAt;
+    private final Map<SocketChannel, Long> attempts = new HashMap<>();  // Đang connect -> hạn (nanoTime)
+
+    // Socket đã nối, chờ SELECT: hạn chờ và phần dòng đọc được
+    private static final class Candidate {
+        final long deadline;
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        Candidate(long deadline) {
+            this.deadline = deadline;
+        }
+    }
 
     private int listeningPort;
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
+    private volatile boolean running = true;
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private Consumer<Message> onMessageReceived;
-    private Consumer<String> onStatusUpdate;
-    private Runnable onDisconnect;
-    private Runnable onConnectionEstablished;
+    private final Executor callbackExecutor;
+    // Chỉ khác null khi tự tạo executor (để shutdown() dọn)
+    private final ExecutorService ownedExecutor;
+    private volatile Consumer<Message> onMessageReceived;
+    private volatile Consumer<String> onStatusUpdate;
+    private volatile Runnable onDisconnect;
+    private volatile Runnable onConnectionEstablished;
 
     public DirectPeer() {
         this(0); // Default to random port
     }
 
     public DirectPeer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * @param callbackExecutor nơi chạy callback; phải tuần tự để giữ thứ tự tin nhắn
+     *                         (null: dùng một luồng riêng của DirectPeer)
+     */
+    public DirectPeer(int port, Executor callbackExecutor) {
         this.listeningPort = port;
+        if (callbackExecutor == null) {
+            ownedExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "direct-peer-callback"));
+            this.callbackExecutor = ownedExecutor;
+        } else {
+            ownedExecutor = null;
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        Selector opened;
+        try {
+            opened = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open selector", e);
+        }
+        this.selector = opened;
         startListening();
+        daemon(this::selectLoop, "direct-peer-selector").start();
     }
 
     /**
@@ -48,163 +144,511 @@ public class DirectPeer {
     private void startListening() {
         try {
             // Nếu listeningPort được set (khác 0) từ constructor thì dùng nó
-            // Nếu là 0 thì ServerSocket sẽ tự chọn port
-            serverSocket = new ServerSocket(listeningPort); 
+            // Nếu là 0 thì hệ điều hành sẽ tự chọn port
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(listeningPort));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
             if (listeningPort == 0) {
-                listeningPort = serverSocket.getLocalPort();
-            }
-            // log("Listening for P2P on port: " + listeningPort);
-
-            executor.submit(() -> {
-                while (!Thread.currentThread().isInterrupted() && serverSocket != null && !serverSocket.isClosed()) {
-                    try {
-                        Socket client = serverSocket.accept();
-                        handleConnection(client);
-                        // Trong mô hình 1-1, sau khi accept 1 người thì có thể dừng accept thêm nếu muốn
-                        // Nhưng để đơn giản, ta cứ để nó chạy, logic handleConnection sẽ lo việc check
-                    } catch (IOException e) {
-                        if (!serverSocket.isClosed()) log("Accept error: " + e.getMessage());
-                    }
-                }
-            });
+                listeningPort = serverChannel.socket().getLocalPort();
+            }
         } catch (IOException e) {
             log("Failed to start listening: " + e.getMessage());
         }
     }
 
     /**
-     * Chủ động kết nối tới đối thủ (khi nhận được PEER_INFO từ Server).
+     * Chủ động kết nối tới đối thủ (khi nhận được PEER_INFO từ Server). Không chặn luồng gọi.
      */
+    @Override
     public void connect(String host, int port) {
-        executor.submit(() -> {
-            try {
-                log("Connecting to P2P peer at " + host + ":" + port);
-                Socket socket = new Socket(host, port);
-                handleConnection(socket);
-            } catch (IOException e) {
-                log("Failed to connect to peer: " + e.getMessage());
-                if (onStatusUpdate != null) onStatusUpdate.accept("P2P Connect Failed: " + e.getMessage());
-            }
-        });
+        connect(List.of(host), port, true);
     }
 
     /**
-     * Thiết lập luồng đọc/ghi cho socket (dùng chung cho cả chiều In và Out).
+     * Đua kết nối tới mọi ứng viên (thứ tự ưu tiên), giữ socket xong đầu tiên. Không chặn luồng gọi.
+     *
+     * @param decider true ở đúng một bên (host): bên này chọn socket thắng và báo cho bên kia
      */
-    private synchronized void handleConnection(Socket socket) {
-        if (isConnected) {
-            log("Already connected. Ignoring new connection.");
-            try {
-                socket.close();
-            } catch (IOException e) {
+    @Override
+    public void connect(List<String> hosts, int port, boolean decider) {
+        // Phân giải tên có thể chặn nên làm trên luồng ảo, selector chỉ nhận địa chỉ đã phân giải
+        Thread.startVirtualThread(() -> {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (String host : hosts) {
+                InetSocketAddress address = new InetSocketAddress(host, port);
+                if (address.isUnresolved()) {
+                    log("Unknown host " + host);
+                } else if (!addresses.contains(address)) {
+                    addresses.add(address);
+                }
             }
+            runOnSelector(() -> startRace(addresses, decider));
+        });
+    }
+
+    private void startRace(List<InetSocketAddress> addresses, boolean decider) {
+        this.decider = decider;
+        if (activeChannel != null) return;
+        // Đối thủ đã nối tới trước khi biết vai trò: bên quyết định chọn luôn
+        if (decider && selectWaitingCandidate()) return;
+        if (addresses.isEmpty()) {
+            if (decider) connectFailed("No candidate address");
             return;
         }
+        log("Racing connections to " + addresses);
+        pendingCandidates.clear();
+        pendingCandidates.addAll(addresses);
+        racing = decider;
+        nextAttemptAt = System.nanoTime();
+        runTimers(nextAttemptAt);
+    }
 
+    private void startAttempt(InetSocketAddress address, long now) {
+        SocketChannel channel = null;
         try {
-            this.activeSocket = socket;
-            this.activeSocket.setTcpNoDelay(true); // Quan trọng cho game realtime
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (channel.connect(address)) {
+                connected(channel);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT);
+                attempts.put(channel, now + ATTEMPT_TIMEOUT_NANOS);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            log("Connect to " + address + " failed: " + e.getMessage());
+            // Thất bại ngay thì thử ứng viên tiếp theo không chờ
+            nextAttemptAt = now;
+        }
+    }
 
-            this.out = new PrintWriter(socket.getOutputStream(), true);
-            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    // Bắt đầu lần connect tới hạn, bỏ lần connect / ứng viên quá hạn. Trả về thời gian chờ tới mốc kế tiếp (ms, 0 = không có)
+    private long runTimers(long now) {
+        if (activeChannel != null) return 0;
+        while (!pendingCandidates.isEmpty() && now >= nextAttemptAt) {
+            nextAttemptAt = now + ATTEMPT_DELAY_NANOS;
+            startAttempt(pendingCandidates.poll(), now);
+            if (activeChannel != null) return 0;
+        }
+        long next = pendingCandidates.isEmpty() ? Long.MAX_VALUE : nextAttemptAt;
 
-            this.isConnected = true;
-            log("P2P Connection Established!");
+        Iterator<Map.Entry<SocketChannel, Long>> it = attempts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<SocketChannel, Long> attempt = it.next();
+            if (now >= attempt.getValue()) {
+                log("Connect attempt timed out: " + attempt.getKey());
+                closeQuietly(attempt.getKey());
+                it.remove();
+            } else {
+                next = Math.min(next, attempt.getValue());
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Candidate candidate)) continue;
+            if (now >= candidate.deadline) {
+                closeQuietly(key.channel());
+            } else {
+                next = Math.min(next, candidate.deadline);
+            }
+        }
+        if (racing && attempts.isEmpty() && pendingCandidates.isEmpty()) {
+            racing = false;
+            connectFailed("All candidate addresses failed");
+        }
+        return next == Long.MAX_VALUE ? 0 : Math.max(1, (next - now + 999_999) / 1_000_000);
+    }
+
+    private void connectFailed(String reason) {
+        log("Failed to connect to peer: " + reason);
+        Consumer<String> status = onStatusUpdate;
+        if (status != null) callbackExecutor.execute(() -> status.accept("P2P Connect Failed: " + reason));
+    }
+
+    private void selectLoop() {
+        try {
+            long timeout = 0;
+            while (running) {
+                selector.select(timeout);
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
 
-            if (onStatusUpdate != null) onStatusUpdate.accept("Kết nối trực tiếp (P2P) thành công!");
-            if (onConnectionEstablished != null) onConnectionEstablished.run();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isConnectable()) finishConnect(key);
+                    else if (key.attachment() instanceof Candidate candidate) readCandidate(key, candidate);
+                    else {
+                        if (key.isReadable()) read();
+                        if (key.isValid() && key.isWritable()) writeOutbound();
+                    }
+                }
+                // Hạ cờ trước khi gom: frame queue() sau lúc này sẽ được flush() đánh thức lại
+                if (flushRequested.getAndSet(false)) writeOutbound();
+                timeout = runTimers(System.nanoTime());
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) log("Selector error: " + e.getMessage());
+        } finally {
+            closeActive();
+            // Các lần connect còn dở và port lắng nghe
+            for (SelectionKey key : selector.keys()) closeQuietly(key.channel());
+            closeQuietly(serverChannel);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            // Sau closeActive() để callback onDisconnect cuối cùng vẫn chạy
+            if (ownedExecutor != null) ownedExecutor.shutdown();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) return;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected(channel);
+        } catch (IOException e) {
+            log("Accept error: " + e.getMessage());
+        }
+    }
 
-            // Bắt đầu đọc tin nhắn
-            executor.submit(this::readLoop);
+    private void finishConnect(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            if (channel.finishConnect()) {
+                attempts.remove(channel);
+                key.interestOps(0);
+                connected(channel);
+            }
+        } catch (IOException e) {
+            attempts.remove(channel);
+            key.cancel();
+            closeQuietly(channel);
+            log("Connect attempt failed: " + e.getMessage());
+            // Lần này hỏng thì thử ứng viên tiếp theo ngay
+            nextAttemptAt = System.nanoTime();
+        }
+    }
 
+    /**
+     * Một socket (chiều In hoặc Out) vừa nối xong. Bên quyết định lấy luôn làm kết nối hoạt động,
+     * bên kia giữ làm ứng viên chờ SELECT. Chạy trên luồng selector.
+     */
+    private void connected(SocketChannel channel) {
+        if (activeChannel != null) {
+            log("Already connected. Ignoring new connection.");
+            closeQuietly(channel);
+            return;
+        }
+        try {
+            if (decider) {
+                channel.register(selector, SelectionKey.OP_READ);
+                establish(channel, true);
+            } else {
+                channel.register(selector, SelectionKey.OP_READ, new Candidate(System.nanoTime() + CANDIDATE_TIMEOUT_NANOS));
+            }
         } catch (IOException e) {
             log("Stream setup error: " + e.getMessage());
-            close();
+            closeQuietly(channel);
         }
     }
 
-    private void readLoop() {
+    private boolean selectWaitingCandidate() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Candidate) {
+                key.attach(null);
+                establish((SocketChannel) key.channel(), true);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Đọc dòng đầu tiên của ứng viên: SELECT thì nhận socket này, phần còn lại là tin nhắn bình thường
+    private void readCandidate(SelectionKey key, Candidate candidate) {
+        SocketChannel channel = (SocketChannel) key.channel();
         try {
-            String line;
-            while (isConnected && in != null && (line = in.readLine()) != null) {
-                try {
-                    Message msg = Message.fromJson(line);
-                    if (onMessageReceived != null) {
-                        onMessageReceived.accept(msg);
-                    }
-                } catch (Exception e) {
-                    log("Parse error: " + e.getMessage());
-                }
+            readBuffer.clear();
+            if (channel.read(readBuffer) < 0) {
+                closeQuietly(channel);
+                return;
             }
         } catch (IOException e) {
-            log("Connection lost: " + e.getMessage());
-        } finally {
-            close();
+            closeQuietly(channel);
+            return;
+        }
+        readBuffer.flip();
+        byte[] array = readBuffer.array();
+        int limit = readBuffer.limit();
+        for (int i = 0; i < limit; i++) {
+            if (array[i] != '\n') continue;
+            candidate.line.write(array, 0, i + 1);
+            if (!Arrays.equals(candidate.line.toByteArray(), SELECT_LINE)) {
+                log("Unexpected first line from peer, dropping connection");
+                closeQuietly(channel);
+                return;
+            }
+            key.attach(null);
+            establish(channel, false);
+            reader.append(array, i + 1, limit - i - 1);
+            deliverFrames();
+            readBuffer.clear();
+            return;
         }
+        candidate.line.write(array, 0, limit);
+        readBuffer.clear();
+        if (candidate.line.size() > MAX_SELECT_LINE) closeQuietly(channel);
     }
 
-    public synchronized boolean send(Message message) {
-        if (!isConnected || out == null) return false;
+    /**
+     * Nhận socket làm kết nối hoạt động, đóng mọi lần connect và ứng viên còn lại. Chạy trên luồng selector.
+     *
+     * @param sendSelect bên quyết định báo cho đối thủ socket được chọn (trước mọi tin nhắn khác)
+     */
+    private void establish(SocketChannel channel, boolean sendSelect) {
+        activeChannel = channel;
+        racing = false;
+        for (SocketChannel attempt : attempts.keySet()) closeQuietly(attempt);
+        attempts.clear();
+        pendingCandidates.clear();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Candidate) closeQuietly(key.channel());
+        }
+        reader.clear();
+        outbound.clear();
+        pendingWrite = null;
+        if (sendSelect) outbound.add(SELECT_TEXT);
+        isConnected = true;
+        if (sendSelect) writeOutbound();
         try {
-            out.println(message.toJson());
-            return true;
-        } catch (Exception e) {
-            log("Send error: " + e.getMessage());
-            close();
-            return false;
+            log("P2P Connection Established with " + channel.getRemoteAddress());
+        } catch (IOException e) {
+            log("P2P Connection Established!");
         }
+
+        Consumer<String> status = onStatusUpdate;
+        Runnable established = onConnectionEstablished;
+        callbackExecutor.execute(() -> {
+            if (status != null) status.accept("Kết nối trực tiếp (P2P) thành công!");
+            if (established != null) established.run();
+        });
     }
 
-    public synchronized void close() {
-        isConnected = false;
+    private void read() {
+        int n;
         try {
-            if (activeSocket != null) activeSocket.close();
-            if (in != null) in.close();
-            if (out != null) out.close();
+            n = reader.read(activeChannel);
         } catch (IOException e) {
+            log("Connection lost: " + e.getMessage());
+            closeActive();
+            return;
+        }
+        if (n < 0) {
+            closeActive();
+            return;
         }
 
-        activeSocket = null;
-        in = null;
-        out = null;
+        deliverFrames();
+    }
 
-        if (onDisconnect != null) onDisconnect.run();
-        log("P2P Connection Closed.");
+    // Giao mọi frame trọn vẹn đã đọc; phần dòng chưa trọn nằm lại trong reader cho lần đọc sau
+    private void deliverFrames() {
+        while (true) {
+            Message msg;
+            try {
+                msg = reader.next();
+            } catch (IllegalArgumentException e) {
+                log("Parse error: " + e.getMessage());
+                continue;
+            }
+            if (msg == null) return;
+            Consumer<Message> handler = onMessageReceived;
+            // SELECT thừa (cả hai bên cùng là bên quyết định) không phải tin nhắn của game
+            if (handler == null || isSelect(msg)) {
+                msg.recycle();
+            } else {
+                callbackExecutor.execute(() -> handler.accept(msg));
+            }
+        }
     }
 
-    public void shutdown() {
-        close();
+    private static boolean isSelect(Message msg) {
+        return msg.getType() == MessageType.SYSTEM && "peer".equals(msg.getFrom()) && SELECT_CONTENT.equals(msg.getContent());
+    }
+
+    /**
+     * Xếp tin nhắn vào hàng đợi ghi rồi flush(); trả về ngay, không chờ mạng.
+     *
+     * @return false nếu chưa có kết nối P2P
+     */
+    @Override
+    public boolean send(Message message) {
+        if (!queue(message)) return false;
+        flush();
+        return true;
+    }
+
+    @Override
+    public boolean queue(Message message) {
+        if (!isConnected) return false;
+        outbound.add(message.toJson());
+        return true;
+    }
+
+    /**
+     * Đánh thức selector để ghi mọi frame đã queue() trong một lô (một lần write nếu socket nhận hết).
+     */
+    @Override
+    public void flush() {
+        if (!outbound.isEmpty() && flushRequested.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    /**
+     * Số lần gọi write trên socket P2P (để đo việc gom frame).
+     */
+    long writes() {
+        return writes;
+    }
+
+    // Gom mọi frame đang chờ thành một lô rồi ghi một lần; socket nhận không hết thì chờ OP_WRITE
+    private void writeOutbound() {
+        SocketChannel channel = activeChannel;
+        if (channel == null) {
+            outbound.clear();
+            pendingWrite = null;
+            return;
+        }
         try {
-            if (serverSocket != null) serverSocket.close();
+            while (true) {
+                if (pendingWrite == null) {
+                    if (outbound.isEmpty()) break;
+                    encoder.clear();
+                    String frame;
+                    while (encoder.size() < MAX_BATCH_BYTES && (frame = outbound.poll()) != null) encoder.append(frame);
+                    pendingWrite = encoder.flip();
+                }
+                channel.write(pendingWrite);
+                writes++;
+                if (pendingWrite.hasRemaining()) break;
+                pendingWrite = null;
+            }
+            SelectionKey key = channel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(pendingWrite == null ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
         } catch (IOException e) {
+            log("Send error: " + e.getMessage());
+            closeActive();
         }
-        executor.shutdownNow();
     }
 
+    /**
+     * Đóng kết nối hiện tại (không đóng port lắng nghe). Gọi được từ mọi luồng, không chặn.
+     */
+    @Override
+    public void close() {
+        isConnected = false;
+        runOnSelector(this::closeActive);
+    }
+
+    private void closeActive() {
+        SocketChannel channel = activeChannel;
+        if (channel == null) return;
+        activeChannel = null;
+        isConnected = false;
+        outbound.clear();
+        pendingWrite = null;
+        closeQuietly(channel);
+
+        Runnable disconnect = onDisconnect;
+        if (disconnect != null) callbackExecutor.execute(disconnect);
+        log("P2P Connection Closed.");
+    }
+
+    @Override
+    public void shutdown() {
+        isConnected = false;
+        running = false;
+        selector.wakeup();
+    }
+
+    private void runOnSelector(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
     public int getListeningPort() {
         return listeningPort;
     }
 
+    @Override
     public boolean isConnected() {
         return isConnected;
     }
 
+    @Override
     public void setOnMessageReceived(Consumer<Message> handler) {
         this.onMessageReceived = handler;
     }
 
+    @Override
     public void setOnStatusUpdate(Consumer<String> handler) {
         this.onStatusUpdate = handler;
     }
 
+    @Override
     public void setOnDisconnect(Runnable handler) {
         this.onDisconnect = handler;
     }
 
+    @Override
     public void setOnConnectionEstablished(Runnable handler) {
         this.onConnectionEstablished = handler;
     }
 
+    /**
+     * Địa chỉ của các card mạng đang bật (trừ loopback, IPv6 link-local), IPv4 trước.
+     * Gửi kèm khi đăng nhập để đối thủ cùng mạng LAN nối thẳng không cần đi vòng qua NAT.
+     */
+    public static List<String> localAddresses() {
+        List<String> ipv4 = new ArrayList<>(), ipv6 = new ArrayList<>();
+        try {
+            for (NetworkInterface nic : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!nic.isUp() || nic.isLoopback() || nic.isVirtual()) continue;
+                for (InetAddress address : Collections.list(nic.getInetAddresses())) {
+                    if (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isAnyLocalAddress()) continue;
+                    (address instanceof Inet4Address ? ipv4 : ipv6).add(address.getHostAddress());
+                }
+            }
+        } catch (SocketException e) {
+            System.err.println("[DirectPeer] Cannot list network interfaces: " + e.getMessage());
+        }
+        ipv4.addAll(ipv6);
+        return ipv4;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
     private void log(String msg) {
         System.out.println("[DirectPeer] " + msg);
     }
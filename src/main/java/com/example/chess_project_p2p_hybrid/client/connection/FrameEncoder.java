@@ -0,0 +1,81 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gom nhiều frame JSON (mỗi frame một dòng '\n') vào một ByteBuffer UTF-8 dùng lại, để cả lô đi trong một lần ghi.
+ * CharsetEncoder và buffer được giữ lại giữa các lô, chỉ nới rộng khi một lô lớn hơn sức chứa.
+ * Không an toàn đa luồng: mỗi luồng ghi giữ một FrameEncoder riêng.
+ */
+final class FrameEncoder {
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final boolean direct;
+    private ByteBuffer buffer;
+
+    /**
+     * @param direct buffer ngoài heap (ghi thẳng vào SocketChannel không phải chép thêm)
+     */
+    FrameEncoder(int initialCapacity, boolean direct) {
+        this.direct = direct;
+        this.buffer = allocate(initialCapacity);
+    }
+
+    /**
+     * Bắt đầu lô mới (bỏ nội dung lô trước).
+     */
+    void clear() {
+        buffer.clear();
+    }
+
+    void append(CharSequence frame) {
+        CharBuffer in = CharBuffer.wrap(frame);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, true);
+            if (result.isOverflow()) {
+                grow();
+                continue;
+            }
+            result = encoder.flush(buffer);
+            if (result.isOverflow()) {
+                grow();
+                continue;
+            }
+            break;
+        }
+        if (!buffer.hasRemaining()) grow();
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Số byte đã mã hóa trong lô hiện tại.
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Chuyển sang chế độ đọc để ghi ra socket. Gọi clear() trước lô kế tiếp.
+     */
+    ByteBuffer flip() {
+        return buffer.flip();
+    }
+
+    private void grow() {
+        ByteBuffer larger = allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
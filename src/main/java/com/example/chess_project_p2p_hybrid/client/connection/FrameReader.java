@@ -0,0 +1,371 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tách frame (mỗi dòng một Message JSON) và giải mã thẳng từ một buffer byte dùng lại vào Message lấy từ bể,
+ * không qua readLine() hay Gson. Dùng chung cho vòng đọc của DirectPeer, ServerConnection, ClientHandler và gói DATA
+ * của UdpPeer.
+ * <p>
+ * Ở trạng thái ổn định (PING/PONG/ACK/MOVE lặp lại) không tạo rác: chuỗi ngắn (tên người chơi, "opponent",
+ * nước đi...) lấy lại từ bảng cache theo nội dung, số (stream, seq) đọc thẳng từ byte, Message được người nhận
+ * trả về bể bằng recycle(). Chỉ chuỗi mới hoặc dài (chat, JSON của SYSTEM) mới phải cấp phát.
+ * <p>
+ * Không an toàn đa luồng: mỗi vòng đọc giữ một FrameReader riêng.
+ */
+public final class FrameReader {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MIN_READ = 1024;
+    private static final int STRING_CACHE_SIZE = 512; // lũy thừa của 2
+    private static final int MAX_CACHED_LENGTH = 64;
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private static final int FROM = 0, TO = 1, TYPE = 2, CONTENT = 3, STREAM = 4, SEQ = 5, UNKNOWN = -1;
+    private static final String[] FIELDS = {"from", "to", "type", "content", "stream", "seq"};
+
+    // Dữ liệu đã nhận nằm trong [start, end); '\n' đã được tìm tới scanned
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private ByteBuffer window = ByteBuffer.wrap(data);
+    private int start;
+    private int end;
+    private int scanned;
+
+    // Trạng thái giải mã frame hiện tại
+    private int frameStart;
+    private int frameEnd;
+    private int pos;
+    private char[] chars = new char[256];
+    private int length;
+    private final String[] cache = new String[STRING_CACHE_SIZE];
+
+    /**
+     * Đọc thêm từ luồng (chặn tới khi có dữ liệu).
+     *
+     * @return số byte đọc được, -1 khi hết luồng
+     */
+    public int read(InputStream in) throws IOException {
+        makeRoom(MIN_READ);
+        int n = in.read(data, end, data.length - end);
+        if (n > 0) end += n;
+        return n;
+    }
+
+    /**
+     * Đọc thêm từ channel (không chặn nếu channel non-blocking).
+     *
+     * @return số byte đọc được, -1 khi hết luồng
+     */
+    int read(ReadableByteChannel channel) throws IOException {
+        makeRoom(MIN_READ);
+        window.limit(data.length).position(end);
+        int n = channel.read(window);
+        if (n > 0) end += n;
+        return n;
+    }
+
+    /**
+     * Thêm byte đã đọc sẵn ở nơi khác (vd. phần sau dòng SELECT của DirectPeer).
+     */
+    void append(byte[] src, int offset, int count) {
+        makeRoom(count);
+        System.arraycopy(src, offset, data, end, count);
+        end += count;
+    }
+
+    /**
+     * Giải mã đúng một frame không kèm '\n' (phần JSON của một datagram UdpPeer). Bỏ mọi byte chưa giải mã trước đó.
+     *
+     * @return null nếu frame rỗng
+     * @throws IllegalArgumentException frame không phải JSON của Message
+     */
+    Message decode(ByteBuffer frame) {
+        clear();
+        int count = frame.remaining();
+        makeRoom(count + 1);
+        frame.get(data, 0, count);
+        data[count] = '\n';
+        end = count + 1;
+        return next();
+    }
+
+    /**
+     * Bỏ mọi byte chưa giải mã (kết nối mới).
+     */
+    void clear() {
+        start = end = scanned = 0;
+    }
+
+    /**
+     * Giải mã frame trọn vẹn kế tiếp vào một Message của bể.
+     *
+     * @return null nếu chưa đủ một dòng (cần read() thêm)
+     * @throws IllegalArgumentException frame không phải JSON của Message; frame đó đã bị bỏ qua, gọi tiếp được
+     */
+    public Message next() {
+        while (true) {
+            int newline = -1;
+            for (int i = scanned; i < end; i++) {
+                if (data[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline < 0) {
+                scanned = end;
+                return null;
+            }
+            frameStart = start;
+            frameEnd = newline;
+            start = scanned = newline + 1;
+            pos = frameStart;
+            skipWhitespace();
+            if (pos == frameEnd) continue; // dòng trống
+            return parse();
+        }
+    }
+
+    // Đảm bảo còn ít nhất needed byte trống ở cuối: dồn phần chưa giải mã về đầu buffer, chưa đủ thì nới buffer
+    private void makeRoom(int needed) {
+        if (start == end) clear();
+        if (data.length - end >= needed) return;
+        if (start > 0) {
+            System.arraycopy(data, start, data, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (data.length - end >= needed) return;
+        int capacity = data.length;
+        while (capacity - end < needed) capacity *= 2;
+        byte[] larger = new byte[capacity];
+        System.arraycopy(data, 0, larger, 0, end);
+        data = larger;
+        window = ByteBuffer.wrap(data);
+    }
+
+    private Message parse() {
+        Message message = Message.obtain();
+        try {
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    expect('"');
+                    decodeString();
+                    int field = field();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    readValue(message, field);
+                    skipWhitespace();
+                    byte c = take();
+                    if (c == '}') break;
+                    if (c != ',') throw malformed();
+                }
+            }
+            skipWhitespace();
+            if (pos != frameEnd) throw malformed();
+            return message;
+        } catch (IllegalArgumentException e) {
+            message.recycle();
+            throw e;
+        }
+    }
+
+    private void readValue(Message message, int field) {
+        byte c = peek();
+        if (field == UNKNOWN || c == '{' || c == '[') {
+            if (field != UNKNOWN) throw malformed();
+            skipValue();
+            return;
+        }
+        boolean isNull = false;
+        if (c == '"') {
+            pos++;
+            decodeString();
+        } else {
+            readToken();
+            isNull = length == 4 && chars[0] == 'n' && chars[1] == 'u' && chars[2] == 'l' && chars[3] == 'l';
+        }
+        switch (field) {
+            case FROM -> message.setFrom(isNull ? null : string());
+            case TO -> message.setTo(isNull ? null : string());
+            case CONTENT -> message.setContent(isNull ? null : string());
+            case TYPE -> message.setType(isNull ? null : type());
+            case STREAM -> message.setStream(isNull ? 0 : number());
+            case SEQ -> message.setSeq(isNull ? 0 : number());
+            default -> {
+            }
+        }
+    }
+
+    // Bỏ qua giá trị của khóa lạ (kể cả object/array lồng nhau)
+    private void skipValue() {
+        int depth = 0;
+        do {
+            byte c = take();
+            if (c == '"') {
+                decodeString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (depth == 0) {
+                pos--;
+                readToken();
+            }
+        } while (depth > 0);
+    }
+
+    // Giá trị không có nháy (số, true/false/null) vào chars
+    private void readToken() {
+        length = 0;
+        while (pos < frameEnd) {
+            byte c = data[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r') break;
+            if (c < 0) throw malformed();
+            append((char) c);
+            pos++;
+        }
+        if (length == 0) throw malformed();
+    }
+
+    // Chuỗi JSON (sau dấu nháy mở) vào chars: giải mã UTF-8 và escape
+    private void decodeString() {
+        length = 0;
+        while (true) {
+            int b = take();
+            if (b == '"') return;
+            if (b == '\\') {
+                byte e = take();
+                switch (e) {
+                    case '"', '\\', '/' -> append((char) e);
+                    case 'b' -> append('\b');
+                    case 'f' -> append('\f');
+                    case 'n' -> append('\n');
+                    case 'r' -> append('\r');
+                    case 't' -> append('\t');
+                    case 'u' -> append((char) ((hex() << 12) | (hex() << 8) | (hex() << 4) | hex()));
+                    default -> throw malformed();
+                }
+            } else if (b >= 0) {
+                append((char) b);
+            } else if ((b & 0xE0) == 0xC0) {
+                append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if ((b & 0xF0) == 0xE0) {
+                append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else if ((b & 0xF8) == 0xF0) {
+                int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                append(Character.highSurrogate(codePoint));
+                append(Character.lowSurrogate(codePoint));
+            } else {
+                throw malformed();
+            }
+        }
+    }
+
+    private int continuation() {
+        byte b = take();
+        if ((b & 0xC0) != 0x80) throw malformed();
+        return b & 0x3F;
+    }
+
+    private int hex() {
+        int digit = Character.digit(take(), 16);
+        if (digit < 0) throw malformed();
+        return digit;
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            char[] larger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, larger, 0, length);
+            chars = larger;
+        }
+        chars[length++] = c;
+    }
+
+    private int field() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (charsEqual(FIELDS[i])) return i;
+        }
+        return UNKNOWN;
+    }
+
+    // Chuỗi ngắn lặp lại lấy từ cache theo nội dung, khỏi tạo String mới
+    private String string() {
+        if (length > MAX_CACHED_LENGTH) return new String(chars, 0, length);
+        int hash = 0;
+        for (int i = 0; i < length; i++) hash = 31 * hash + chars[i];
+        int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        String cached = cache[slot];
+        if (cached != null && charsEqual(cached)) return cached;
+        String value = new String(chars, 0, length);
+        cache[slot] = value;
+        return value;
+    }
+
+    // Như Gson: tên không khớp hằng nào thì type = null
+    private MessageType type() {
+        for (MessageType type : TYPES) {
+            if (charsEqual(type.name())) return type;
+        }
+        return null;
+    }
+
+    private long number() {
+        int i = 0;
+        boolean negative = length > 0 && chars[0] == '-';
+        if (negative) i++;
+        if (i == length) throw malformed();
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) throw malformed();
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean charsEqual(String s) {
+        if (s.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[i]) return false;
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < frameEnd) {
+            byte c = data[pos];
+            if (c != ' ' && c != '\t' && c != '\r') return;
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (take() != c) throw malformed();
+    }
+
+    private byte peek() {
+        if (pos >= frameEnd) throw malformed();
+        return data[pos];
+    }
+
+    private byte take() {
+        if (pos >= frameEnd) throw malformed();
+        return data[pos++];
+    }
+
+    private IllegalArgumentException malformed() {
+        int shown = Math.min(frameEnd - frameStart, 200);
+        return new IllegalArgumentException("Malformed frame: " + new String(data, frameStart, shown, StandardCharsets.UTF_8));
+    }
+}
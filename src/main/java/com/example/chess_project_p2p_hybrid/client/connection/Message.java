@@ -4,11 +4,18 @@ import com.google.gson.Gson;
 
 public class Message {
     private static final Gson GSON = new Gson();
+    // Bể Message rỗng cho FrameReader (xem recycle())
+    private static final int POOL_SIZE = 64;
+    private static final Message[] POOL = new Message[POOL_SIZE];
+    private static int pooled;
 
     private String from;      // Người gửi
     private String to;        // Người nhận ("server", "all", hoặc tên đối thủ)
     private MessageType type; // Loại tin nhắn
     private String content;   // Nội dung (JSON string hoặc text)
+    private long stream;      // Luồng đánh số của người gửi (mỗi ván một luồng ngẫu nhiên), 0 = không đánh số
+    private long seq;         // Số thứ tự trong luồng, bắt đầu từ 1
+    private transient boolean inPool;
 
     public Message() {
     }
@@ -52,6 +59,22 @@ public class Message {
         this.content = content;
     }
 
+    public long getStream() {
+        return stream;
+    }
+
+    public void setStream(long stream) {
+        this.stream = stream;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
     public String toJson() {
         return GSON.toJson(this);
     }
@@ -60,6 +83,39 @@ public class Message {
         return GSON.fromJson(json, Message.class);
     }
 
+    /**
+     * Lấy một Message rỗng từ bể, bể cạn thì tạo mới.
+     */
+    static Message obtain() {
+        synchronized (POOL) {
+            if (pooled > 0) {
+                Message message = POOL[--pooled];
+                POOL[pooled] = null;
+                message.inPool = false;
+                return message;
+            }
+        }
+        return new Message();
+    }
+
+    /**
+     * Trả Message về bể để vòng đọc dùng lại. Chỉ gọi khi không còn ai giữ tham chiếu tới nó
+     * (vd. PING/PONG/ACK đã xử lý xong); tin đã giao cho game hay còn nằm trong hàng đợi thì không được trả.
+     */
+    public void recycle() {
+        from = null;
+        to = null;
+        type = null;
+        content = null;
+        stream = 0;
+        seq = 0;
+        synchronized (POOL) {
+            if (inPool || pooled == POOL_SIZE) return;
+            inPool = true;
+            POOL[pooled++] = this;
+        }
+    }
+
     @Override
     public String toString() {
         return "Message{type=" + type + ", from='" + from + "', content='" + content + "'}";
@@ -8,5 +8,6 @@ public enum MessageType {
     CHAT,           // Chat (P2P hoặc Relay)
     ERROR,          // Lỗi
     PING,           // Kiểm tra kết nối
-    PONG            // Phản hồi kiểm tra
+    PONG,           // Phản hồi kiểm tra
+    ACK             // Xác nhận tích lũy các MOVE đã nhận (stream, seq)
 }
@@ -1,19 +1,85 @@
 package com.example.chess_project_p2p_hybrid.client.connection;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * PeerFallbackManager.java
  * Quản lý logic gửi tin nhắn:
- * - Ưu tiên DirectPeer (P2P).
+ * - Ưu tiên kênh P2P (DirectPeer qua TCP hoặc UdpPeer).
  * - Nếu lỗi -> Fallback sang Peer (Server Relay).
+ * - Chế độ đua (racing): MOVE được gửi đồng thời qua cả P2P và Relay, bên nhận lấy bản tới trước.
+ * <p>
+ * Lớp giao nhận cho MOVE: mỗi nước đi được đánh số (stream, seq) và giữ trong bộ đệm tới khi đối thủ gửi ACK
+ * tích lũy. Nước ghi vào kết nối ngay trước khi nó đứt không mất: khi đổi đường (P2P ↔ Relay) mọi nước chưa
+ * được ACK được gửi lại theo thứ tự. Bên nhận (receive()) giao cho game đúng thứ tự và đúng một lần.
+ * <p>
+ * Chọn đường: mỗi 0,5 giây gửi PING trên cả P2P và Relay, PONG cho một mẫu RTT (ước lượng EWMA cho từng đường).
+ * P2P được ưu tiên, nhưng nếu Relay nhanh hơn rõ rệt (trễ) liên tục vài lần đo thì chuyển sang Relay và ngược lại.
+ * P2P không trả PONG quá STALE_AFTER thì coi như đã chết dù socket còn mở.
  */
 public class PeerFallbackManager {
+    private static final long PROBE_INTERVAL_MILLIS = 500;
+    private static final long STALE_AFTER_NANOS = 3_000_000_000L;
+    // Trễ: đường kia phải nhanh hơn ít nhất max(5 ms, 20% RTT đường hiện tại), liên tục 3 lần đo, mới chuyển
+    private static final long MIN_MARGIN_NANOS = 5_000_000L;
+    private static final double MARGIN_RATIO = 0.2;
+    private static final int SWITCH_CONFIRMATIONS = 3;
+    private static final int MIN_SAMPLES = 3;
+    private static final int METRICS_LOG_EVERY_PROBES = 120;
+
+    public enum Path { P2P, RELAY }
+
+    /**
+     * Thống kê đường truyền cho giao diện và log. RTT/jitter tính bằng ms, -1 nếu chưa có mẫu.
+     */
+    public record PathStats(Path active, double p2pRttMillis, double p2pJitterMillis,
+                            double relayRttMillis, double relayJitterMillis, long switches) {
+        @Override
+        public String toString() {
+            return String.format("path=%s p2p_rtt_ms=%.1f p2p_jitter_ms=%.1f relay_rtt_ms=%.1f relay_jitter_ms=%.1f switches=%d",
+                    active, p2pRttMillis, p2pJitterMillis, relayRttMillis, relayJitterMillis, switches);
+        }
+    }
+
     private final ServerConnection serverConnection;
-    private final DirectPeer directPeer;
+    private final PeerTransport directPeer;
     private Consumer<String> statusCallback;
+    private volatile Consumer<PathStats> pathStatsListener;
+    private volatile boolean racing;
 
-    public PeerFallbackManager(ServerConnection serverConnection, DirectPeer directPeer) {
+    // Chọn đường
+    private final RttEstimator p2pRtt = new RttEstimator();
+    private final RttEstimator relayRtt = new RttEstimator();
+    private volatile Path activePath = Path.RELAY;
+    private long p2pProbeSince; // Lúc gửi PING P2P cũ nhất chưa có PONG, 0 nếu không có
+    private int switchVotes;
+    private long switches;
+    private long probes;
+    private ScheduledExecutorService prober;
+
+    // Phía gửi: luồng của ván hiện tại và các nước chưa được ACK (theo thứ tự seq)
+    private long stream = newStream();
+    private long nextSeq;
+    private final Deque<Message> unacked = new ArrayDeque<>();
+    private long retransmits;
+
+    // Phía nhận: luồng của đối thủ
+    private long remoteStream;
+    private long retiredStream; // Luồng ván trước: bản trễ của nó không được mở lại luồng cũ
+    private long delivered;     // Mọi seq <= delivered đã giao cho game
+    private final TreeMap<Long, Message> pending = new TreeMap<>(); // Tới sớm, chờ lấp chỗ trống
+    private long duplicates;
+
+    public PeerFallbackManager(ServerConnection serverConnection, PeerTransport directPeer) {
         this.serverConnection = serverConnection;
         this.directPeer = directPeer;
     }
@@ -22,22 +88,96 @@ public class PeerFallbackManager {
         this.statusCallback = callback;
     }
 
+    /**
+     * Bật chế độ đua: độ trễ nước đi bằng đường nhanh hơn, không phải chờ P2P chết mới chuyển sang Relay.
+     * Đổi lại mỗi nước đi tốn thêm một bản qua server.
+     */
+    public void setRacing(boolean racing) {
+        this.racing = racing;
+    }
+
+    /**
+     * Nhận thống kê đường truyền sau mỗi lần đo (trên luồng đo, không phải luồng UI).
+     */
+    public void setPathStatsListener(Consumer<PathStats> listener) {
+        this.pathStatsListener = listener;
+    }
+
     private void log(String msg) {
         if (statusCallback != null) statusCallback.accept(msg);
         System.out.println("[FallbackManager] " + msg);
     }
 
+    private static long newStream() {
+        long stream;
+        do {
+            stream = ThreadLocalRandom.current().nextLong();
+        } while (stream == 0);
+        return stream;
+    }
+
+    /**
+     * Bắt đầu luồng đánh số mới cho ván/đối thủ mới. Nước chưa ACK của ván cũ bị bỏ.
+     */
+    public synchronized void startNewGame() {
+        stream = newStream();
+        nextSeq = 0;
+        unacked.clear();
+    }
+
     /**
      * Gửi tin nhắn thông minh.
      * @param message Tin nhắn cần gửi
      * @return true nếu gửi thành công (qua bất kỳ đường nào)
      */
     public boolean send(Message message) {
-        boolean isGameData = (message.getType() == MessageType.MOVE || message.getType() == MessageType.CHAT);
+        boolean sent = queue(message);
+        flush();
+        return sent;
+    }
 
-        // 1. Ưu tiên P2P cho Move/Chat
-        if (isGameData && directPeer.isConnected()) {
-            if (directPeer.send(message)) {
+    /**
+     * Như send() nhưng chỉ xếp vào hàng đợi của đường được chọn. Gửi dồn nhiều tin thì queue() từng tin
+     * rồi flush() một lần: mỗi đường ghi cả loạt trong một lần write.
+     */
+    public boolean queue(Message message) {
+        if (message.getType() != MessageType.MOVE) return route(message);
+        // Đánh số và gửi trong cùng khóa: thứ tự trên dây khớp thứ tự seq, replay không chen giữa
+        synchronized (this) {
+            message.setStream(stream);
+            message.setSeq(++nextSeq);
+            unacked.addLast(message);
+            return route(message);
+        }
+    }
+
+    /**
+     * Ghi mọi tin đã queue() trên cả hai đường, trả về ngay.
+     */
+    public void flush() {
+        directPeer.flush();
+        serverConnection.flush();
+    }
+
+    // Chỉ xếp hàng; người gọi flush()
+    private boolean route(Message message) {
+        boolean isGameData = (message.getType() == MessageType.MOVE || message.getType() == MessageType.CHAT
+                || message.getType() == MessageType.ACK);
+
+        // 0. Chế độ đua: gửi MOVE qua cả hai đường cùng lúc
+        if (message.getType() == MessageType.MOVE && racing) {
+            boolean sent = directPeer.isConnected() && directPeer.queue(message);
+            if (serverConnection.isConnected()) {
+                serverConnection.queue(message);
+                sent = true;
+            }
+            if (!sent) log("Failed to send message. Both P2P and Server are down.");
+            return sent;
+        }
+
+        // 1. Ưu tiên P2P cho Move/Chat (trừ khi đang chọn Relay vì nhanh hơn)
+        if (isGameData && directPeer.isConnected() && (activePath == Path.P2P || !serverConnection.isConnected())) {
+            if (directPeer.queue(message)) {
                 return true;
             }
             log("P2P send failed. Attempting fallback...");
@@ -46,14 +186,222 @@ public class PeerFallbackManager {
         // 2. Fallback: Gửi qua Server
         // Nếu là Move/Chat mà P2P tạch -> Gửi qua Server để Relay
         if (serverConnection.isConnected()) {
-            if (isGameData) {
+            if (isGameData && message.getType() != MessageType.ACK && !directPeer.isConnected()) {
                 log("Relaying message via Server...");
             }
-            serverConnection.send(message);
+            serverConnection.queue(message);
             return true;
         }
 
         log("Failed to send message. Both P2P and Server are down.");
         return false;
     }
+
+    /**
+     * Gọi khi đường đi đổi (P2P nối/đứt, nối lại server): gửi lại mọi nước chưa được ACK theo thứ tự
+     * qua đường hiện tại. Bên nhận bỏ bản trùng nên nước nào cũng chỉ được áp dụng một lần.
+     */
+    public synchronized void onPathChanged() {
+        // P2P nối/đứt: mẫu RTT cũ không còn đúng
+        p2pRtt.reset();
+        p2pProbeSince = 0;
+        switchVotes = 0;
+        activePath = directPeer.isConnected() ? Path.P2P : Path.RELAY;
+        replayUnacked();
+        // Cả loạt gửi lại (và tin người gọi đã queue() trước đó, vd. LOGIN) đi chung một lần ghi
+        flush();
+    }
+
+    private void replayUnacked() {
+        if (unacked.isEmpty()) return;
+        log("Path changed. Replaying " + unacked.size() + " unacknowledged move(s)...");
+        for (Message message : unacked) {
+            retransmits++;
+            route(message);
+        }
+    }
+
+    /**
+     * Bắt đầu đo RTT định kỳ trên cả hai đường.
+     */
+    public synchronized void startProbing() {
+        if (prober != null) return;
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "path-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        prober.scheduleWithFixedDelay(this::probe, PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (prober != null) prober.shutdownNow();
+        prober = null;
+    }
+
+    private void probe() {
+        PathStats stats;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (directPeer.isConnected()) {
+                if (p2pProbeSince == 0) p2pProbeSince = now;
+                directPeer.send(probe(MessageType.PING, now));
+            }
+            if (serverConnection.isConnected()) {
+                serverConnection.send(probe(MessageType.PING, now));
+            }
+            selectPath(now);
+            stats = pathStats();
+            if (++probes % METRICS_LOG_EVERY_PROBES == 0) System.out.println("[FallbackManager] " + stats);
+        }
+        Consumer<PathStats> listener = pathStatsListener;
+        if (listener != null) listener.accept(stats);
+    }
+
+    private void selectPath(long now) {
+        boolean p2pUp = directPeer.isConnected()
+                && (p2pProbeSince == 0 || now - p2pProbeSince < STALE_AFTER_NANOS);
+        boolean relayUp = serverConnection.isConnected();
+        Path desired = activePath;
+        boolean forced = false;
+        if (activePath == Path.P2P && !p2pUp && relayUp) {
+            desired = Path.RELAY;
+            forced = true;
+        } else if (activePath == Path.RELAY && !relayUp && p2pUp) {
+            desired = Path.P2P;
+            forced = true;
+        } else if (p2pUp && relayUp && p2pRtt.samples() >= MIN_SAMPLES && relayRtt.samples() >= MIN_SAMPLES) {
+            RttEstimator current = activePath == Path.P2P ? p2pRtt : relayRtt;
+            RttEstimator other = activePath == Path.P2P ? relayRtt : p2pRtt;
+            long margin = Math.max(MIN_MARGIN_NANOS, (long) (current.srtt() * MARGIN_RATIO));
+            if (other.srtt() + margin < current.srtt()) {
+                desired = activePath == Path.P2P ? Path.RELAY : Path.P2P;
+            }
+        }
+        if (desired == activePath) {
+            switchVotes = 0;
+            return;
+        }
+        if (!forced && ++switchVotes < SWITCH_CONFIRMATIONS) return;
+        switchVotes = 0;
+        switches++;
+        activePath = desired;
+        log(String.format("Switching to %s (P2P %.1f ms, relay %.1f ms)%s", desired,
+                p2pRtt.srtt() / 1e6, relayRtt.srtt() / 1e6, forced ? ": " + (desired == Path.RELAY ? "P2P" : "relay") + " is not responding" : ""));
+        // Nước gửi trên đường cũ có thể đã mất (nhất là khi P2P chết im lặng)
+        replayUnacked();
+    }
+
+    // Mốc thời gian gửi nằm ở seq (không phải content) để bên nhận đọc PING/PONG mà không tạo String mới
+    private static Message probe(MessageType type, long timestamp) {
+        Message probe = new Message(null, "opponent", type, null);
+        probe.setSeq(timestamp);
+        return probe;
+    }
+
+    /**
+     * Trả lời PING của đối thủ trên đúng đường nó tới.
+     */
+    public void onPing(Message ping, boolean viaP2P) {
+        Message pong = probe(MessageType.PONG, ping.getSeq());
+        if (viaP2P) {
+            directPeer.send(pong);
+        } else if (serverConnection.isConnected()) {
+            serverConnection.send(pong);
+        }
+    }
+
+    public synchronized void onPong(Message pong, boolean viaP2P) {
+        long sent = pong.getSeq();
+        long now = System.nanoTime();
+        if (sent == 0 || now < sent) return;
+        if (viaP2P) {
+            p2pRtt.sample(now - sent, now);
+            p2pProbeSince = 0;
+        } else {
+            relayRtt.sample(now - sent, now);
+        }
+    }
+
+    public synchronized PathStats pathStats() {
+        return new PathStats(activePath, millis(p2pRtt, p2pRtt.srtt()), millis(p2pRtt, p2pRtt.jitter()),
+                millis(relayRtt, relayRtt.srtt()), millis(relayRtt, relayRtt.jitter()), switches);
+    }
+
+    private static double millis(RttEstimator estimator, long nanos) {
+        return estimator.samples() == 0 ? -1 : nanos / 1e6;
+    }
+
+    /**
+     * Xử lý ACK tích lũy của đối thủ: bỏ khỏi bộ đệm mọi nước có seq <= seq của ACK.
+     */
+    public synchronized void onAck(Message ack) {
+        if (ack.getStream() != stream) return;
+        while (!unacked.isEmpty() && unacked.peekFirst().getSeq() <= ack.getSeq()) {
+            unacked.removeFirst();
+        }
+    }
+
+    /**
+     * Nhận tin đánh số (từ P2P hoặc Relay), giao cho game theo đúng thứ tự seq và bỏ bản trùng.
+     * Tin không đánh số được giao ngay. Mỗi tin đánh số đều được trả ACK (cả bản trùng: bên gửi có thể đã mất ACK).
+     */
+    public void receive(Message message, Consumer<Message> deliver) {
+        if (message.getSeq() <= 0 || message.getStream() == 0) {
+            deliver.accept(message);
+            return;
+        }
+        List<Message> ready = new ArrayList<>(1);
+        Message ack;
+        boolean duplicate = false;
+        synchronized (this) {
+            if (message.getStream() != remoteStream) {
+                if (message.getStream() == retiredStream) return;
+                // Đối thủ bắt đầu ván mới
+                retiredStream = remoteStream;
+                remoteStream = message.getStream();
+                delivered = 0;
+                pending.clear();
+            }
+            long seq = message.getSeq();
+            if (seq <= delivered || pending.putIfAbsent(seq, message) != null) {
+                duplicates++;
+                duplicate = true;
+            }
+            Message next;
+            while ((next = pending.remove(delivered + 1)) != null) {
+                ready.add(next);
+                delivered++;
+            }
+            ack = new Message(message.getTo(), message.getFrom(), MessageType.ACK, null);
+            ack.setStream(remoteStream);
+            ack.setSeq(delivered);
+            // Giao trong khóa để hai luồng nhận (P2P, Relay) không đảo thứ tự
+            ready.forEach(deliver);
+        }
+        send(ack);
+        // Bản trùng không được giữ ở đâu: trả về bể cho vòng đọc
+        if (duplicate) message.recycle();
+    }
+
+    /**
+     * Số bản trùng đã bỏ (bản chậm hơn ở chế độ đua, hoặc bản gửi lại khi đổi đường).
+     */
+    public synchronized long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Số nước đã gửi lại khi đổi đường.
+     */
+    public synchronized long retransmits() {
+        return retransmits;
+    }
+
+    /**
+     * Số nước đang chờ ACK.
+     */
+    public synchronized int unacknowledged() {
+        return unacked.size();
+    }
 }
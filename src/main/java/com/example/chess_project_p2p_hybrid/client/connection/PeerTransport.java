@@ -0,0 +1,66 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Kênh truyền trực tiếp (P2P) giữa 2 người chơi mà PeerFallbackManager dùng.
+ * Cài đặt: DirectPeer (TCP) và UdpPeer (UDP có lớp tin cậy riêng).
+ * Mọi phương thức không chặn; callback chạy tuần tự theo thứ tự tin nhắn đến.
+ */
+public interface PeerTransport {
+
+    /**
+     * Chủ động kết nối tới đối thủ (khi nhận được PEER_INFO từ Server).
+     */
+    void connect(String host, int port);
+
+    /**
+     * Kết nối qua nhiều địa chỉ ứng viên của đối thủ (địa chỉ server nhìn thấy và địa chỉ LAN).
+     * Cả hai bên cùng gọi; đúng một bên là decider (host). Mặc định: chỉ host thử ứng viên đầu tiên.
+     */
+    default void connect(List<String> hosts, int port, boolean decider) {
+        if (decider && !hosts.isEmpty()) connect(hosts.get(0), port);
+    }
+
+    /**
+     * Xếp tin nhắn để gửi rồi flush(), trả về ngay.
+     *
+     * @return false nếu chưa có kết nối P2P
+     */
+    boolean send(Message message);
+
+    /**
+     * Xếp tin nhắn vào hàng đợi nhưng chưa gửi. Gửi dồn nhiều tin thì queue() từng tin rồi flush() một lần.
+     *
+     * @return false nếu chưa có kết nối P2P
+     */
+    boolean queue(Message message);
+
+    /**
+     * Gửi mọi tin đã queue(), trả về ngay.
+     */
+    void flush();
+
+    boolean isConnected();
+
+    /**
+     * Đóng kết nối hiện tại nhưng vẫn lắng nghe để đối thủ kết nối lại.
+     */
+    void close();
+
+    /**
+     * Đóng hẳn, giải phóng port và luồng.
+     */
+    void shutdown();
+
+    int getListeningPort();
+
+    void setOnMessageReceived(Consumer<Message> handler);
+
+    void setOnStatusUpdate(Consumer<String> handler);
+
+    void setOnDisconnect(Runnable handler);
+
+    void setOnConnectionEstablished(Runnable handler);
+}
@@ -0,0 +1,46 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * Gói UDP giữa UdpPeer và dịch vụ rendezvous của ChessServer (đục lỗ NAT).
+ * Dùng chung byte loại với gói của UdpPeer (1-5), nên các loại ở đây bắt đầu từ 6.
+ * <p>
+ * REGISTER (client → server): [token UTF-8]. Server ghi lại địa chỉ nguồn nhìn thấy (địa chỉ ngoài NAT).
+ * PEER_ENDPOINT (server → client): [địa chỉ ngoài của đối thủ]. Hai bên nhận xong cùng gửi HELLO cho nhau.
+ * STATS (công cụ → server): rỗng; server trả lại [STATS][thống kê dạng text "khóa=giá trị"].
+ * Địa chỉ mã hóa: [độ dài 1 byte (4 hoặc 16)][byte địa chỉ][port 2 byte].
+ */
+public final class RendezvousProtocol {
+    public static final byte REGISTER = 6;
+    public static final byte PEER_ENDPOINT = 7;
+    public static final byte STATS = 8;
+
+    private RendezvousProtocol() {
+    }
+
+    public static void putAddress(ByteBuffer buffer, InetSocketAddress address) {
+        byte[] ip = address.getAddress().getAddress();
+        buffer.put((byte) ip.length).put(ip).putShort((short) address.getPort());
+    }
+
+    /**
+     * @return null nếu gói không chứa địa chỉ hợp lệ
+     */
+    public static InetSocketAddress getAddress(ByteBuffer buffer) {
+        if (buffer.remaining() < 1) return null;
+        int length = buffer.get();
+        if ((length != 4 && length != 16) || buffer.remaining() < length + 2) return null;
+        byte[] ip = new byte[length];
+        buffer.get(ip);
+        int port = buffer.getShort() & 0xFFFF;
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(ip), port);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
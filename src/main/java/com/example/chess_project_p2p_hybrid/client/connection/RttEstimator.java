@@ -0,0 +1,48 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+/**
+ * Ước lượng RTT của một đường truyền theo EWMA (như RFC 6298):
+ * srtt += (mẫu - srtt) / 8, jitter (rttvar) += (|srtt - mẫu| - jitter) / 4.
+ * Không đồng bộ: PeerFallbackManager gọi trong khóa của nó.
+ */
+final class RttEstimator {
+    private long srtt;   // ns
+    private long jitter; // ns
+    private long samples;
+    private long lastSample; // System.nanoTime() lúc có mẫu gần nhất
+
+    void sample(long rtt, long now) {
+        if (samples == 0) {
+            srtt = rtt;
+            jitter = rtt / 2;
+        } else {
+            jitter = (3 * jitter + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+        samples++;
+        lastSample = now;
+    }
+
+    void reset() {
+        srtt = 0;
+        jitter = 0;
+        samples = 0;
+        lastSample = 0;
+    }
+
+    long srtt() {
+        return srtt;
+    }
+
+    long jitter() {
+        return jitter;
+    }
+
+    long samples() {
+        return samples;
+    }
+
+    long lastSample() {
+        return lastSample;
+    }
+}
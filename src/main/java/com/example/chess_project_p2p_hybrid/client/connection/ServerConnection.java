@@ -1,12 +1,15 @@
 package com.example.chess_project_p2p_hybrid.client.connection;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -16,16 +19,29 @@ import java.util.function.Consumer;
  * 1. Đăng nhập, tham gia phòng.
  * 2. Nhận thông tin đối thủ (PEER_INFO).
  * 3. Gửi/Nhận tin nhắn Relay khi P2P lỗi.
+ * Ghi theo lô: queue() chỉ xếp frame vào hàng đợi, flush() giao cho luồng ghi gom mọi frame đang chờ, mã hóa UTF-8
+ * vào một buffer dùng lại rồi ghi một lần, nên một loạt tin gửi dồn chỉ tốn một syscall. send() là queue() + flush().
+ * Chiều đọc dùng FrameReader: giải mã thẳng từ buffer byte, không tạo String/Message mới cho mỗi dòng.
  */
 public class ServerConnection {
     private String serverHost;
     private int serverPort;
     
     private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private OutputStream out;
+    private InputStream in;
     
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "server-connection-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Queue<String> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // Chỉ dùng trong khóa của nó (luồng ghi, hoặc close() xả nốt hàng đợi)
+    private final FrameEncoder encoder = new FrameEncoder(8 * 1024, false);
+    private volatile long writes;
     private Consumer<Message> onMessageReceived;
     private Runnable onDisconnect;
     
@@ -50,23 +66,62 @@ public class ServerConnection {
         // Server connection không cần tcpNoDelay quá gắt, nhưng set true cũng tốt
         socket.setTcpNoDelay(true); 
         
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
         
         isConnected = true;
         startReading();
     }
 
     public void send(Message message) {
+        if (queue(message)) flush();
+    }
+
+    /**
+     * Xếp tin nhắn vào hàng đợi nhưng chưa ghi. Gửi dồn nhiều tin thì queue() từng tin rồi flush() một lần.
+     *
+     * @return false nếu chưa kết nối
+     */
+    public boolean queue(Message message) {
         if (!isConnected || out == null) {
             System.err.println("[ServerConnection] Cannot send: Not connected to server.");
-            return;
+            return false;
         }
-        try {
-            out.println(message.toJson());
-        } catch (Exception e) {
-            System.err.println("[ServerConnection] Error sending to server: " + e.getMessage());
-            handleDisconnect();
+        outbound.add(message.toJson());
+        return true;
+    }
+
+    /**
+     * Giao mọi tin đã queue() cho luồng ghi, trả về ngay.
+     */
+    public void flush() {
+        if (!outbound.isEmpty() && drainScheduled.compareAndSet(false, true)) writer.execute(this::drain);
+    }
+
+    /**
+     * Số lần ghi xuống socket (để đo việc gom frame).
+     */
+    long writes() {
+        return writes;
+    }
+
+    // Gom hết frame đang chờ thành một lô, một lần write. Frame tới sau khi đã hạ cờ sẽ được flush() lên lịch lần drain mới.
+    private void drain() {
+        drainScheduled.set(false);
+        synchronized (encoder) {
+            OutputStream stream = out;
+            if (outbound.isEmpty() || stream == null) return;
+            encoder.clear();
+            String frame;
+            while ((frame = outbound.poll()) != null) encoder.append(frame);
+            ByteBuffer batch = encoder.flip();
+            try {
+                stream.write(batch.array(), batch.arrayOffset() + batch.position(), batch.remaining());
+                writes++;
+            } catch (IOException e) {
+                System.err.println("[ServerConnection] Error sending to server: " + e.getMessage());
+                handleDisconnect();
+            }
         }
     }
 
@@ -83,7 +138,10 @@ public class ServerConnection {
     }
 
     public void close() {
+        // Xả nốt các frame đã send() (vd. leave_room ngay trước khi thoát) trước khi đóng socket
+        if (isConnected) drain();
         isConnected = false;
+        outbound.clear();
         try {
             if (socket != null) socket.close();
         } catch (IOException e) {
@@ -96,17 +154,21 @@ public class ServerConnection {
     }
 
     private void startReading() {
+        InputStream stream = in;
         executor.submit(() -> {
+            FrameReader reader = new FrameReader();
             try {
-                String line;
-                while (isConnected && (line = in.readLine()) != null) {
-                    try {
-                        Message msg = Message.fromJson(line);
-                        if (onMessageReceived != null) {
-                            onMessageReceived.accept(msg);
+                while (isConnected && reader.read(stream) >= 0) {
+                    while (true) {
+                        try {
+                            Message msg = reader.next();
+                            if (msg == null) break;
+                            if (onMessageReceived != null) {
+                                onMessageReceived.accept(msg);
+                            }
+                        } catch (Exception e) {
+                            System.err.println("[ServerConnection] Parse error: " + e.getMessage());
                         }
-                    } catch (Exception e) {
-                        System.err.println("[ServerConnection] Parse error: " + e.getMessage());
                     }
                 }
             } catch (IOException e) {
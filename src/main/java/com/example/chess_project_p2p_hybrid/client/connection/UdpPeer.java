@@ -0,0 +1,643 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * UdpPeer.java
+ * Kết nối P2P qua UDP với lớp tin cậy gọn nhẹ, thay cho TCP khi mạng hay mất gói (Wi-Fi):
+ * một gói mất chỉ làm chậm chính frame đó, không chặn các frame sau như TCP (head-of-line blocking).
+ * - Mỗi frame (MOVE/CHAT/SYSTEM...) mang số thứ tự; bên nhận ACK ngay với ACK tích lũy + bitmap SACK 64 frame.
+ * - Gửi lại khi hết RTO (ước lượng theo RTT đo được) hoặc ngay khi SACK cho thấy frame đã bị các frame sau vượt qua.
+ * - Bên nhận bỏ frame trùng và giao đúng thứ tự gửi.
+ * - Đằng sau NAT: punch() đăng ký với dịch vụ rendezvous của server từ chính socket này, nhận địa chỉ ngoài
+ *   của đối thủ rồi hai bên cùng gửi HELLO cho nhau để mở lỗ NAT (xem RendezvousProtocol).
+ * Một luồng selector lo mọi việc (nhận, gửi, hẹn giờ) như DirectPeer.
+ * <p>
+ * Gói tin: [loại 1 byte] rồi
+ * HELLO / HELLO_ACK: [phiên int]; DATA: [seq int][JSON UTF-8]; ACK: [seq tích lũy int][bitmap long]; BYE: rỗng.
+ */
+public class UdpPeer implements PeerTransport {
+    private static final byte HELLO = 1;
+    private static final byte HELLO_ACK = 2;
+    private static final byte DATA = 3;
+    private static final byte ACK = 4;
+    private static final byte BYE = 5;
+
+    private static final int MAX_DATAGRAM = 64 * 1024;
+    // Frame có seq lớn hơn seq đang chờ quá chừng này thì bỏ (bên gửi sẽ gửi lại)
+    private static final int RECEIVE_WINDOW = 1024;
+    // Số frame chưa được ACK tối đa đang bay; phần còn lại chờ trong hàng đợi (tránh tràn buffer khi gửi dồn)
+    private static final int SEND_WINDOW = 128;
+    private static final long HELLO_INTERVAL_NANOS = 100_000_000L;
+    // Khoảng 3 giây không có trả lời thì bỏ (đục lỗ thất bại / đối thủ không tới được)
+    private static final int MAX_HELLOS = 30;
+    private static final int MAX_REGISTERS = 50;
+    private static final long INITIAL_RTO_NANOS = 200_000_000L;
+    private static final long MIN_RTO_NANOS = 15_000_000L;
+    private static final long MAX_RTO_NANOS = 1_000_000_000L;
+    // Gửi lại quá số lần này mà vẫn không được ACK thì coi như mất kết nối
+    private static final int MAX_ATTEMPTS = 12;
+    // Số ACK cho thấy frame bị vượt qua trước khi gửi lại nhanh
+    private static final int FAST_RETRANSMIT_THRESHOLD = 2;
+
+    private final Selector selector;
+    private final DatagramChannel channel;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    private final ByteBuffer controlBuffer = ByteBuffer.allocate(16);
+    private final FrameReader reader = new FrameReader();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<byte[]> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final int localSession = ThreadLocalRandom.current().nextInt();
+    private final int listeningPort;
+
+    // Trạng thái dưới đây chỉ luồng selector đụng tới
+    private SocketAddress remote;
+    private SocketAddress connecting;
+    private int hellosSent;
+    private long nextHello;
+    private int remoteSession;
+
+    // Đục lỗ NAT: địa chỉ dịch vụ rendezvous (null khi không đăng ký) và token của người chơi trong phòng
+    private SocketAddress rendezvous;
+    private byte[] punchToken;
+    private int registersSent;
+    private long nextRegister;
+    private boolean punching;
+
+    private int nextSeq;
+    private final ArrayDeque<Pending> unacked = new ArrayDeque<>();
+    private int expectedSeq;
+    private final Map<Integer, Message> outOfOrder = new HashMap<>();
+
+    // RTT làm mịn (RFC 6298), nano giây
+    private long srtt;
+    private long rttVar;
+    private long rto = INITIAL_RTO_NANOS;
+
+    private volatile boolean isConnected = false;
+    private volatile boolean running = true;
+    private volatile long retransmits;
+    private volatile long fastRetransmits;
+    private volatile long duplicates;
+
+    private final Executor callbackExecutor;
+    private final ExecutorService ownedExecutor;
+    private volatile Consumer<Message> onMessageReceived;
+    private volatile Consumer<String> onStatusUpdate;
+    private volatile Runnable onDisconnect;
+    private volatile Runnable onConnectionEstablished;
+    private volatile Consumer<Boolean> onPunchResult;
+
+    private static final class Pending {
+        final int seq;
+        final byte[] datagram;
+        long sentAt;
+        long deadline;
+        int attempts = 1;
+        boolean retransmitted;
+        boolean sacked;
+        int overtaken;
+
+        Pending(int seq, byte[] datagram) {
+            this.seq = seq;
+            this.datagram = datagram;
+        }
+    }
+
+    public UdpPeer() {
+        this(0);
+    }
+
+    public UdpPeer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * @param callbackExecutor nơi chạy callback; phải tuần tự (null: dùng một luồng riêng)
+     */
+    public UdpPeer(int port, Executor callbackExecutor) {
+        if (callbackExecutor == null) {
+            ownedExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "udp-peer-callback"));
+            this.callbackExecutor = ownedExecutor;
+        } else {
+            ownedExecutor = null;
+            this.callbackExecutor = callbackExecutor;
+        }
+        try {
+            selector = Selector.open();
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            listeningPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open UDP peer on port " + port, e);
+        }
+        daemon(this::selectLoop, "udp-peer-selector").start();
+    }
+
+    @Override
+    public void connect(String host, int port) {
+        Thread.startVirtualThread(() -> {
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) {
+                status("P2P Connect Failed: Unknown host " + host);
+                return;
+            }
+            runOnSelector(() -> startConnect(address));
+        });
+    }
+
+    /**
+     * Đục lỗ NAT qua dịch vụ rendezvous của server: đăng ký bằng token trong PEER_INFO, chờ địa chỉ ngoài
+     * của đối thủ rồi gửi HELLO tới đó. Kết quả báo qua onPunchResult.
+     */
+    public void punch(String serverHost, int serverPort, String token) {
+        Thread.startVirtualThread(() -> {
+            InetSocketAddress address = new InetSocketAddress(serverHost, serverPort);
+            if (address.isUnresolved()) {
+                status("P2P Connect Failed: Unknown host " + serverHost);
+                return;
+            }
+            runOnSelector(() -> {
+                if (remote != null) return;
+                rendezvous = address;
+                punchToken = token.getBytes(StandardCharsets.UTF_8);
+                registersSent = 0;
+                nextRegister = System.nanoTime();
+            });
+        });
+    }
+
+    private void onPeerEndpoint(SocketAddress from) {
+        if (!from.equals(rendezvous)) return;
+        InetSocketAddress endpoint = RendezvousProtocol.getAddress(receiveBuffer);
+        if (endpoint == null) return;
+        // Đã nối được bằng đường khác thì không cần đục lỗ
+        if (remote != null) {
+            rendezvous = null;
+            return;
+        }
+        punching = true;
+        // Vẫn đăng ký tiếp tới khi nối được: địa chỉ cũ của đối thủ có thể đã chết (đối thủ vừa kết nối lại),
+        // khi đối thủ đăng ký lại thì server gửi địa chỉ mới
+        if (!endpoint.equals(connecting)) startConnect(endpoint);
+    }
+
+    private void sendRegister() {
+        ByteBuffer packet = ByteBuffer.allocate(punchToken.length + 1);
+        packet.put(RendezvousProtocol.REGISTER).put(punchToken).flip();
+        try {
+            channel.send(packet, rendezvous);
+        } catch (IOException e) {
+            log("Send error: " + e.getMessage());
+        }
+    }
+
+    private void punchFinished(boolean success) {
+        if (!punching) return;
+        punching = false;
+        log(success ? "NAT hole punching succeeded" : "NAT hole punching failed");
+        Consumer<Boolean> handler = onPunchResult;
+        if (handler != null) callbackExecutor.execute(() -> handler.accept(success));
+    }
+
+    private void startConnect(SocketAddress address) {
+        if (remote != null) return;
+        log("Connecting to UDP peer at " + address);
+        connecting = address;
+        hellosSent = 0;
+        nextHello = System.nanoTime();
+    }
+
+    @Override
+    public boolean send(Message message) {
+        if (!queue(message)) return false;
+        flush();
+        return true;
+    }
+
+    @Override
+    public boolean queue(Message message) {
+        if (!isConnected) return false;
+        outgoing.add(message.toJson().getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    // Mỗi frame vẫn là một datagram riêng; flush() chỉ gom các lần đánh thức selector
+    @Override
+    public void flush() {
+        if (!outgoing.isEmpty() && flushRequested.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                long timeout = nextTimerNanos();
+                if (timeout < 0) selector.select();
+                else if (timeout == 0) selector.selectNow();
+                else selector.select(Math.max(1, timeout / 1_000_000L));
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                if (flushRequested.getAndSet(false)) sendQueued();
+                if (!selector.selectedKeys().isEmpty()) {
+                    selector.selectedKeys().clear();
+                    receiveAll();
+                }
+                onTimers(System.nanoTime());
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) log("Selector error: " + e.getMessage());
+        } finally {
+            if (remote != null) sendControl(BYE, 0, 0, remote);
+            closeActive();
+            try {
+                channel.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            if (ownedExecutor != null) ownedExecutor.shutdown();
+        }
+    }
+
+    // Thời gian tới hẹn giờ gần nhất (ns), -1 nếu không có gì phải chờ
+    private long nextTimerNanos() {
+        long next = Long.MAX_VALUE;
+        if (connecting != null) next = nextHello;
+        if (rendezvous != null) next = Math.min(next, nextRegister);
+        for (Pending p : unacked) {
+            if (!p.sacked) next = Math.min(next, p.deadline);
+        }
+        if (next == Long.MAX_VALUE) return -1;
+        return Math.max(0, next - System.nanoTime());
+    }
+
+    private void onTimers(long now) {
+        if (connecting != null && now - nextHello >= 0) {
+            if (hellosSent >= MAX_HELLOS) {
+                log("No answer from " + connecting);
+                connecting = null;
+                rendezvous = null;
+                status("P2P Connect Failed: no answer");
+                punchFinished(false);
+            } else {
+                sendControl(HELLO, localSession, 0, connecting);
+                hellosSent++;
+                nextHello = now + HELLO_INTERVAL_NANOS;
+            }
+        }
+        if (rendezvous != null && now - nextRegister >= 0) {
+            if (registersSent >= MAX_REGISTERS) {
+                // Đã có địa chỉ đối thủ thì kết quả do HELLO quyết định
+                if (!punching) {
+                    log("No answer from rendezvous " + rendezvous);
+                    punching = true;
+                    punchFinished(false);
+                }
+                rendezvous = null;
+            } else {
+                sendRegister();
+                registersSent++;
+                nextRegister = now + HELLO_INTERVAL_NANOS;
+            }
+        }
+        boolean timedOut = false;
+        for (Pending p : unacked) {
+            if (p.sacked || now - p.deadline < 0) continue;
+            if (p.attempts >= MAX_ATTEMPTS) {
+                log("Peer stopped acknowledging, closing");
+                closeActive();
+                return;
+            }
+            if (!timedOut) {
+                // Lùi RTO theo cấp số nhân cho tới khi có ACK mới
+                rto = Math.min(rto * 2, MAX_RTO_NANOS);
+                timedOut = true;
+            }
+            retransmit(p, now);
+            retransmits++;
+        }
+    }
+
+    private void sendQueued() {
+        if (remote == null) {
+            outgoing.clear();
+            return;
+        }
+        byte[] payload;
+        long now = System.nanoTime();
+        while (unacked.size() < SEND_WINDOW && (payload = outgoing.poll()) != null) {
+            if (payload.length + 5 > MAX_DATAGRAM - 28) {
+                log("Frame too large for UDP, dropped: " + payload.length + " bytes");
+                continue;
+            }
+            ByteBuffer datagram = ByteBuffer.allocate(payload.length + 5);
+            datagram.put(DATA).putInt(nextSeq).put(payload);
+            Pending p = new Pending(nextSeq++, datagram.array());
+            unacked.add(p);
+            transmit(p, now);
+        }
+    }
+
+    private void retransmit(Pending p, long now) {
+        p.attempts++;
+        p.retransmitted = true;
+        transmit(p, now);
+    }
+
+    private void transmit(Pending p, long now) {
+        p.sentAt = now;
+        p.deadline = now + rto;
+        p.overtaken = 0;
+        try {
+            channel.send(ByteBuffer.wrap(p.datagram), remote);
+        } catch (IOException e) {
+            log("Send error: " + e.getMessage());
+        }
+    }
+
+    private void receiveAll() throws IOException {
+        SocketAddress from;
+        while ((from = receive()) != null) {
+            receiveBuffer.flip();
+            if (!receiveBuffer.hasRemaining()) continue;
+            byte type = receiveBuffer.get();
+            switch (type) {
+                case HELLO -> onHello(from, true);
+                case HELLO_ACK -> onHello(from, false);
+                case DATA -> {
+                    if (from.equals(remote) && receiveBuffer.remaining() >= 4) onData(receiveBuffer.getInt());
+                }
+                case ACK -> {
+                    if (from.equals(remote) && receiveBuffer.remaining() >= 12) {
+                        onAck(receiveBuffer.getInt(), receiveBuffer.getLong());
+                    }
+                }
+                case RendezvousProtocol.PEER_ENDPOINT -> onPeerEndpoint(from);
+                case BYE -> {
+                    if (from.equals(remote)) closeActive();
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private SocketAddress receive() throws IOException {
+        receiveBuffer.clear();
+        return channel.receive(receiveBuffer);
+    }
+
+    private void onHello(SocketAddress from, boolean request) {
+        if (receiveBuffer.remaining() < 4) return;
+        int session = receiveBuffer.getInt();
+        if (remote != null && !remote.equals(from)) return; // Đã nối với người khác
+        // HELLO_ACK chỉ nhận từ địa chỉ mình đang gọi tới
+        if (!request && remote == null && !from.equals(connecting)) return;
+        if (request) sendControl(HELLO_ACK, localSession, 0, from);
+        if (remote != null) {
+            if (session == remoteSession) return;
+            // Đối thủ khởi động lại: phiên mới, đếm lại từ đầu
+            closeActive();
+        }
+        establish(from, session);
+    }
+
+    private void establish(SocketAddress address, int session) {
+        remote = address;
+        remoteSession = session;
+        connecting = null;
+        rendezvous = null;
+        punchFinished(true);
+        nextSeq = 0;
+        expectedSeq = 0;
+        unacked.clear();
+        outOfOrder.clear();
+        isConnected = true;
+        log("P2P (UDP) Connection Established with " + address);
+        Runnable established = onConnectionEstablished;
+        Consumer<String> status = onStatusUpdate;
+        callbackExecutor.execute(() -> {
+            if (status != null) status.accept("Kết nối trực tiếp (P2P/UDP) thành công!");
+            if (established != null) established.run();
+        });
+    }
+
+    private void onData(int seq) {
+        if (seq < expectedSeq || outOfOrder.containsKey(seq)) {
+            duplicates++;
+        } else if (seq - expectedSeq < RECEIVE_WINDOW) {
+            Message msg = parse();
+            if (seq == expectedSeq) {
+                deliver(msg);
+                expectedSeq++;
+                Message next;
+                while ((next = outOfOrder.remove(expectedSeq)) != null) {
+                    deliver(next);
+                    expectedSeq++;
+                }
+            } else {
+                outOfOrder.put(seq, msg);
+            }
+        }
+        // ACK ngay, kể cả frame trùng (ACK trước có thể đã mất)
+        long sack = 0;
+        for (int i = 0; i < 64 && !outOfOrder.isEmpty(); i++) {
+            if (outOfOrder.containsKey(expectedSeq + 1 + i)) sack |= 1L << i;
+        }
+        sendControl(ACK, expectedSeq - 1, sack, remote);
+    }
+
+    private Message parse() {
+        try {
+            return reader.decode(receiveBuffer);
+        } catch (IllegalArgumentException e) {
+            log("Parse error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void deliver(Message msg) {
+        if (msg == null) return;
+        Consumer<Message> handler = onMessageReceived;
+        if (handler == null) {
+            msg.recycle();
+        } else {
+            callbackExecutor.execute(() -> handler.accept(msg));
+        }
+    }
+
+    // cumulative: seq lớn nhất đã nhận liên tục; bit i của sack: đã nhận seq cumulative + 2 + i
+    private void onAck(int cumulative, long sack) {
+        long now = System.nanoTime();
+        while (!unacked.isEmpty() && unacked.peekFirst().seq <= cumulative) {
+            Pending p = unacked.pollFirst();
+            if (!p.retransmitted && !p.sacked) sampleRtt(now - p.sentAt);
+        }
+        int highestSacked = Integer.MIN_VALUE;
+        for (Pending p : unacked) {
+            int bit = p.seq - cumulative - 2;
+            if (bit >= 0 && bit < 64 && (sack & (1L << bit)) != 0) {
+                if (!p.sacked && !p.retransmitted) sampleRtt(now - p.sentAt);
+                p.sacked = true;
+                highestSacked = p.seq;
+            }
+        }
+        // Frame chưa tới mà các frame sau đã tới: gần như chắc chắn đã mất, gửi lại không chờ RTO.
+        // Bản gửi lại chỉ bị coi là mất khi đã qua ít nhất một srtt, nên mỗi đợt mất chỉ gửi lại nhanh một lần.
+        for (Pending p : unacked) {
+            if (p.seq >= highestSacked) break;
+            if (p.sacked || ++p.overtaken < FAST_RETRANSMIT_THRESHOLD) continue;
+            if (!p.retransmitted || now - p.sentAt >= srtt) {
+                retransmit(p, now);
+                fastRetransmits++;
+            }
+        }
+        // Cửa sổ gửi vừa trống ra
+        if (!outgoing.isEmpty()) sendQueued();
+    }
+
+    private void sampleRtt(long sample) {
+        if (srtt == 0) {
+            srtt = sample;
+            rttVar = sample / 2;
+        } else {
+            rttVar = (3 * rttVar + Math.abs(srtt - sample)) / 4;
+            srtt = (7 * srtt + sample) / 8;
+        }
+        rto = Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, srtt + 4 * rttVar));
+    }
+
+    private void sendControl(byte type, int a, long b, SocketAddress to) {
+        controlBuffer.clear();
+        controlBuffer.put(type);
+        if (type == HELLO || type == HELLO_ACK) controlBuffer.putInt(a);
+        else if (type == ACK) controlBuffer.putInt(a).putLong(b);
+        controlBuffer.flip();
+        try {
+            channel.send(controlBuffer, to);
+        } catch (IOException e) {
+            log("Send error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        isConnected = false;
+        runOnSelector(() -> {
+            if (remote != null) sendControl(BYE, 0, 0, remote);
+            connecting = null;
+            closeActive();
+        });
+    }
+
+    private void closeActive() {
+        if (remote == null) return;
+        remote = null;
+        isConnected = false;
+        unacked.clear();
+        outOfOrder.clear();
+        outgoing.clear();
+        Runnable disconnect = onDisconnect;
+        if (disconnect != null) callbackExecutor.execute(disconnect);
+        log("P2P (UDP) Connection Closed.");
+    }
+
+    @Override
+    public void shutdown() {
+        isConnected = false;
+        running = false;
+        selector.wakeup();
+    }
+
+    private void runOnSelector(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void status(String text) {
+        Consumer<String> status = onStatusUpdate;
+        if (status != null) callbackExecutor.execute(() -> status.accept(text));
+    }
+
+    @Override
+    public int getListeningPort() {
+        return listeningPort;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    /**
+     * Nhận kết quả đục lỗ NAT (true: đã nối P2P qua địa chỉ server cung cấp).
+     */
+    public void setOnPunchResult(Consumer<Boolean> handler) {
+        this.onPunchResult = handler;
+    }
+
+    // Thống kê cho benchmark
+    long retransmits() {
+        return retransmits;
+    }
+
+    long fastRetransmits() {
+        return fastRetransmits;
+    }
+
+    long duplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public void setOnMessageReceived(Consumer<Message> handler) {
+        this.onMessageReceived = handler;
+    }
+
+    @Override
+    public void setOnStatusUpdate(Consumer<String> handler) {
+        this.onStatusUpdate = handler;
+    }
+
+    @Override
+    public void setOnDisconnect(Runnable handler) {
+        this.onDisconnect = handler;
+    }
+
+    @Override
+    public void setOnConnectionEstablished(Runnable handler) {
+        this.onConnectionEstablished = handler;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private void log(String msg) {
+        System.out.println("[UdpPeer] " + msg);
+    }
+}
@@ -2,6 +2,11 @@ package com.example.chess_project_p2p_hybrid.client.controller;
 
 import com.example.chess_project_p2p_hybrid.client.connection.Message;
 import com.example.chess_project_p2p_hybrid.client.connection.MessageType;
+import com.example.chess_project_p2p_hybrid.client.connection.PeerFallbackManager;
+import com.example.chess_project_p2p_hybrid.client.engine.AnalysisInfo;
+import com.example.chess_project_p2p_hybrid.client.engine.Analyzer;
+import com.example.chess_project_p2p_hybrid.client.engine.ComputerPlayer;
+import com.example.chess_project_p2p_hybrid.client.engine.book.OpeningBook;
 import com.example.chess_project_p2p_hybrid.client.handler.GameMessageHandler;
 import com.example.chess_project_p2p_hybrid.client.model.board.Position;
 import com.example.chess_project_p2p_hybrid.client.model.game.Game;
@@ -115,6 +120,8 @@ public class MainController implements Initializable {
     @FXML
     private Label roomIdLabel;
     @FXML
+    private Label networkLabel;
+    @FXML
     private Label turnLabel;
     @FXML
     private Label statusLabel;
@@ -187,10 +194,31 @@ public class MainController implements Initializable {
     private javafx.animation.Timeline gameTimer;
     private boolean isPaused = false;
 
+    // Chế độ chơi với máy (PvC): người chơi cầm Trắng, máy cầm Đen.
+    // Engine (bảng chuyển vị, luồng tìm, bitbase) chỉ tạo khi bắt đầu PvC lần đầu, đóng trong shutdown()
+    private ComputerPlayer computer;
+    private boolean vsComputer = false;
+    private final Color computerColor = Color.BLACK;
+    // Tăng mỗi khi ván thay đổi ngoài luồng (ván mới, hoàn tác, thoát) để bỏ kết quả tìm đã lỗi thời
+    private int computerRequestId = 0;
+
+    // Bảng phân tích: tìm nền cho thế cờ hiện tại, cập nhật giao diện tối đa 10 lần/giây
+    @FXML
+    private CheckBox analysisToggle;
+    @FXML
+    private Label analysisLabel;
+    // Tạo khi bật phân tích lần đầu, đóng trong shutdown()
+    private Analyzer analyzer;
+    // FEN của thế cờ đang phân tích, null nếu không phân tích
+    private String analyzedFen;
+
     // ... existing code ...
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        // Quay lại màn hình chính: controller cũ không còn dùng, giải phóng engine của nó
+        MainController previous = session.getMainController();
+        if (previous != null && previous != this) previous.shutdown();
         session.setMainController(this);
         game = new Game();
         syncManager = new GameSyncManager(game, session);
@@ -258,7 +286,7 @@ public class MainController implements Initializable {
         if (pvpButton != null)
             pvpButton.setOnAction(e -> startLocalGame());
         if (pvcButton != null)
-            pvcButton.setOnAction(e -> startGameView("[PvC với máy]"));
+            pvcButton.setOnAction(e -> startComputerGame());
         if (chatButton != null)
             chatButton.setOnAction(e -> SceneNavigator.showChatWindow());
         if (howToPlayButton != null)
@@ -284,6 +312,9 @@ public class MainController implements Initializable {
             exitRoomButton.setOnAction(e -> handleExitRoom());
         if (drawButton != null)
             drawButton.setOnAction(e -> handleDrawOffer());
+        if (analysisToggle != null) {
+            analysisToggle.selectedProperty().addListener((obs, was, on) -> refreshAnalysis());
+        }
 
         // Luôn setup handler nếu đã connected (ngay cả khi chưa có room)
         if (session.isConnected()) {
@@ -446,8 +477,10 @@ public class MainController implements Initializable {
 
         if (paused) {
             if (gameTimer != null) gameTimer.pause();
+            cancelComputerMove();
         } else {
             if (gameTimer != null) gameTimer.play();
+            requestComputerMove();
         }
     }
 
@@ -455,6 +488,8 @@ public class MainController implements Initializable {
         if (session.isLocalGame() || !session.isConnected()) {
             // Local game - chỉ cần show home và enable lại buttons
             session.setLocalGame(false);
+            vsComputer = false;
+            cancelComputerMove();
             updateButtonsForLocalGame(false);
             showHome();
             return;
@@ -614,7 +649,7 @@ public class MainController implements Initializable {
         // Chặn kéo nếu không phải lượt quân này
         if (startCol != null && startRow != null) {
             Piece piece = game.getBoard().getPiece(Position.of(startRow, startCol));
-            if (piece == null || piece.getColor() != game.getTurn()) {
+            if (piece == null || piece.getColor() != game.getTurn() || isComputerTurn()) {
                 draggedPiece = null;
                 return;
             }
@@ -777,11 +812,12 @@ public class MainController implements Initializable {
         if (syncManager.applyLocalMove(chosen)) {
             System.out.println("[MainController] ✓ Local move applied successfully");
             System.out.println("[MainController] Turn AFTER: " + game.getTurn());
-            appendHistory(chosen);
+            appendHistory();
             renderBoardFromModel();
             updateStatusLabels();
             // Gửi move sau khi đã apply thành công
             sendMoveToPeer(chosen);
+            requestComputerMove();
             selectedFrom = null;
             currentLegalMoves = java.util.Collections.emptyList();
             clearHighlights();
@@ -874,10 +910,14 @@ public class MainController implements Initializable {
         pendingPromotionTo = null;
     }
 
-    private void appendHistory(Move m) {
+    // Thêm nước vừa đi (SAN do Game tính theo thế cờ trước nước đi) vào lịch sử
+    private void appendHistory() {
         if (moveListView == null)
             return;
-        moveItems.add((moveItems.size() + 1) + ". " + m.toAlgebraicNotation());
+        List<String> san = game.getSanHistory();
+        if (san.isEmpty())
+            return;
+        moveItems.add((moveItems.size() + 1) + ". " + san.get(san.size() - 1));
         moveListView.scrollTo(moveItems.size() - 1);
     }
 
@@ -903,6 +943,7 @@ public class MainController implements Initializable {
     private void startLocalGame() {
         // Set flag local game
         session.setLocalGame(true);
+        vsComputer = false;
         
         // Set roomId để UI biết là đang trong game
         if (roomIdLabel != null) {
@@ -940,6 +981,93 @@ public class MainController implements Initializable {
         setTip("Chế độ chơi nội bộ: 2 người chơi trên cùng 1 máy. Trắng đi trước!");
     }
     
+    /**
+     * Bắt đầu ván với máy: dùng chung luật chơi nội bộ, máy tự đi khi tới lượt Đen
+     */
+    private void startComputerGame() {
+        startLocalGame();
+        vsComputer = true;
+        if (computer == null) computer = new ComputerPlayer();
+        computer.newGame();
+        if (computer.getOpeningBook() == null) {
+            // Không có file sách thì máy tự tìm ngay từ nước đầu
+            computer.setOpeningBook(OpeningBook.openDefault());
+        }
+        if (roomIdLabel != null) {
+            roomIdLabel.setText("[PvC với máy]");
+        }
+        if (lNameWhite != null) {
+            lNameWhite.setText(orDefault(session.getPlayerName(), "Bạn") + " (Trắng)");
+        }
+        if (lNameBlack != null) {
+            lNameBlack.setText("Máy (Đen)");
+        }
+        setTip("Chế độ chơi với máy: bạn cầm Trắng, đi trước!");
+    }
+
+    private boolean isComputerTurn() {
+        return vsComputer && game.getTurn() == computerColor;
+    }
+
+    /**
+     * Nếu tới lượt máy thì tìm nước trên luồng engine, xong mới đi trên luồng JavaFX.
+     * Thời gian suy nghĩ lấy theo đồng hồ còn lại của máy.
+     */
+    private void requestComputerMove() {
+        if (!isComputerTurn() || game.getResult() != GameResult.ONGOING || isPaused) return;
+        int requestId = ++computerRequestId;
+        int seconds = computerColor == Color.WHITE ? whiteTimeSeconds : blackTimeSeconds;
+        setTip("Máy đang suy nghĩ...");
+        computer.think(game, seconds * 1000L).whenComplete((result, error) ->
+                javafx.application.Platform.runLater(() -> {
+                    if (requestId != computerRequestId) return; // ván đã thay đổi trong lúc máy nghĩ
+                    if (error != null || result == null || !result.hasMove()) {
+                        System.err.println("[MainController] Computer search failed: " + error);
+                        return;
+                    }
+                    applyComputerMove(result.toMove());
+                }));
+    }
+
+    private void applyComputerMove(Move move) {
+        if (!isComputerTurn() || game.getResult() != GameResult.ONGOING) return;
+        if (syncManager.applyLocalMove(move)) {
+            appendHistory();
+            renderBoardFromModel();
+            updateStatusLabels();
+            clearHighlights();
+            if (game.getResult() == GameResult.ONGOING) {
+                List<String> sans = game.getSanHistory();
+                setTip("Máy đi " + sans.get(sans.size() - 1) + ". Tới lượt bạn!");
+            }
+        } else {
+            System.err.println("[MainController] Computer produced illegal move: " + move);
+        }
+    }
+
+    // Bỏ lần tìm đang chạy; kết quả của nó (nếu về sau) sẽ bị bỏ qua
+    private void cancelComputerMove() {
+        computerRequestId++;
+        if (computer != null) computer.cancel();
+    }
+
+    /**
+     * Dừng và giải phóng engine (máy chơi, phân tích). Gọi khi đóng ứng dụng hoặc khi controller bị thay.
+     */
+    public void shutdown() {
+        cancelComputerMove();
+        vsComputer = false;
+        if (computer != null) {
+            computer.close();
+            computer = null;
+        }
+        if (analyzer != null) {
+            analyzer.close();
+            analyzer = null;
+        }
+        analyzedFen = null;
+    }
+
     /**
      * Update buttons dựa trên chế độ local game hay online game
      */
@@ -979,6 +1107,8 @@ public class MainController implements Initializable {
     }
 
     private void startGameView(String roomId) {
+        vsComputer = false;
+        cancelComputerMove();
         if (roomIdLabel != null)
             roomIdLabel.setText(roomId);
         if (homePanelView != null && gamePanelView != null) {
@@ -999,6 +1129,7 @@ public class MainController implements Initializable {
     }
 
     private void resetGame(boolean broadcast, boolean startTimerNow) {
+        cancelComputerMove();
         syncManager.syncGameState();
         moveItems.clear();
         renderBoardFromModel();
@@ -1168,12 +1299,15 @@ public class MainController implements Initializable {
         }
 
         // Undo local
-        if (game.undoLastMove()) {
+        cancelComputerMove();
+        if (syncManager.undoLastMove()) {
             System.out.println("[MainController] Undo successful - History size: " + game.getHistory().size());
-            rebuildHistoryFromGame();
-            renderBoardFromModel();
-            updateStatusLabels();
-            clearHighlights();
+            refreshAfterUndo();
+            // PvC: hoàn tác luôn nước của người chơi để lại tới lượt người chơi
+            if (isComputerTurn() && syncManager.undoLastMove()) {
+                refreshAfterUndo();
+            }
+            requestComputerMove();
 
             // Trong P2P mode, gửi signal cho đối thủ để đồng bộ
             if (!session.isLocalGame() && session.isConnected()) {
@@ -1190,6 +1324,34 @@ public class MainController implements Initializable {
         }
     }
 
+    /**
+     * Cập nhật UI sau khi hoàn tác một nước: chỉ bỏ dòng cuối của lịch sử thay vì dựng lại toàn bộ.
+     */
+    public void refreshAfterUndo() {
+        if (moveItems.size() > game.getHistory().size()) {
+            moveItems.remove(moveItems.size() - 1);
+        } else {
+            rebuildHistoryFromGame();
+        }
+        selectedFrom = null;
+        currentLegalMoves = java.util.Collections.emptyList();
+        renderBoardFromModel();
+        updateStatusLabels();
+        clearHighlights();
+    }
+
+    /**
+     * Cập nhật UI sau khi nạp snapshot FEN từ đối thủ: thế cờ mới không có lịch sử nước đi.
+     */
+    public void refreshAfterResync() {
+        selectedFrom = null;
+        currentLegalMoves = java.util.Collections.emptyList();
+        renderBoardFromModel();
+        updateStatusLabels();
+        rebuildHistoryFromGame();
+        clearHighlights();
+    }
+
     private void handleCreateRoom() {
         if (!ensureConnected())
             return;
@@ -1260,6 +1422,78 @@ public class MainController implements Initializable {
         if (selectedFrom == null) {
             highlightCheckIndicator();
         }
+        refreshAnalysis();
+    }
+
+    /**
+     * Gọi mỗi khi thế cờ có thể đã đổi: chỉ khởi động lại phân tích khi thế cờ thực sự khác.
+     * Không phân tích ván online để không thành trợ giúp khi đấu người.
+     */
+    private void refreshAnalysis() {
+        if (analysisToggle == null || analysisLabel == null) return;
+        String reason = null;
+        if (!analysisToggle.isSelected()) {
+            reason = "Đang tắt";
+        } else if (!session.isLocalGame()) {
+            reason = "Chỉ phân tích được ván chơi trên máy này";
+        } else if (game.getResult() != GameResult.ONGOING) {
+            reason = "Ván đã kết thúc";
+        }
+        if (reason != null) {
+            if (analyzer != null) analyzer.stop();
+            analyzedFen = null;
+            analysisLabel.setText(reason);
+            return;
+        }
+
+        String fen = game.toFen();
+        if (fen.equals(analyzedFen)) return;
+        analyzedFen = fen;
+        analysisLabel.setText("Đang phân tích...");
+        if (analyzer == null) {
+            analyzer = new Analyzer(this::showAnalysis, javafx.application.Platform::runLater);
+            analyzer.setOpeningBook(OpeningBook.openDefault());
+        }
+        analyzer.analyze(game);
+    }
+
+    /**
+     * Hiển thị đường truyền đang dùng và RTT ± jitter của từng đường (gọi trên luồng UI).
+     */
+    public void showPathStats(PeerFallbackManager.PathStats stats) {
+        if (networkLabel == null) return;
+        String path = stats.active() == PeerFallbackManager.Path.P2P ? "P2P" : "Relay";
+        networkLabel.setText("Mạng: " + path + " | P2P " + formatRtt(stats.p2pRttMillis(), stats.p2pJitterMillis())
+                + " | Relay " + formatRtt(stats.relayRttMillis(), stats.relayJitterMillis()));
+    }
+
+    private static String formatRtt(double rtt, double jitter) {
+        if (rtt < 0) return "-";
+        return String.format("%.0f ± %.0f ms", rtt, jitter);
+    }
+
+    private void showAnalysis(AnalysisInfo info) {
+        if (analysisLabel == null) return;
+        StringBuilder sb = new StringBuilder();
+        if (info.mateIn() != 0) {
+            sb.append(info.mateIn() > 0 ? "Trắng" : "Đen").append(" chiếu hết sau ").append(Math.abs(info.mateIn())).append(" nước");
+        } else {
+            sb.append(String.format("%+.2f", info.score() / 100.0));
+        }
+        sb.append("  •  độ sâu ").append(info.depth())
+                .append("  •  ").append(info.nodesPerSecond() / 1000).append(" kN/s");
+        if (info.tablebase() != null) {
+            sb.append("\nBitbase: ").append(switch (info.tablebase()) {
+                case WIN -> "Trắng thắng";
+                case LOSS -> "Đen thắng";
+                case DRAW -> "hòa";
+            });
+        }
+        if (!info.bookMoves().isEmpty()) {
+            sb.append("\nSách: ").append(String.join(", ", info.bookMoves()));
+        }
+        sb.append("\n").append(String.join(" ", info.pv()));
+        analysisLabel.setText(sb.toString());
     }
 
     private String translateGameResult(GameResult result) {
@@ -1271,6 +1505,7 @@ public class MainController implements Initializable {
             case DRAW_BY_AGREEMENT -> "Hòa do thỏa thuận";
             case DRAW_50_MOVES -> "Hòa (50 nước đi)";
             case DRAW_THREEFOLD_REPETITION -> "Hòa (lặp lại 3 lần)";
+            case DRAW_INSUFFICIENT_MATERIAL -> "Hòa (không đủ quân chiếu hết)";
         };
     }
 
@@ -1341,6 +1576,10 @@ public class MainController implements Initializable {
             setTip(message);
             return;
         }
+        if (isComputerTurn()) {
+            setTip("Máy đang suy nghĩ...");
+            return;
+        }
         Position pos = Position.of(row, col);
         Piece piece = game.getBoard().getPiece(pos);
         if (piece == null)
@@ -1356,10 +1595,11 @@ public class MainController implements Initializable {
                 if (syncManager.applyLocalMove(chosen)) {
                     System.out.println("[MainController] ✓ Local move applied successfully");
                     System.out.println("[MainController] Turn AFTER: " + game.getTurn());
-                    appendHistory(chosen);
+                    appendHistory();
                     renderBoardFromModel();
                     updateStatusLabels();
                     sendMoveToPeer(chosen);
+                    requestComputerMove();
                     selectedFrom = null;
                     currentLegalMoves = java.util.Collections.emptyList();
                     clearHighlights();
@@ -1381,8 +1621,8 @@ public class MainController implements Initializable {
     private void rebuildHistoryFromGame() {
         moveItems.clear();
         int index = 1;
-        for (Move mv : game.getHistory()) {
-            moveItems.add(index++ + ". " + mv.toAlgebraicNotation());
+        for (String san : game.getSanHistory()) {
+            moveItems.add(index++ + ". " + san);
         }
     }
 
@@ -1418,15 +1658,8 @@ public class MainController implements Initializable {
     }
 
     private Position findKingPosition(Color color) {
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece piece = game.getBoard().getPiece(Position.of(r, c));
-                if (piece != null && piece.getType() == PieceType.KING && piece.getColor() == color) {
-                    return Position.of(r, c);
-                }
-            }
-        }
-        return null;
+        int sq = game.getBoard().kingSquare(color);
+        return sq < 0 ? null : Position.ofIndex(sq);
     }
 
     private void setTip(String message) {
@@ -1457,6 +1690,10 @@ public class MainController implements Initializable {
             setTip(message);
             return;
         }
+        if (isComputerTurn()) {
+            setTip("Máy đang suy nghĩ...");
+            return;
+        }
         Position target = Position.of(row, col);
         // Nếu đã chọn nguồn và target là nước hợp lệ → đi
         if (selectedFrom != null && !currentLegalMoves.isEmpty()) {
@@ -1469,10 +1706,11 @@ public class MainController implements Initializable {
                 if (syncManager.applyLocalMove(chosen)) {
                     System.out.println("[MainController] ✓ Local move applied successfully");
                     System.out.println("[MainController] Turn AFTER: " + game.getTurn());
-                    appendHistory(chosen);
+                    appendHistory();
                     renderBoardFromModel();
                     updateStatusLabels();
                     sendMoveToPeer(chosen);
+                    requestComputerMove();
                     selectedFrom = null;
                     currentLegalMoves = java.util.Collections.emptyList();
                     clearHighlights();
@@ -0,0 +1,21 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.engine.bitbase.Bitbases;
+
+import java.util.List;
+
+/**
+ * Một bản cập nhật của bảng phân tích. Điểm, chiếu hết và bitbase đều theo góc nhìn bên Trắng.
+ *
+ * @param depth          độ sâu của lần lặp hoàn chỉnh
+ * @param score          điểm (centipawn)
+ * @param mateIn         chiếu hết sau bao nhiêu nước (dương: Trắng thắng), 0 nếu không có
+ * @param nodes          số nút đã duyệt
+ * @param nodesPerSecond tốc độ tìm
+ * @param pv             biến chính dạng SAN
+ * @param bookMoves      các nước trong sách khai cuộc dạng SAN (rỗng nếu ra khỏi sách)
+ * @param tablebase      kết quả bitbase, null nếu thế cờ không có trong bitbase
+ */
+public record AnalysisInfo(int depth, int score, int mateIn, long nodes, long nodesPerSecond,
+                           List<String> pv, List<String> bookMoves, Bitbases.Outcome tablebase) {
+}
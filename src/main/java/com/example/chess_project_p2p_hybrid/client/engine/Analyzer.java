@@ -0,0 +1,161 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.engine.bitbase.Bitbases;
+import com.example.chess_project_p2p_hybrid.client.engine.book.OpeningBook;
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+import com.example.chess_project_p2p_hybrid.client.model.game.San;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Phân tích nền: tìm không giới hạn thời gian cho thế cờ hiện tại trên một luồng riêng và gửi độ sâu,
+ * điểm, biến chính về giao diện tối đa 10 lần mỗi giây (các lần lặp nông xong liên tục chỉ giữ bản mới nhất).
+ * <p>
+ * Mỗi lần thế cờ đổi gọi analyze(): lần tìm cũ dừng ngay (cờ dừng được kiểm tra ở mọi nút) và lần tìm mới
+ * chạy ngay sau nó trên cùng luồng. Kết quả của lần tìm cũ không bao giờ tới được giao diện.
+ */
+public final class Analyzer implements AutoCloseable {
+    private static final int TABLE_MB = 16;
+    // Tối đa 10 cập nhật mỗi giây
+    private static final long PUBLISH_INTERVAL_NANOS = 100_000_000L;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(ComputerPlayer.engineThreads("chess-analysis"));
+    // Gom cập nhật và đổi biến chính sang SAN, để luồng tìm không phải chờ
+    private final ScheduledExecutorService publisher =
+            Executors.newSingleThreadScheduledExecutor(ComputerPlayer.engineThreads("chess-analysis-publish"));
+    // Giữ qua các thế cờ: phân tích tiếp sau một nước đi dùng lại được phần lớn bảng
+    private final TranspositionTable table = new TranspositionTable(TABLE_MB);
+    private final Consumer<AnalysisInfo> sink;
+    private final Executor sinkExecutor;
+    private volatile OpeningBook book;
+
+    // Lần phân tích đang hiệu lực; chỉ đổi trên luồng sở hữu game
+    private volatile Session current;
+    private final AtomicReference<Update> pending = new AtomicReference<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile long lastPublish = System.nanoTime() - PUBLISH_INTERVAL_NANOS;
+
+    private record Session(Search search, String fen, Color turn, List<String> bookMoves, Bitbases.Outcome tablebase) {
+    }
+
+    private record Update(Session session, SearchResult result, int[] pv) {
+    }
+
+    /**
+     * @param sink         nhận cập nhật
+     * @param sinkExecutor luồng gọi sink (ví dụ Platform::runLater)
+     */
+    public Analyzer(Consumer<AnalysisInfo> sink, Executor sinkExecutor) {
+        this.sink = sink;
+        this.sinkExecutor = sinkExecutor;
+        // Như ComputerPlayer: nạp bitbase trên luồng phân tích, trước lần tìm đầu tiên
+        executor.execute(Bitbases::getDefault);
+    }
+
+    // null để không hiện nước trong sách
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Dừng phân tích cũ và bắt đầu phân tích thế cờ hiện tại của game. Phải gọi trên luồng sở hữu game.
+     */
+    public void analyze(Game game) {
+        stop();
+        Color turn = game.getTurn();
+        Bitbases bitbases = Bitbases.ifLoaded();
+        Bitbases.Outcome outcome = bitbases != null ? bitbases.probe(game.getBoard(), turn) : null;
+        Session session = new Session(new Search(game, table), game.toFen(), turn,
+                bookMoves(game), turn == Color.WHITE || outcome == null ? outcome : flip(outcome));
+        session.search().setListener((result, pv) -> offer(new Update(session, result, pv)));
+        current = session;
+        executor.execute(() -> {
+            if (current == session) session.search().search(0, Search.MAX_PLY);
+        });
+    }
+
+    /**
+     * Dừng phân tích đang chạy (nếu có); không gửi thêm cập nhật nào của nó.
+     */
+    public void stop() {
+        Session session = current;
+        current = null;
+        if (session != null) session.search().stop();
+    }
+
+    // Luồng tìm: chỉ giữ bản mới nhất, hẹn gửi khi đã đủ khoảng cách với lần gửi trước
+    private void offer(Update update) {
+        if (update.session() != current) return;
+        pending.set(update);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        long delay = Math.max(0, lastPublish + PUBLISH_INTERVAL_NANOS - System.nanoTime());
+        publisher.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void flush() {
+        Update update = pending.getAndSet(null);
+        if (update != null && update.session() == current) {
+            AnalysisInfo info = describe(update);
+            lastPublish = System.nanoTime();
+            sinkExecutor.execute(() -> {
+                if (update.session() == current) sink.accept(info);
+            });
+        }
+        flushScheduled.set(false);
+        // Bản cập nhật tới trong lúc đang gửi thì hẹn lần sau
+        if (pending.get() != null) scheduleFlush();
+    }
+
+    private static AnalysisInfo describe(Update update) {
+        Session session = update.session();
+        SearchResult result = update.result();
+        int sign = session.turn() == Color.WHITE ? 1 : -1;
+
+        Game line = Game.fromFen(session.fen());
+        List<String> pv = new ArrayList<>(update.pv().length);
+        for (int move : update.pv()) {
+            pv.add(San.toSan(line, move));
+            if (!line.applyMoveIfLegal(PackedMove.toMove(move))) break;
+        }
+        return new AnalysisInfo(result.depth(), result.score() * sign, result.mateIn() * sign, result.nodes(),
+                result.nodesPerSecond(), pv, session.bookMoves(), session.tablebase());
+    }
+
+    private List<String> bookMoves(Game game) {
+        OpeningBook book = this.book;
+        if (book == null) return List.of();
+        List<String> moves = new ArrayList<>();
+        for (OpeningBook.BookMove m : book.lookup(game)) moves.add(San.toSan(game, m.move()));
+        return moves;
+    }
+
+    private static Bitbases.Outcome flip(Bitbases.Outcome outcome) {
+        return switch (outcome) {
+            case WIN -> Bitbases.Outcome.LOSS;
+            case LOSS -> Bitbases.Outcome.WIN;
+            case DRAW -> Bitbases.Outcome.DRAW;
+        };
+    }
+
+    @Override
+    public void close() {
+        stop();
+        executor.shutdownNow();
+        publisher.shutdownNow();
+    }
+}
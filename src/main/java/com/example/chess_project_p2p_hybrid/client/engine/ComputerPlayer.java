@@ -0,0 +1,133 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.engine.bitbase.Bitbases;
+import com.example.chess_project_p2p_hybrid.client.engine.book.OpeningBook;
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Máy chơi cờ: chạy Lazy SMP trên các luồng nền riêng (không bao giờ trên luồng JavaFX).
+ * Luồng engine có độ ưu tiên thấp hơn bình thường và mặc định chừa lại một nhân cho luồng render.
+ * Thời gian cho mỗi nước lấy theo thời gian còn lại trên đồng hồ của máy.
+ * Khi thế cờ còn trong sách khai cuộc thì đi theo sách, không tìm.
+ * Bitbase tàn cuộc được nạp (hoặc sinh lần đầu) trên luồng engine ngay khi tạo, không chặn luồng UI;
+ * lần tìm xếp hàng sau việc đó trên cùng luồng nên luôn có bitbase. Tạo khi cần (bắt đầu PvC) và close() khi xong.
+ */
+public class ComputerPlayer implements AutoCloseable {
+    private static final int TABLE_MB = 32;
+    private static final long MIN_MOVE_MILLIS = 50;
+    private static final long MAX_MOVE_MILLIS = 5_000;
+    // Giả định còn khoảng 30 nước nữa phải đi với thời gian còn lại
+    private static final int MOVES_TO_GO = 30;
+
+    private final int threads;
+    // Luồng chính của mỗi lần tìm
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(engineThreads("chess-engine"));
+    // Luồng phụ Lazy SMP (tách pool để luồng chính không bao giờ phải chờ chỗ)
+    private final ExecutorService helpers;
+    // Chỉ bị xóa trên luồng engine; các luồng tìm dùng chung không khóa
+    private final TranspositionTable table = new TranspositionTable(TABLE_MB);
+    private volatile LazySmpSearch current;
+    private volatile OpeningBook book;
+
+    public ComputerPlayer() {
+        this(defaultThreads());
+    }
+
+    /**
+     * @param threads số luồng tìm song song (>= 1)
+     */
+    public ComputerPlayer(int threads) {
+        this.threads = Math.max(1, threads);
+        this.helpers = this.threads > 1
+                ? Executors.newFixedThreadPool(this.threads - 1, engineThreads("chess-engine-helper"))
+                : null;
+        executor.execute(Bitbases::getDefault);
+    }
+
+    // Chừa một nhân cho luồng JavaFX
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return book;
+    }
+
+    // null để tắt sách khai cuộc
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Bắt đầu tìm nước cho bên đang tới lượt trong game. Phải gọi trên luồng sở hữu game (luồng UI):
+     * thế cờ được chụp lại ngay, sau đó game có thay đổi cũng không ảnh hưởng tới lần tìm này.
+     *
+     * @param remainingMillis thời gian còn lại trên đồng hồ của máy (<= 0 nếu không dùng đồng hồ)
+     */
+    public CompletableFuture<SearchResult> think(Game game, long remainingMillis) {
+        cancel();
+        OpeningBook book = this.book;
+        if (book != null) {
+            int move = book.pick(game, ThreadLocalRandom.current());
+            if (move != PackedMove.NONE) {
+                current = null;
+                return CompletableFuture.completedFuture(new SearchResult(move, 0, 0, 0, 0));
+            }
+        }
+        LazySmpSearch search = new LazySmpSearch(game, table, threads);
+        current = search;
+        long budget = moveTime(remainingMillis);
+        return CompletableFuture.supplyAsync(() -> search.search(budget, Search.MAX_PLY, helpers), executor);
+    }
+
+    /**
+     * Dừng lần tìm đang chạy (nếu có); future của nó vẫn hoàn thành với nước tốt nhất đã tìm được.
+     */
+    public void cancel() {
+        LazySmpSearch search = current;
+        if (search != null) search.stop();
+    }
+
+    /**
+     * Xóa bảng chuyển vị khi sang ván mới (chạy trên luồng engine, sau lần tìm đang dở).
+     */
+    public void newGame() {
+        cancel();
+        executor.execute(table::clear);
+    }
+
+    static long moveTime(long remainingMillis) {
+        if (remainingMillis <= 0) return 1_000;
+        long budget = Math.min(remainingMillis / MOVES_TO_GO, MAX_MOVE_MILLIS);
+        return Math.max(budget, Math.min(MIN_MOVE_MILLIS, remainingMillis / 2));
+    }
+
+    static ThreadFactory engineThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        };
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+        if (helpers != null) helpers.shutdownNow();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Đo thời gian tới độ sâu (time-to-depth) của Lazy SMP với 1/2/4/8 luồng trên vài thế cờ chuẩn.
+ * Mỗi lần đo dùng bảng chuyển vị mới để các lần không ăn ké kết quả của nhau.
+ * Tham số: [độ sâu] [số luồng...], mặc định 9 và 1 2 4 8.
+ */
+public final class EngineBench {
+    private static final String[] POSITIONS = {
+            Game.START_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+    };
+    private static final int TABLE_MB = 64;
+
+    private EngineBench() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int[] threadCounts = {1, 2, 4, 8};
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) threadCounts[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("depth %d, %d CPU(s)%n", depth, Runtime.getRuntime().availableProcessors());
+        // Chạy trước một lượt không tính giờ để JIT biên dịch xong, tránh lần đo đầu (1 luồng) bị thiệt
+        for (String fen : POSITIONS) {
+            new Search(Game.fromFen(fen), new TranspositionTable(TABLE_MB)).search(0, Math.max(1, depth - 1));
+        }
+        long baseline = 0;
+        for (int threads : threadCounts) {
+            ExecutorService helpers = Executors.newFixedThreadPool(Math.max(1, threads - 1), r -> {
+                Thread t = new Thread(r, "bench-helper");
+                t.setDaemon(true);
+                return t;
+            });
+            long millis = 0;
+            long nodes = 0;
+            for (String fen : POSITIONS) {
+                LazySmpSearch search = new LazySmpSearch(Game.fromFen(fen), new TranspositionTable(TABLE_MB), threads);
+                SearchResult result = search.search(0, depth, helpers);
+                search.awaitHelpers();
+                millis += result.millis();
+                nodes += result.nodes();
+            }
+            helpers.shutdownNow();
+
+            if (baseline == 0) baseline = Math.max(1, millis);
+            System.out.printf("threads %d: %6d ms  %10d nodes  %8d nps  speedup %.2fx%n",
+                    threads, millis, nodes, nodes * 1000 / Math.max(1, millis), (double) baseline / Math.max(1, millis));
+        }
+    }
+}
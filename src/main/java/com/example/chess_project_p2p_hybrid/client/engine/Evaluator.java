@@ -0,0 +1,140 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+/**
+ * Hàm lượng giá tĩnh: vật chất + bảng vị trí quân (piece-square table).
+ * Bảng viết theo góc nhìn Trắng với ô 0 = a8 (giống chỉ số Board); quân Đen tra ô lật dọc (sq ^ 56).
+ * Vua dùng hai bảng trung cuộc / tàn cuộc trộn theo lượng quân còn lại trên bàn.
+ */
+public final class Evaluator {
+    // Giá trị quân theo thứ tự PieceType (vua không tính)
+    static final int[] VALUE = {100, 320, 330, 500, 900, 0};
+
+    private static final int BISHOP_PAIR = 30;
+    // Phase tối đa = 4 mã/tượng * 1 + 4 xe * 2 + 2 hậu * 4
+    private static final int MAX_PHASE = 24;
+    private static final int[] PHASE = {0, 1, 1, 2, 4, 0};
+
+    private static final int[] PAWN = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0,
+    };
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50,
+    };
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20,
+    };
+    private static final int[] ROOK = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0,
+    };
+    private static final int[] QUEEN = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20,
+    };
+    private static final int[] KING_MIDDLE = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20,
+    };
+    private static final int[] KING_END = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50,
+    };
+
+    // TABLE[type][sq]: giá trị quân + vị trí, đã cộng sẵn để mỗi quân chỉ tra một lần
+    private static final int[][] TABLE = new int[5][64];
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    static {
+        int[][] pst = {PAWN, KNIGHT, BISHOP, ROOK, QUEEN};
+        for (int t = 0; t < pst.length; t++) {
+            for (int sq = 0; sq < 64; sq++) TABLE[t][sq] = VALUE[t] + pst[t][sq];
+        }
+    }
+
+    private Evaluator() {
+    }
+
+    /**
+     * Điểm (centipawn) theo góc nhìn bên side: dương là side đang hơn.
+     */
+    public static int evaluate(Board board, Color side) {
+        int score = 0;
+        int phase = 0;
+        for (int t = 0; t < 5; t++) {
+            int[] table = TABLE[t];
+            long white = board.pieceBitboard(Color.WHITE, TYPES[t]);
+            long black = board.pieceBitboard(Color.BLACK, TYPES[t]);
+            phase += PHASE[t] * (Long.bitCount(white) + Long.bitCount(black));
+            while (white != 0) {
+                score += table[Long.numberOfTrailingZeros(white)];
+                white &= white - 1;
+            }
+            while (black != 0) {
+                score -= table[Long.numberOfTrailingZeros(black) ^ 56];
+                black &= black - 1;
+            }
+        }
+        if (board.pieceCount(Color.WHITE, PieceType.BISHOP) >= 2) score += BISHOP_PAIR;
+        if (board.pieceCount(Color.BLACK, PieceType.BISHOP) >= 2) score -= BISHOP_PAIR;
+
+        int whiteKing = board.kingSquare(Color.WHITE);
+        int blackKing = board.kingSquare(Color.BLACK);
+        if (whiteKing >= 0 && blackKing >= 0) {
+            phase = Math.min(phase, MAX_PHASE);
+            int middle = KING_MIDDLE[whiteKing] - KING_MIDDLE[blackKing ^ 56];
+            int end = KING_END[whiteKing] - KING_END[blackKing ^ 56];
+            score += (middle * phase + end * (MAX_PHASE - phase)) / MAX_PHASE;
+        }
+        return side == Color.WHITE ? score : -score;
+    }
+}
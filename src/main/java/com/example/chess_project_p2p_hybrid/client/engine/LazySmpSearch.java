@@ -0,0 +1,67 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Lazy SMP: nhiều Search cùng tìm một thế cờ, chỉ chia sẻ bảng chuyển vị (không khóa).
+ * Luồng chính quản lý thời gian và cho ra kết quả; luồng phụ tìm không giới hạn thời gian cho tới khi
+ * luồng chính xong, lợi ích đến từ các entry chúng ghi vào bảng. Luồng phụ thứ lẻ bắt đầu sâu hơn một tầng
+ * để các luồng không đi cùng một nhánh cùng lúc.
+ */
+public final class LazySmpSearch {
+    private final Search main;
+    private final Search[] helpers;
+    private CompletableFuture<?>[] running = new CompletableFuture<?>[0];
+
+    /**
+     * Chụp thế cờ cho tất cả các luồng; phải gọi trên luồng sở hữu game.
+     *
+     * @param threads tổng số luồng tìm (gồm cả luồng chính)
+     */
+    public LazySmpSearch(Game game, TranspositionTable table, int threads) {
+        main = new Search(game, table);
+        helpers = new Search[Math.max(0, threads - 1)];
+        for (int i = 0; i < helpers.length; i++) helpers[i] = new Search(main);
+    }
+
+    /**
+     * Tìm trên luồng gọi, các luồng phụ chạy trên helperExecutor. Trả về ngay khi luồng chính xong
+     * (luồng phụ đã được yêu cầu dừng nhưng có thể chưa thoát hẳn).
+     *
+     * @param millis thời gian tối đa (ms), <= 0 là chỉ dừng theo độ sâu
+     */
+    public SearchResult search(long millis, int maxDepth, Executor helperExecutor) {
+        running = new CompletableFuture<?>[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = helpers[i];
+            int startDepth = (i & 1) == 0 ? 2 : 1;
+            running[i] = CompletableFuture.runAsync(() -> helper.search(0, startDepth, maxDepth), helperExecutor);
+        }
+
+        SearchResult result;
+        try {
+            result = main.search(millis, maxDepth);
+        } finally {
+            for (Search helper : helpers) helper.stop();
+        }
+        long nodes = result.nodes();
+        for (Search helper : helpers) nodes += helper.nodes();
+        return new SearchResult(result.move(), result.score(), result.depth(), nodes, result.millis());
+    }
+
+    /**
+     * Dừng mọi luồng; search() trả về nước tốt nhất đã có. Gọi được từ luồng khác.
+     */
+    public void stop() {
+        main.stop();
+        for (Search helper : helpers) helper.stop();
+    }
+
+    // Chờ các luồng phụ của lần search() vừa rồi thoát hẳn (benchmark cần bảng/CPU rảnh trước lần đo sau)
+    void awaitHelpers() {
+        CompletableFuture.allOf(running).join();
+    }
+}
@@ -0,0 +1,483 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.engine.bitbase.Bitbases;
+import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.board.MoveGenerator;
+import com.example.chess_project_p2p_hybrid.client.model.board.Zobrist;
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.Move;
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Piece;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tìm nước đi: iterative deepening + alpha-beta (PVS, giảm độ sâu nước muộn) + quiescence.
+ * Sắp xếp nước: nước trong bảng chuyển vị, bắt quân theo MVV-LVA, killer, history.
+ * Tàn cuộc KPK/KRK/KQK tra bitbase (nếu đã nạp) thay vì tìm tiếp.
+ * <p>
+ * Mỗi Search làm việc trên bản sao bàn cờ riêng (dựng lại từ FEN đầu ván + lịch sử, để có khóa Zobrist
+ * của các thế cờ trước đó cho việc phát hiện lặp), nên tạo trên luồng UI rồi chạy ở luồng khác được.
+ * Trong lúc tìm không cấp phát: mỗi tầng có buffer nước/điểm riêng.
+ */
+public final class Search {
+    public static final int MAX_PLY = 64;
+    static final int INFINITY = 32000;
+    static final int MATE = 31000;
+    // Điểm có trị tuyệt đối từ ngưỡng này trở lên là điểm chiếu hết (kèm khoảng cách)
+    static final int MATE_BOUND = MATE - MAX_PLY;
+    // Thắng chắc theo bitbase nhưng chưa thấy đường chiếu hết: thấp hơn mọi điểm chiếu hết
+    static final int KNOWN_WIN = 20000;
+    private static final int PROMOTED_BONUS = 200;
+
+    // Kiểm tra hết giờ mỗi 2048 nút
+    private static final int CHECK_INTERVAL = 2047;
+
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 26;
+    private static final int KILLER_SCORE = 1 << 24;
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    /**
+     * Nhận kết quả mỗi lần lặp hoàn chỉnh (chạy trên luồng tìm, nên phải xử lý thật nhanh).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param pv biến chính (PackedMove) lấy từ bảng chuyển vị, pv[0] là nước tốt nhất
+         */
+        void onIteration(SearchResult result, int[] pv);
+    }
+
+    private final Board board;
+    private final MoveGenerator generator;
+    private final TranspositionTable table;
+    // Lấy lúc search() bắt đầu trên luồng engine (sau khi bitbase đã nạp); null nếu chưa nạp xong (không chờ)
+    private Bitbases bitbases;
+    private final Color rootSide;
+
+    private final int[][] moves = new int[MAX_PLY + 1][PackedMove.MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY + 1][PackedMove.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    // history[from * 64 + to]: thưởng cho nước yên lặng gây cắt tỉa
+    private final int[] history = new int[64 * 64];
+
+    // Khóa (kèm lượt đi) của mọi thế cờ từ đầu ván; keys[rootIndex + ply] là nút đang xét ở tầng ply
+    private final long[] keys;
+    private final int rootIndex;
+    // Đồng hồ 50 nước tại mỗi tầng
+    private final int[] halfMoves = new int[MAX_PLY + 2];
+
+    private long nodes;
+    private long deadline;
+    // false: chỉ dừng khi gọi stop() hoặc đủ độ sâu (luồng phụ Lazy SMP, benchmark)
+    private boolean timed;
+    private volatile boolean stopped;
+    private Listener listener;
+
+    // Nước/điểm tốt nhất ở gốc trong lần lặp đang chạy
+    private int rootBest;
+    private int rootScore;
+
+    public Search(Game game, TranspositionTable table) {
+        this.table = table;
+        Game start = Game.fromFen(game.getStartFen());
+        List<Move> played = game.getHistory();
+
+        board = start.getBoard();
+        Color side = start.getTurn();
+        keys = new long[played.size() + MAX_PLY + 2];
+        keys[0] = key(board, side);
+        for (int i = 0; i < played.size(); i++) {
+            board.applyMove(PackedMove.fromMove(played.get(i)));
+            side = side.opposite();
+            keys[i + 1] = key(board, side);
+        }
+        rootIndex = played.size();
+        rootSide = side;
+        halfMoves[0] = game.getHalfMoveClock();
+        generator = new MoveGenerator(board);
+    }
+
+    /**
+     * Bản sao cho luồng tìm phụ: cùng thế cờ và bảng chuyển vị, bàn cờ/buffer/killer/history riêng.
+     * Phải tạo trước khi search() của bản gốc bắt đầu.
+     */
+    Search(Search other) {
+        table = other.table;
+        board = other.board.clone();
+        keys = other.keys.clone();
+        rootIndex = other.rootIndex;
+        rootSide = other.rootSide;
+        halfMoves[0] = other.halfMoves[0];
+        generator = new MoveGenerator(board);
+    }
+
+    /**
+     * Tìm nước tốt nhất trong giới hạn thời gian / độ sâu. Chạy trên luồng gọi.
+     *
+     * @param millis   thời gian tối đa (ms), <= 0 là không giới hạn
+     * @param maxDepth độ sâu tối đa (tính bằng bán nước)
+     */
+    public SearchResult search(long millis, int maxDepth) {
+        return search(millis, 1, maxDepth);
+    }
+
+    SearchResult search(long millis, int startDepth, int maxDepth) {
+        long start = System.nanoTime();
+        if (bitbases == null) bitbases = Bitbases.ifLoaded();
+        timed = millis > 0;
+        deadline = start + millis * 1_000_000L;
+        nodes = 0;
+
+        generator.analyze(rootSide);
+        int rootCount = generator.generate(moves[0], 0);
+        if (rootCount == 0) return new SearchResult(PackedMove.NONE, 0, 0, 0, 0);
+        // Phòng trường hợp hết giờ ngay lần lặp đầu
+        int best = moves[0][0];
+        int bestScore = 0;
+        int completed = 0;
+
+        maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+        for (int depth = Math.min(startDepth, maxDepth); depth <= maxDepth; depth++) {
+            rootBest = PackedMove.NONE;
+            int score = negamax(depth, 0, -INFINITY, INFINITY, rootSide);
+            // Lần lặp bị ngắt: nước tốt nhất tìm được đã được so với nước tốt nhất cũ (được thử trước) nên vẫn dùng được
+            if (rootBest != PackedMove.NONE) {
+                best = rootBest;
+                bestScore = stopped ? rootScore : score;
+            }
+            if (stopped) break;
+            completed = depth;
+            if (listener != null) {
+                long millisSoFar = (System.nanoTime() - start) / 1_000_000L;
+                listener.onIteration(new SearchResult(best, bestScore, depth, nodes, millisSoFar), principalVariation(best, depth));
+            }
+
+            long elapsed = System.nanoTime() - start;
+            // Lần lặp sau thường tốn gấp vài lần lần này: quá nửa thời gian thì dừng luôn
+            if (timed && elapsed * 2 > millis * 1_000_000L) break;
+            if (Math.abs(score) >= MATE_BOUND && MATE - Math.abs(score) <= depth) break;
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        return new SearchResult(best, bestScore, completed, nodes, elapsedMillis);
+    }
+
+    /**
+     * Đặt listener trước khi gọi search(); null để bỏ.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Yêu cầu dừng tìm; search() trả về nước tốt nhất đã có ngay sau đó. Gọi được từ luồng khác.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    // Số nút đã duyệt tới lúc này (đọc từ luồng khác chỉ là xấp xỉ)
+    long nodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta, Color side) {
+        if (depth <= 0 || ply >= MAX_PLY) return quiesce(ply, alpha, beta, side);
+
+        boolean root = ply == 0;
+        long key = keys[rootIndex + ply];
+        if (!root) {
+            if (halfMoves[ply] >= 100 || isRepetition(rootIndex + ply, halfMoves[ply])) return 0;
+            // Đã có đường chiếu hết ngắn hơn thì không cần tìm tiếp
+            alpha = Math.max(alpha, -MATE + ply);
+            beta = Math.min(beta, MATE - ply - 1);
+            if (alpha >= beta) return alpha;
+        }
+
+        if ((++nodes & CHECK_INTERVAL) == 0) checkTime();
+        if (stopped) return 0;
+
+        long entry = table.probe(key);
+        int ttMove = PackedMove.NONE;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (!root && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        generator.analyze(side);
+        boolean inCheck = generator.isInCheck();
+        int[] list = moves[ply];
+        int n = generator.generate(list, 0);
+        if (n == 0) return inCheck ? -MATE + ply : 0;
+        // Sau khi đã xét chiếu hết/hết nước để chiếu hết thật vẫn được ưu tiên hơn "thắng chắc"
+        if (!root && bitbases != null) {
+            Bitbases.Outcome outcome = bitbases.probe(board, side);
+            if (outcome == Bitbases.Outcome.DRAW) return 0;
+            if (outcome == Bitbases.Outcome.WIN) return knownWinScore(side, ply);
+            if (outcome == Bitbases.Outcome.LOSS) return -knownWinScore(side.opposite(), ply);
+        }
+        // Gia hạn khi bị chiếu để không bỏ sót đòn chiếu liên tiếp
+        if (inCheck) depth++;
+
+        int[] order = scores[ply];
+        for (int i = 0; i < n; i++) order[i] = scoreMove(list[i], ttMove, ply);
+
+        Color opponent = side.opposite();
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = PackedMove.NONE;
+        for (int i = 0; i < n; i++) {
+            pickNext(list, order, i, n);
+            int m = list[i];
+            boolean quiet = order[i] < CAPTURE_SCORE || m == ttMove && !isTactical(m);
+
+            makeMove(m, ply);
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha, opponent);
+            } else {
+                // Nước muộn, yên lặng: thử cửa sổ rỗng với độ sâu giảm, cần thì tìm lại đầy đủ
+                int reduction = depth >= 3 && i >= 4 && quiet && !inCheck && order[i] < KILLER_SCORE ? 1 : 0;
+                score = -negamax(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, opponent);
+                if (score > alpha && (reduction > 0 || score < beta)) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha, opponent);
+                }
+            }
+            board.undoMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = m;
+                if (score > alpha) {
+                    alpha = score;
+                    if (root) {
+                        rootBest = m;
+                        rootScore = score;
+                    }
+                    if (alpha >= beta) {
+                        if (quiet) rememberCutoff(m, ply, depth);
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, bestMove, toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    // Chỉ xét nước bắt quân / phong cấp (hoặc mọi nước khi bị chiếu) cho tới khi thế cờ yên
+    private int quiesce(int ply, int alpha, int beta, Color side) {
+        if ((++nodes & CHECK_INTERVAL) == 0) checkTime();
+        if (stopped) return 0;
+
+        generator.analyze(side);
+        boolean inCheck = generator.isInCheck();
+        if (ply >= MAX_PLY) return Evaluator.evaluate(board, side);
+
+        int bestScore;
+        int standPat = 0;
+        if (inCheck) {
+            bestScore = -INFINITY;
+        } else {
+            standPat = Evaluator.evaluate(board, side);
+            if (standPat >= beta) return standPat;
+            if (standPat > alpha) alpha = standPat;
+            bestScore = standPat;
+        }
+
+        int[] list = moves[ply];
+        int[] order = scores[ply];
+        int n = generator.generate(list, 0);
+        if (n == 0 && inCheck) return -MATE + ply;
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int m = list[i];
+            if (!inCheck && !isTactical(m)) continue;
+            // Bắt quân mà vẫn không kéo được điểm lên gần alpha thì bỏ qua (delta pruning)
+            if (!inCheck && PackedMove.promotion(m) == null
+                    && standPat + capturedValue(m) + 200 <= alpha) continue;
+            list[count] = m;
+            order[count++] = scoreMove(m, PackedMove.NONE, ply);
+        }
+
+        Color opponent = side.opposite();
+        for (int i = 0; i < count; i++) {
+            pickNext(list, order, i, count);
+            board.applyMove(list[i]);
+            int score = -quiesce(ply + 1, -beta, -alpha, opponent);
+            board.undoMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) break;
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    // Điểm thắng chắc kèm thưởng tiến triển (mop-up) để máy không đi vòng vòng:
+    // dồn vua yếu ra mép, vua mạnh áp sát; tàn cuộc tốt thì ưu tiên tiến tốt
+    private int knownWinScore(Color strong, int ply) {
+        int weakKing = board.kingSquare(strong.opposite());
+        int ownKing = board.kingSquare(strong);
+        int file = weakKing & 7, rank = weakKing >> 3;
+        int distance = Math.max(Math.abs((ownKing & 7) - file), Math.abs((ownKing >> 3) - rank));
+        int progress;
+        long pawns = board.pieceBitboard(strong, PieceType.PAWN);
+        if (pawns != 0) {
+            int sq = Long.numberOfTrailingZeros(pawns);
+            progress = (strong == Color.WHITE ? 7 - (sq >> 3) : sq >> 3) * 20;
+        } else {
+            int edge = Math.max(3 - file, file - 4) + Math.max(3 - rank, rank - 4);
+            // Cộng thêm cho có hậu/xe để phong cấp luôn được ưu tiên hơn giữ tốt ở hàng 7
+            progress = PROMOTED_BONUS + edge * 10 + (7 - distance) * 4;
+        }
+        return KNOWN_WIN + progress - ply;
+    }
+
+    private int scoreMove(int m, int ttMove, int ply) {
+        if (m == ttMove) return TT_MOVE_SCORE;
+        int from = PackedMove.from(m), to = PackedMove.to(m);
+        if (isTactical(m)) {
+            // MVV-LVA: nạn nhân giá trị cao trước, cùng nạn nhân thì quân bắt rẻ trước
+            int victim = capturedValue(m);
+            PieceType promotion = PackedMove.promotion(m);
+            if (promotion != null) victim += Evaluator.VALUE[promotion.ordinal()];
+            return CAPTURE_SCORE + victim * 8 - board.getPiece(from).getType().ordinal();
+        }
+        if (m == killers[ply][0]) return KILLER_SCORE + 1;
+        if (m == killers[ply][1]) return KILLER_SCORE;
+        return history[from * 64 + to];
+    }
+
+    // Chọn nước có điểm cao nhất trong [i, n) đưa lên vị trí i (sắp xếp lười, thường cắt tỉa sớm)
+    private static void pickNext(int[] list, int[] order, int i, int n) {
+        int best = i;
+        for (int j = i + 1; j < n; j++) {
+            if (order[j] > order[best]) best = j;
+        }
+        if (best != i) {
+            int m = list[i];
+            list[i] = list[best];
+            list[best] = m;
+            int s = order[i];
+            order[i] = order[best];
+            order[best] = s;
+        }
+    }
+
+    private void rememberCutoff(int m, int ply, int depth) {
+        if (killers[ply][0] != m) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = m;
+        }
+        int i = PackedMove.from(m) * 64 + PackedMove.to(m);
+        history[i] += depth * depth;
+        if (history[i] > HISTORY_LIMIT) {
+            for (int j = 0; j < history.length; j++) history[j] >>= 1;
+        }
+    }
+
+    private void makeMove(int m, int ply) {
+        int from = PackedMove.from(m);
+        boolean irreversible = board.getPiece(PackedMove.to(m)) != null
+                || board.getPiece(from).getType() == PieceType.PAWN;
+        board.applyMove(m);
+        Color next = (ply & 1) == 0 ? rootSide.opposite() : rootSide;
+        keys[rootIndex + ply + 1] = key(board, next);
+        halfMoves[ply + 1] = irreversible ? 0 : halfMoves[ply] + 1;
+    }
+
+    // Đi theo nước tốt nhất trong bảng chuyển vị từ gốc; dừng khi gặp nước không hợp lệ (entry đã bị ghi đè)
+    // hoặc thế cờ lặp lại, rồi trả bàn cờ về gốc
+    private int[] principalVariation(int best, int maxLength) {
+        int[] pv = new int[maxLength];
+        int length = 0;
+        int m = best;
+        Color side = rootSide;
+        while (length < maxLength && m != PackedMove.NONE && isLegal(m, side)) {
+            pv[length++] = m;
+            makeMove(m, length - 1);
+            side = side.opposite();
+            if (isRepetition(rootIndex + length, halfMoves[length])) break;
+            long entry = table.probe(keys[rootIndex + length]);
+            m = entry != 0 ? TranspositionTable.move(entry) : PackedMove.NONE;
+        }
+        for (int i = 0; i < length; i++) board.undoMove();
+        return Arrays.copyOf(pv, length);
+    }
+
+    private boolean isLegal(int m, Color side) {
+        generator.analyze(side);
+        int[] list = moves[MAX_PLY];
+        int n = generator.generate(list, 0);
+        for (int i = 0; i < n; i++) {
+            if (list[i] == m) return true;
+        }
+        return false;
+    }
+
+    // Lặp lại một lần trong phạm vi đồng hồ 50 nước là đủ coi như hòa khi tìm kiếm
+    private boolean isRepetition(int index, int halfMove) {
+        int limit = Math.max(0, index - halfMove);
+        long key = keys[index];
+        for (int i = index - 4; i >= limit; i -= 2) {
+            if (keys[i] == key) return true;
+        }
+        return false;
+    }
+
+    private boolean isTactical(int m) {
+        MoveType type = PackedMove.type(m);
+        return type == MoveType.EN_PASSANT || type == MoveType.PROMOTION || board.getPiece(PackedMove.to(m)) != null;
+    }
+
+    private int capturedValue(int m) {
+        Piece victim = board.getPiece(PackedMove.to(m));
+        return victim != null ? Evaluator.VALUE[victim.getType().ordinal()] : Evaluator.VALUE[0];
+    }
+
+    private void checkTime() {
+        if (timed && System.nanoTime() - deadline > 0) stopped = true;
+    }
+
+    // Điểm chiếu hết lưu trong bảng tính từ nút hiện tại thay vì từ gốc
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    private static long key(Board board, Color side) {
+        long key = board.zobristKey();
+        return side == Color.BLACK ? key ^ Zobrist.SIDE : key;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Move;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+
+/**
+ * Kết quả một lần tìm nước.
+ *
+ * @param move   nước tốt nhất (PackedMove), NONE nếu không còn nước hợp lệ
+ * @param score  điểm (centipawn) theo góc nhìn bên đi
+ * @param depth  độ sâu của lần lặp hoàn chỉnh cuối cùng
+ * @param nodes  số nút đã duyệt
+ * @param millis thời gian tìm (ms)
+ */
+public record SearchResult(int move, int score, int depth, long nodes, long millis) {
+
+    public boolean hasMove() {
+        return move != PackedMove.NONE;
+    }
+
+    public Move toMove() {
+        return PackedMove.toMove(move);
+    }
+
+    public long nodesPerSecond() {
+        return millis == 0 ? nodes : nodes * 1000 / millis;
+    }
+
+    // Chiếu hết sau bao nhiêu nước (dương: bên đi thắng), 0 nếu điểm không phải điểm chiếu hết
+    public int mateIn() {
+        if (Math.abs(score) < Search.MATE_BOUND) return 0;
+        int plies = Search.MATE - Math.abs(score);
+        return score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.chess_project_p2p_hybrid.client.engine;
+
+import java.util.Arrays;
+
+/**
+ * Bảng chuyển vị kích thước cố định, đánh chỉ số bằng các bit thấp của khóa Zobrist.
+ * Mỗi entry là hai long liền nhau trong một mảng (khóa XOR dữ liệu, dữ liệu đóng gói), không tạo object.
+ * Nhiều luồng tìm (Lazy SMP) đọc/ghi chung không cần khóa: entry bị ghi dở dang (hai long của hai lần ghi khác nhau)
+ * sẽ không khớp khóa khi XOR lại nên bị coi như không có.
+ * Chính sách thay thế: ghi đè nếu khác thế cờ hoặc độ sâu mới không nông hơn.
+ * <p>
+ * Bố cục dữ liệu:
+ * - bit 0..17  : nước tốt nhất (PackedMove)
+ * - bit 18..33 : điểm + 32768
+ * - bit 34..41 : độ sâu
+ * - bit 42..43 : loại cận (EXACT / LOWER / UPPER)
+ */
+public final class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    // entries[2i] = khóa ^ dữ liệu, entries[2i + 1] = dữ liệu
+    private final long[] entries;
+    private final int mask;
+
+    /**
+     * @param megabytes dung lượng tối đa, làm tròn xuống lũy thừa của 2 entry (16 byte mỗi entry)
+     */
+    public TranspositionTable(int megabytes) {
+        long count = Math.max(1L, (long) megabytes << 20) / 16;
+        int size = Integer.highestOneBit((int) Math.min(count, 1 << 29));
+        entries = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /**
+     * @return dữ liệu đóng gói, hoặc 0 nếu không có entry cho khóa này
+     */
+    public long probe(long key) {
+        int i = ((int) key & mask) << 1;
+        long data = entries[i + 1];
+        return (entries[i] ^ data) == key ? data : 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int i = ((int) key & mask) << 1;
+        long old = entries[i + 1];
+        if ((entries[i] ^ old) == key && depth < depth(old) && bound != EXACT) return;
+        long data = (move & 0x3FFFFL)
+                | ((long) (score + 32768) << 18)
+                | ((long) depth << 34)
+                | ((long) bound << 42);
+        entries[i] = key ^ data;
+        entries[i + 1] = data;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0L);
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0x3FFFF);
+    }
+
+    public static int score(long entry) {
+        return (int) ((entry >>> 18) & 0xFFFF) - 32768;
+    }
+
+    public static int depth(long entry) {
+        return (int) ((entry >>> 34) & 0xFF);
+    }
+
+    public static int bound(long entry) {
+        return (int) ((entry >>> 42) & 0x3);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.chess_project_p2p_hybrid.client.engine.bitbase;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Attacks;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sinh bitbase cho tàn cuộc vua + một quân (tốt / xe / hậu) đấu vua đơn bằng phân tích ngược (retrograde):
+ * bắt đầu từ các thế chiếu hết, lặp lại cho tới khi không còn thế cờ nào đổi thành thắng.
+ * <p>
+ * Thế cờ được chuẩn hóa để bên mạnh là Trắng (tốt đi về hàng 0 của Board). Chỉ số:
+ * ((bên đi * 64 + vua mạnh) * 64 + vua yếu) * 64 + ô quân, bên đi 0 = bên mạnh, 1 = bên yếu.
+ * Bên yếu không bao giờ thắng được nên mỗi thế cờ chỉ cần 1 bit: bên mạnh thắng hay không (hòa).
+ */
+final class BitbaseGenerator {
+    static final int POSITIONS = 2 * 64 * 64 * 64;
+    static final int BYTES = POSITIONS / 8;
+
+    private final PieceType piece;
+    // Bảng KQK/KRK để tra khi tốt phong cấp (chỉ dùng cho KPK)
+    private final ByteBuffer queenTable;
+    private final ByteBuffer rookTable;
+    private final boolean[] valid = new boolean[POSITIONS];
+    private final boolean[] win = new boolean[POSITIONS];
+
+    private BitbaseGenerator(PieceType piece, ByteBuffer queenTable, ByteBuffer rookTable) {
+        this.piece = piece;
+        this.queenTable = queenTable;
+        this.rookTable = rookTable;
+    }
+
+    static int index(int strongToMove, int strongKing, int weakKing, int pieceSq) {
+        return (((strongToMove << 6 | strongKing) << 6 | weakKing) << 6) | pieceSq;
+    }
+
+    static boolean isWin(ByteBuffer table, int index) {
+        return (table.get(index >>> 3) & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * @return bảng đã nén bit (BYTES byte), bit = 1 nếu bên mạnh thắng
+     */
+    static byte[] generate(PieceType piece, ByteBuffer queenTable, ByteBuffer rookTable) {
+        if (piece == PieceType.PAWN && (queenTable == null || rookTable == null)) {
+            throw new IllegalArgumentException("KPK needs the KQK and KRK tables for promotions");
+        }
+        return new BitbaseGenerator(piece, queenTable, rookTable).run();
+    }
+
+    private byte[] run() {
+        for (int i = 0; i < POSITIONS; i++) {
+            valid[i] = isValid(i >>> 18, (i >>> 12) & 63, (i >>> 6) & 63, i & 63);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < POSITIONS; i++) {
+                if (!valid[i] || win[i]) continue;
+                int sk = (i >>> 12) & 63, wk = (i >>> 6) & 63, p = i & 63;
+                if ((i >>> 18) == 0 ? strongCanWin(sk, wk, p) : weakLoses(sk, wk, p)) {
+                    win[i] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        byte[] packed = new byte[BYTES];
+        for (int i = 0; i < POSITIONS; i++) {
+            if (win[i]) packed[i >>> 3] |= (byte) (1 << (i & 7));
+        }
+        return packed;
+    }
+
+    private boolean isValid(int stm, int sk, int wk, int p) {
+        if (sk == wk || p == sk || p == wk) return false;
+        if ((Attacks.KING[sk] & (1L << wk)) != 0) return false;
+        if (piece == PieceType.PAWN && (p < 8 || p >= 56)) return false;
+        // Bên mạnh tới lượt mà vua yếu đang bị chiếu: không thể xảy ra
+        long occ = (1L << sk) | (1L << wk) | (1L << p);
+        return stm != 0 || (attacks(p, occ) & (1L << wk)) == 0;
+    }
+
+    // Bên mạnh tới lượt: thắng nếu có ít nhất một nước dẫn tới thế thắng
+    private boolean strongCanWin(int sk, int wk, int p) {
+        long occ = (1L << sk) | (1L << wk) | (1L << p);
+
+        long kingTargets = Attacks.KING[sk] & ~Attacks.KING[wk] & ~(1L << p);
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (win[index(1, to, wk, p)]) return true;
+        }
+
+        if (piece == PieceType.PAWN) {
+            int to = p - 8;
+            if ((occ & (1L << to)) != 0) return false;
+            if (to < 8) {
+                // Phong hậu hoặc phong xe (phong xe tránh được một số thế hết nước)
+                int next = index(1, sk, wk, to);
+                return isWin(queenTable, next) || isWin(rookTable, next);
+            }
+            if (win[index(1, sk, wk, to)]) return true;
+            return p >= 48 && (occ & (1L << (p - 16))) == 0 && win[index(1, sk, wk, p - 16)];
+        }
+
+        long targets = attacks(p, occ) & ~(1L << sk) & ~(1L << wk);
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            if (win[index(1, sk, wk, to)]) return true;
+        }
+        return false;
+    }
+
+    // Bên yếu tới lượt: thua nếu mọi nước hợp lệ đều dẫn tới thế thua (hết nước thì thua khi bị chiếu)
+    private boolean weakLoses(int sk, int wk, int p) {
+        long occ = (1L << sk) | (1L << wk) | (1L << p);
+        boolean inCheck = (attacks(p, occ) & (1L << wk)) != 0;
+
+        boolean anyMove = false;
+        long targets = Attacks.KING[wk] & ~Attacks.KING[sk];
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            // Bắt được quân không được bảo vệ: còn hai vua, hòa
+            if (to == p) return false;
+            long after = (1L << sk) | (1L << p) | (1L << to);
+            if ((attacks(p, after) & (1L << to)) != 0) continue;
+            anyMove = true;
+            if (!win[index(0, sk, to, p)]) return false;
+        }
+        return anyMove || inCheck;
+    }
+
+    private long attacks(int sq, long occ) {
+        return switch (piece) {
+            case PAWN -> Attacks.PAWN[0][sq];
+            case ROOK -> Attacks.rook(sq, occ);
+            case QUEEN -> Attacks.queen(sq, occ);
+            default -> throw new IllegalStateException("Unsupported bitbase piece: " + piece);
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.chess_project_p2p_hybrid.client.engine.bitbase;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Piece;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bitbase thắng/hòa/thua chính xác cho KPK, KRK, KQK, tra trong O(1).
+ * Mỗi bảng là một file 64 KB (1 bit mỗi thế cờ) được ánh xạ vào bộ nhớ; thiếu file thì sinh bằng
+ * BitbaseGenerator rồi ghi lại để lần sau chỉ cần map. Sinh trước (offline) bằng main(thư mục).
+ */
+public final class Bitbases {
+    public enum Outcome {
+        WIN, DRAW, LOSS
+    }
+
+    // Thư mục mặc định: thuộc tính hệ thống chess.bitbases, nếu không có thì ~/.chess-p2p/bitbases
+    private static final String DIR_PROPERTY = "chess.bitbases";
+
+    private static volatile Bitbases defaultInstance;
+
+    private final ByteBuffer kqk;
+    private final ByteBuffer krk;
+    private final ByteBuffer kpk;
+
+    private Bitbases(ByteBuffer kqk, ByteBuffer krk, ByteBuffer kpk) {
+        this.kqk = kqk;
+        this.krk = krk;
+        this.kpk = kpk;
+    }
+
+    /**
+     * Nạp (hoặc sinh và ghi) các bảng trong thư mục dir. Ghi không được thì giữ bảng vừa sinh trên heap.
+     */
+    public static Bitbases load(Path dir) {
+        // KPK cần KQK/KRK khi tốt phong cấp nên phải có hai bảng này trước
+        ByteBuffer kqk = loadOrGenerate(dir, "kqk.bin", PieceType.QUEEN, null, null);
+        ByteBuffer krk = loadOrGenerate(dir, "krk.bin", PieceType.ROOK, null, null);
+        ByteBuffer kpk = loadOrGenerate(dir, "kpk.bin", PieceType.PAWN, kqk, krk);
+        return new Bitbases(kqk, krk, kpk);
+    }
+
+    /**
+     * Bảng dùng chung, nạp lần đầu khi được gọi (có thể mất vài giây nếu phải sinh).
+     */
+    public static Bitbases getDefault() {
+        Bitbases instance = defaultInstance;
+        if (instance == null) {
+            synchronized (Bitbases.class) {
+                instance = defaultInstance;
+                if (instance == null) {
+                    instance = load(defaultDirectory());
+                    defaultInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Bảng dùng chung nếu đã nạp xong, ngược lại null (không chặn luồng gọi).
+     */
+    public static Bitbases ifLoaded() {
+        return defaultInstance;
+    }
+
+    /**
+     * Kết quả theo góc nhìn bên sideToMove khi đánh đúng.
+     *
+     * @return null nếu thế cờ không phải KPK / KRK / KQK
+     */
+    public Outcome probe(Board board, Color sideToMove) {
+        long occ = board.occupied();
+        if (Long.bitCount(occ) != 3) return null;
+        Color strong = Long.bitCount(board.colorBitboard(Color.WHITE)) == 2 ? Color.WHITE : Color.BLACK;
+        int strongKing = board.kingSquare(strong);
+        int weakKing = board.kingSquare(strong.opposite());
+        if (strongKing < 0 || weakKing < 0) return null;
+
+        int pieceSq = Long.numberOfTrailingZeros(board.colorBitboard(strong) & ~(1L << strongKing));
+        Piece piece = board.getPiece(pieceSq);
+        ByteBuffer table = switch (piece.getType()) {
+            case PAWN -> kpk;
+            case ROOK -> krk;
+            case QUEEN -> kqk;
+            default -> null;
+        };
+        if (table == null) return null;
+
+        // Bảng viết cho bên mạnh là Trắng: bên mạnh là Đen thì lật dọc bàn cờ
+        int flip = strong == Color.WHITE ? 0 : 56;
+        int stm = sideToMove == strong ? 0 : 1;
+        int index = BitbaseGenerator.index(stm, strongKing ^ flip, weakKing ^ flip, pieceSq ^ flip);
+        if (!BitbaseGenerator.isWin(table, index)) return Outcome.DRAW;
+        return stm == 0 ? Outcome.WIN : Outcome.LOSS;
+    }
+
+    static Path defaultDirectory() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir != null) return Path.of(dir);
+        return Path.of(System.getProperty("user.home"), ".chess-p2p", "bitbases");
+    }
+
+    private static ByteBuffer loadOrGenerate(Path dir, String name, PieceType piece, ByteBuffer queen, ByteBuffer rook) {
+        Path file = dir.resolve(name);
+        try {
+            if (Files.isRegularFile(file) && Files.size(file) == BitbaseGenerator.BYTES) return map(file);
+        } catch (IOException e) {
+            System.err.println("[Bitbases] Cannot map " + file + ", regenerating: " + e.getMessage());
+        }
+
+        byte[] table = BitbaseGenerator.generate(piece, queen, rook);
+        try {
+            Files.createDirectories(dir);
+            // Ghi ra file tạm rồi đổi tên để tiến trình khác không bao giờ map phải file dở dang
+            Path tmp = Files.createTempFile(dir, name, ".tmp");
+            Files.write(tmp, table);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return map(file);
+        } catch (IOException e) {
+            System.err.println("[Bitbases] Cannot write " + file + ", keeping table in memory: " + e.getMessage());
+            return ByteBuffer.wrap(table).asReadOnlyBuffer();
+        }
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Sinh trước các bảng: Bitbases [thư mục]
+    public static void main(String[] args) {
+        Path dir = args.length > 0 ? Path.of(args[0]) : defaultDirectory();
+        long start = System.nanoTime();
+        load(dir);
+        System.out.printf("Bitbases ready in %s (%d ms)%n", dir.toAbsolutePath(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
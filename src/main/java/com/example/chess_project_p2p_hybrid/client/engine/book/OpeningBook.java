@@ -0,0 +1,132 @@
+package com.example.chess_project_p2p_hybrid.client.engine.book;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Sách khai cuộc Polyglot (.bin) chỉ đọc, ánh xạ thẳng file vào bộ nhớ (MappedByteBuffer):
+ * mở sách không đọc dữ liệu lên heap, hệ điều hành chỉ nạp những trang mà tìm kiếm nhị phân chạm tới.
+ * <p>
+ * Mỗi entry 16 byte big-endian: khóa (8), nước đi (2), trọng số (2), learn (4); file sắp theo khóa không dấu.
+ * Đọc bằng get tuyệt đối (không đổi position) nên nhiều luồng tra cùng lúc được.
+ */
+public final class OpeningBook {
+    static final int ENTRY_SIZE = 16;
+
+    // Đường dẫn sách mặc định: thuộc tính hệ thống chess.book, nếu không có thì book.bin ở thư mục chạy
+    private static final String BOOK_PROPERTY = "chess.book";
+    private static final String DEFAULT_BOOK = "book.bin";
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+
+    /**
+     * Một nước trong sách đã đổi sang nước hợp lệ của thế cờ.
+     *
+     * @param move   PackedMove
+     * @param weight trọng số (càng lớn càng hay được chọn)
+     */
+    public record BookMove(int move, int weight) {
+    }
+
+    private OpeningBook(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.entries = buffer.capacity() / ENTRY_SIZE;
+    }
+
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Opening book too large: " + size + " bytes");
+            // Vùng ánh xạ vẫn dùng được sau khi đóng channel
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Mở sách mặc định nếu có.
+     *
+     * @return null nếu không có file sách hoặc không đọc được
+     */
+    public static OpeningBook openDefault() {
+        Path path = Path.of(System.getProperty(BOOK_PROPERTY, DEFAULT_BOOK));
+        if (!Files.isRegularFile(path)) return null;
+        try {
+            return open(path);
+        } catch (IOException e) {
+            System.err.println("[OpeningBook] Cannot open " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * Các nước trong sách cho thế cờ hiện tại của game, đã lọc bỏ nước không hợp lệ.
+     */
+    public List<BookMove> lookup(Game game) {
+        long key = PolyglotKey.of(game);
+        int i = lowerBound(key);
+        if (i >= entries || buffer.getLong(i * ENTRY_SIZE) != key) return List.of();
+
+        int[] legal = new int[PackedMove.MAX_MOVES];
+        int count = game.generateLegalMoves(legal);
+        List<BookMove> moves = new ArrayList<>(4);
+        for (; i < entries && buffer.getLong(i * ENTRY_SIZE) == key; i++) {
+            int offset = i * ENTRY_SIZE;
+            int bookMove = buffer.getShort(offset + 8) & 0xFFFF;
+            int weight = buffer.getShort(offset + 10) & 0xFFFF;
+            for (int j = 0; j < count; j++) {
+                if (PolyglotKey.encodeMove(legal[j]) == bookMove) {
+                    moves.add(new BookMove(legal[j], weight));
+                    break;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Chọn ngẫu nhiên một nước trong sách theo trọng số.
+     *
+     * @return PackedMove, hoặc PackedMove.NONE nếu thế cờ không có trong sách
+     */
+    public int pick(Game game, RandomGenerator random) {
+        List<BookMove> moves = lookup(game);
+        long total = 0;
+        for (BookMove m : moves) total += m.weight();
+        if (moves.isEmpty()) return PackedMove.NONE;
+        // Tất cả trọng số bằng 0: chọn đều
+        if (total == 0) return moves.get(random.nextInt(moves.size())).move();
+
+        long r = random.nextLong(total);
+        for (BookMove m : moves) {
+            r -= m.weight();
+            if (r < 0) return m.move();
+        }
+        return moves.get(moves.size() - 1).move();
+    }
+
+    // Entry đầu tiên có khóa >= key (so sánh không dấu)
+    private int lowerBound(long key) {
+        int lo = 0, hi = entries;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(buffer.getLong(mid * ENTRY_SIZE), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.chess_project_p2p_hybrid.client.engine.book;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.Move;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+import com.example.chess_project_p2p_hybrid.client.model.pgn.PgnGame;
+import com.example.chess_project_p2p_hybrid.client.model.pgn.PgnReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tạo sách khai cuộc Polyglot từ các ván đã chơi: mỗi lần một nước xuất hiện ở một thế cờ thì trọng số +1.
+ * Dùng chính PolyglotKey nên sách tạo ra luôn khớp với bảng khóa đang dùng.
+ * <p>
+ * Chạy: OpeningBookBuilder &lt;games.pgn&gt; &lt;book.bin&gt; [số bán nước tối đa, mặc định 16]
+ */
+public final class OpeningBookBuilder {
+    // Trọng số trong file chỉ có 16 bit
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    // (khóa thế cờ, mã nước Polyglot) -> số lần gặp
+    private final Map<Long, Map<Integer, Integer>> counts = new HashMap<>();
+    private final int maxPlies;
+
+    public OpeningBookBuilder(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Thêm các nước đầu ván (tối đa maxPlies) của một ván đã chơi.
+     */
+    public void add(Game game) {
+        Game replay = Game.fromFen(game.getStartFen());
+        int plies = Math.min(maxPlies, game.getHistory().size());
+        for (int i = 0; i < plies; i++) {
+            Move move = game.getHistory().get(i);
+            long key = PolyglotKey.of(replay);
+            int bookMove = PolyglotKey.encodeMove(PackedMove.fromMove(move));
+            counts.computeIfAbsent(key, k -> new HashMap<>(4)).merge(bookMove, 1, Integer::sum);
+            if (!replay.applyMoveIfLegal(move)) return;
+        }
+    }
+
+    /**
+     * Ghi sách: sắp theo khóa không dấu, trong cùng khóa nước có trọng số cao đứng trước.
+     */
+    public void write(Path out) throws IOException {
+        long[][] entries = new long[countEntries()][];
+        int n = 0;
+        for (Map.Entry<Long, Map<Integer, Integer>> position : counts.entrySet()) {
+            for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                entries[n++] = new long[]{position.getKey(), move.getKey(), Math.min(move.getValue(), MAX_WEIGHT)};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> {
+            int byKey = Long.compareUnsigned(a[0], b[0]);
+            return byKey != 0 ? byKey : Long.compare(b[2], a[2]);
+        });
+
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+            for (long[] e : entries) {
+                data.writeLong(e[0]);
+                data.writeShort((int) e[1]);
+                data.writeShort((int) e[2]);
+                data.writeInt(0); // learn
+            }
+        }
+    }
+
+    private int countEntries() {
+        int n = 0;
+        for (Map<Integer, Integer> moves : counts.values()) n += moves.size();
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBookBuilder <games.pgn> <book.bin> [maxPlies]");
+            System.exit(2);
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(args.length > 2 ? Integer.parseInt(args[2]) : 16);
+        int games = 0, failures = 0;
+        try (PgnReader reader = new PgnReader(Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8))) {
+            PgnGame pgn;
+            while ((pgn = reader.next()) != null) {
+                try {
+                    builder.add(pgn.replay());
+                    games++;
+                } catch (IllegalArgumentException e) {
+                    failures++;
+                }
+            }
+        }
+        builder.write(Path.of(args[1]));
+        System.out.printf("%d games (%d skipped), %d book entries%n", games, failures, builder.countEntries());
+    }
+}
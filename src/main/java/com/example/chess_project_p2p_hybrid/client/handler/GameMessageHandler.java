@@ -2,6 +2,7 @@ package com.example.chess_project_p2p_hybrid.client.handler;
 
 import com.example.chess_project_p2p_hybrid.client.connection.Message;
 import com.example.chess_project_p2p_hybrid.client.connection.MessageHandler;
+import com.example.chess_project_p2p_hybrid.client.connection.MessageType;
 import com.example.chess_project_p2p_hybrid.client.model.game.Game;
 import com.example.chess_project_p2p_hybrid.client.model.game.GameResult;
 import com.example.chess_project_p2p_hybrid.client.model.game.Move;
@@ -109,12 +110,15 @@ public class GameMessageHandler implements MessageHandler {
                             case DRAW_BY_AGREEMENT -> "Hòa do thỏa thuận.";
                             case DRAW_50_MOVES -> "Hòa do quy tắc 50 nước đi.";
                             case DRAW_THREEFOLD_REPETITION -> "Hòa do lặp lại 3 lần.";
+                            case DRAW_INSUFFICIENT_MATERIAL -> "Hòa do không đủ quân để chiếu hết.";
                             default -> "Ván đấu kết thúc.";
                         };
                         session.getMainController().showNotification(title, header, content);
                     }
                 } else {
                     System.err.println("[GameMessageHandler] Failed to apply move: " + move);
+                    // Bàn cờ lệch với đối thủ: xin snapshot FEN thay vì tiếp tục trên thế cờ sai
+                    sendSyncEvent("sync_request", null);
                 }
             });
         } catch (Exception e) {
@@ -175,15 +179,49 @@ public class GameMessageHandler implements MessageHandler {
             case "timeout" -> handleTimeout(actualSender);
             case "leave_room" -> handleLeaveRoom(actualSender);
             case "opponent_left" -> handleOpponentLeft();
+            case "opponent_disconnected" -> updateStatus("Đối thủ mất kết nối, đang chờ kết nối lại (tối đa "
+                    + (payload.has("graceSeconds") ? payload.get("graceSeconds").getAsInt() : 30) + " giây)...");
+            case "opponent_resumed" -> updateStatus("Đối thủ đã kết nối lại.");
             case "draw_offer" -> handleDrawOffer(actualSender);
             case "draw_accept" -> handleDrawAccept();
             case "draw_reject" -> handleDrawReject();
+            case "sync_request" -> handleSyncRequest();
+            case "sync_state" -> handleSyncState(payload);
             case "error" -> handleError(payload);
             default -> {
             }
         }
     }
 
+    private void handleSyncRequest() {
+        System.out.println("[GameMessageHandler] Opponent requested resync, sending snapshot");
+        sendSyncEvent("sync_state", syncManager.snapshot());
+    }
+
+    private void handleSyncState(JsonObject payload) {
+        if (!payload.has("fen")) return;
+        String fen = payload.get("fen").getAsString();
+        System.out.println("[GameMessageHandler] Received snapshot: " + fen);
+        if (syncManager.loadSnapshot(fen) && session.getMainController() != null) {
+            session.getMainController().refreshAfterResync();
+        }
+    }
+
+    // Gửi sự kiện đồng bộ (kèm FEN nếu có) cho đối thủ qua kênh SYSTEM
+    private void sendSyncEvent(String event, String fen) {
+        if (!session.isConnected()) return;
+        JsonObject payload = new JsonObject();
+        payload.addProperty("event", event);
+        payload.addProperty("from", session.getPlayerName());
+        if (fen != null) payload.addProperty("fen", fen);
+        try {
+            session.getChessClient().send(new Message(session.getPlayerName(), "server", MessageType.SYSTEM,
+                    payload.toString()));
+        } catch (Exception e) {
+            System.err.println("Error sending " + event + ": " + e.getMessage());
+        }
+    }
+
     private void handleRoomCreated(JsonObject payload) {
         if (payload.has("roomId")) {
             String roomId = payload.get("roomId").getAsString();
@@ -384,17 +422,17 @@ public class GameMessageHandler implements MessageHandler {
             return;
         }
 
-        // Undo move
-        boolean success = game.undoLastMove();
+        // Undo move (O(1), đồng bộ cả move history của sync manager)
+        boolean success = syncManager.undoLastMove();
         if (success) {
             System.out.println(
                     "[GameMessageHandler] ✓ Remote undo successful - History size: " + game.getHistory().size());
             System.out.println("[GameMessageHandler] Turn after undo: " + game.getTurn());
 
-            // Update UI - sử dụng callback thay vì gọi trực tiếp
-            if (onMoveReceived != null) {
+            // Update UI - chỉ bỏ nước cuối khỏi lịch sử, không dựng lại toàn bộ
+            if (session.getMainController() != null) {
                 javafx.application.Platform.runLater(() -> {
-                    onMoveReceived.run();
+                    session.getMainController().refreshAfterUndo();
                     // Hiển thị notification
                     if (session.getMainController() != null) {
                         session.getMainController().showNotification(
@@ -0,0 +1,182 @@
+package com.example.chess_project_p2p_hybrid.client.model.board;
+
+/**
+ * Bảng tấn công dạng bitboard (bit i = ô i, i = row * 8 + col).
+ * Dùng để tính quân chiếu, quân bị ghim và ô bị tấn công mà không cần sinh nước đi.
+ * Quân trượt (Xe, Tượng, Hậu) dùng magic bitboard: mỗi lần tra chỉ tốn một phép nhân,
+ * một phép dịch và một lần đọc bảng. Số magic đã tìm sẵn (xorshift64* seed cố định, cách làm của Stockfish)
+ * nên lúc nạp lớp chỉ cần điền bảng tấn công, mất vài ms.
+ */
+public final class Attacks {
+    // Ô bị Mã / Vua ở ô sq tấn công
+    public static final long[] KNIGHT = new long[64];
+    public static final long[] KING = new long[64];
+    // PAWN[color][sq]: ô bị tốt màu color ở ô sq tấn công (ăn chéo)
+    public static final long[][] PAWN = new long[2][64];
+    // Các ô nằm giữa a và b (không gồm a, b) nếu thẳng hàng, ngược lại 0
+    public static final long[][] BETWEEN = new long[64][64];
+    // Toàn bộ đường thẳng đi qua a và b (gồm cả a, b) nếu thẳng hàng, ngược lại 0
+    public static final long[][] LINE = new long[64][64];
+
+    // Magic cho Xe và Tượng: mask ô cản liên quan, số bit dịch, vị trí bắt đầu trong bảng chung
+    private static final long[] ROOK_MASK = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE = new long[0x19000];
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] BISHOP_TABLE = new long[0x1480];
+
+    private static final long[] ROOK_MAGIC = {
+            0x0A80004000801220L, 0x8040004010002008L, 0x2080200010008008L, 0x1100100008210004L,
+            0xC200209084020008L, 0x2100010004000208L, 0x0400081000822421L, 0x0200010422048844L,
+            0x0800800080400024L, 0x0001402000401000L, 0x3000801000802001L, 0x4400800800100083L,
+            0x0904802402480080L, 0x4040800400020080L, 0x0018808042000100L, 0x4040800080004100L,
+            0x0040048001458024L, 0x00A0004000205000L, 0x3100808010002000L, 0x4825010010000820L,
+            0x5004808008000401L, 0x2024818004000A00L, 0x0005808002000100L, 0x2100060004806104L,
+            0x0080400880008421L, 0x4062220600410280L, 0x010A004A00108022L, 0x0000100080080080L,
+            0x0021000500080010L, 0x0044000202001008L, 0x0000100400080102L, 0xC020128200040545L,
+            0x0080002000400040L, 0x0000804000802004L, 0x0000120022004080L, 0x010A386103001001L,
+            0x9010080080800400L, 0x8440020080800400L, 0x0004228824001001L, 0x000000490A000084L,
+            0x0080002000504000L, 0x200020005000C000L, 0x0012088020420010L, 0x0010010080080800L,
+            0x0085001008010004L, 0x0002000204008080L, 0x0040413002040008L, 0x0000304081020004L,
+            0x0080204000800080L, 0x3008804000290100L, 0x1010100080200080L, 0x2008100208028080L,
+            0x5000850800910100L, 0x8402019004680200L, 0x0120911028020400L, 0x0000008044010200L,
+            0x0020850200244012L, 0x0020850200244012L, 0x0000102001040841L, 0x140900040A100021L,
+            0x000200282410A102L, 0x000200282410A102L, 0x000200282410A102L, 0x4048240043802106L
+    };
+    private static final long[] BISHOP_MAGIC = {
+            0x40106000A1160020L, 0x0020010250810120L, 0x2010010220280081L, 0x002806004050C040L,
+            0x0002021018000000L, 0x2001112010000400L, 0x0881010120218080L, 0x1030820110010500L,
+            0x0000120222042400L, 0x2000020404040044L, 0x8000480094208000L, 0x0003422A02000001L,
+            0x000A220210100040L, 0x8004820202226000L, 0x0018234854100800L, 0x0100004042101040L,
+            0x0004001004082820L, 0x0010000810010048L, 0x1014004208081300L, 0x2080818802044202L,
+            0x0040880C00A00100L, 0x0080400200522010L, 0x0001000188180B04L, 0x0080249202020204L,
+            0x1004400004100410L, 0x00013100A0022206L, 0x2148500001040080L, 0x4241080011004300L,
+            0x4020848004002000L, 0x10101380D1004100L, 0x0008004422020284L, 0x01010A1041008080L,
+            0x0808080400082121L, 0x0808080400082121L, 0x0091128200100C00L, 0x0202200802010104L,
+            0x8C0A020200440085L, 0x01A0008080B10040L, 0x0889520080122800L, 0x100902022202010AL,
+            0x04081A0816002000L, 0x0000681208005000L, 0x8170840041008802L, 0x0A00004200810805L,
+            0x0830404408210100L, 0x2602208106006102L, 0x1048300680802628L, 0x2602208106006102L,
+            0x0602010120110040L, 0x0941010801043000L, 0x000040440A210428L, 0x0008240020880021L,
+            0x0400002012048200L, 0x00AC102001210220L, 0x0220021002009900L, 0x84440C080A013080L,
+            0x0001008044200440L, 0x0004C04410841000L, 0x2000500104011130L, 0x1A0C010011C20229L,
+            0x0044800112202200L, 0x0434804908100424L, 0x0300404822C08200L, 0x48081010008A2A80L
+    };
+
+    private static final int[][] ROOK_DIRS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] BISHOP_DIRS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final int[][] KNIGHT_DELTAS = {
+            {-2, -1}, {-2, 1}, {-1, -2}, {-1, 2},
+            {1, -2}, {1, 2}, {2, -1}, {2, 1}
+    };
+    private static final int[][] KING_DELTAS = {
+            {-1, -1}, {-1, 0}, {-1, 1}, {0, -1},
+            {0, 1}, {1, -1}, {1, 0}, {1, 1}
+    };
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+            KNIGHT[sq] = stepAttacks(row, col, KNIGHT_DELTAS);
+            KING[sq] = stepAttacks(row, col, KING_DELTAS);
+            // Trắng đi lên (row giảm), Đen đi xuống (row tăng)
+            PAWN[0][sq] = stepAttacks(row, col, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN[1][sq] = stepAttacks(row, col, new int[][]{{1, -1}, {1, 1}});
+            initLines(sq, ROOK_DIRS);
+            initLines(sq, BISHOP_DIRS);
+        }
+        initMagics(ROOK_DIRS, ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET, ROOK_TABLE);
+        initMagics(BISHOP_DIRS, BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET, BISHOP_TABLE);
+    }
+
+    private Attacks() {
+    }
+
+    private static long stepAttacks(int row, int col, int[][] deltas) {
+        long bb = 0L;
+        for (int[] d : deltas) {
+            int r = row + d[0], c = col + d[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) bb |= 1L << (r * 8 + c);
+        }
+        return bb;
+    }
+
+    private static void initLines(int from, int[][] dirs) {
+        for (int[] d : dirs) {
+            long line = ray(from, d[0], d[1], 0L) | ray(from, -d[0], -d[1], 0L) | (1L << from);
+            long between = 0L;
+            int r = (from >> 3) + d[0], c = (from & 7) + d[1];
+            while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                int to = r * 8 + c;
+                BETWEEN[from][to] = between;
+                LINE[from][to] = line;
+                between |= 1L << to;
+                r += d[0];
+                c += d[1];
+            }
+        }
+    }
+
+    // Tia từ ô from theo hướng (dr, dc), dừng ở (và gồm) quân cản đầu tiên trong occupied
+    private static long ray(int from, int dr, int dc, long occupied) {
+        long bb = 0L;
+        int r = (from >> 3) + dr, c = (from & 7) + dc;
+        while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+            long bit = 1L << (r * 8 + c);
+            bb |= bit;
+            if ((occupied & bit) != 0) break;
+            r += dr;
+            c += dc;
+        }
+        return bb;
+    }
+
+    /**
+     * Điền bảng tấn công: với mọi tập quân cản con của mask, ô bảng (occ * magic) >>> shift
+     * giữ tấn công tương ứng. Magic đúng thì không có hai tập cản nào cho kết quả khác nhau rơi vào cùng ô.
+     */
+    private static void initMagics(int[][] dirs, long[] masks, long[] magics, int[] shifts, int[] offsets,
+                                   long[] table) {
+        int offset = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+            // Ô biên không ảnh hưởng tới tia (trừ khi quân đang đứng trên biên đó)
+            long edges = ((0xFFL | 0xFFL << 56) & ~(0xFFL << (row * 8)))
+                    | ((0x0101010101010101L | 0x8080808080808080L) & ~(0x0101010101010101L << col));
+            long mask = slidingAttacks(sq, dirs, 0L) & ~edges;
+            masks[sq] = mask;
+            shifts[sq] = 64 - Long.bitCount(mask);
+            offsets[sq] = offset;
+
+            // Liệt kê mọi tập con của mask (Carry-Rippler)
+            long b = 0L;
+            do {
+                table[offset + (int) ((b * magics[sq]) >>> shifts[sq])] = slidingAttacks(sq, dirs, b);
+                b = (b - mask) & mask;
+            } while (b != 0);
+            offset += 1 << Long.bitCount(mask);
+        }
+    }
+
+    // Tính tấn công bằng cách đi từng tia, chỉ dùng khi dựng bảng
+    private static long slidingAttacks(int sq, int[][] dirs, long occupied) {
+        long bb = 0L;
+        for (int[] d : dirs) bb |= ray(sq, d[0], d[1], occupied);
+        return bb;
+    }
+
+    public static long rook(int sq, long occupied) {
+        return ROOK_TABLE[ROOK_OFFSET[sq] + (int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+    }
+
+    public static long bishop(int sq, long occupied) {
+        return BISHOP_TABLE[BISHOP_OFFSET[sq]
+                + (int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+    }
+
+    public static long queen(int sq, long occupied) {
+        return rook(sq, occupied) | bishop(sq, occupied);
+    }
+}
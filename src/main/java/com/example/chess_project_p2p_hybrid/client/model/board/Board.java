@@ -1,290 +1,514 @@
 package com.example.chess_project_p2p_hybrid.client.model.board;
 
-import com.example.chess_project_p2p_hybrid.client.model.game.Move;
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
 import com.example.chess_project_p2p_hybrid.client.model.piece.*;
 
+import java.util.Arrays;
+
 public class Board implements BoardView, Cloneable {
-    // Mảng 8x8 lưu quân cờ, null = ô trống
-    private final Piece[][] board = new Piece[8][8];
+    // Quyền nhập thành, mỗi bên một bit
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    public static final int ALL_CASTLING = 15;
+
+    // Ô tối (row + col lẻ), a1 là ô tối
+    private static final long DARK_SQUARES = 0x55AA55AA55AA55AAL;
+    // Các nhóm 4 bit của Tốt, Xe, Hậu trong materialKey (cả hai màu)
+    private static final long HEAVY_OR_PAWN_MASK = materialNibbles(PieceType.PAWN, PieceType.ROOK, PieceType.QUEEN);
+
+    // CASTLING_MASK[sq]: các quyền mất đi khi có quân đi từ hoặc đi tới ô sq (vua/xe ở vị trí ban đầu)
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        CASTLING_MASK[7 * 8 + 4] = WHITE_KINGSIDE | WHITE_QUEENSIDE;
+        CASTLING_MASK[7 * 8 + 7] = WHITE_KINGSIDE;
+        CASTLING_MASK[7 * 8] = WHITE_QUEENSIDE;
+        CASTLING_MASK[4] = BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        CASTLING_MASK[7] = BLACK_KINGSIDE;
+        CASTLING_MASK[0] = BLACK_QUEENSIDE;
+    }
+
+    // Ô ban đầu của vua và xe: quân đúng loại không đứng đó thì mất các quyền CASTLING_MASK[sq]
+    private static final int[] CASTLING_SQUARES = {7 * 8 + 4, 7 * 8 + 7, 7 * 8, 4, 7, 0};
 
-    // Ô mà quân tốt đối phương vừa đi 2 ô, dùng để bắt en passant
-    private Position enPassantTarget = null;
+    // Mảng 64 ô lưu quân cờ (chỉ số = row * 8 + col), null = ô trống
+    private final Piece[] board = new Piece[64];
 
-    // Cờ nhập thành được xác định qua piece.hasMoved(), không dùng biến rời
+    // Ô mà quân tốt đối phương vừa đi 2 ô, dùng để bắt en passant (-1 = không có)
+    private int enPassantSquare = -1;
+
+    // Tổ hợp các cờ WHITE_KINGSIDE..BLACK_QUEENSIDE còn hiệu lực
+    private int castlingRights = ALL_CASTLING;
+
+    // Bitboard theo [màu][loại quân] và theo màu, luôn đồng bộ với mảng board
+    private final long[][] pieces = new long[2][6];
+    private final long[] colors = new long[2];
+    private long occupied;
+
+    // Ô vua theo màu (-1 = không có) và chữ ký vật chất: 4 bit đếm số quân cho mỗi (màu, loại),
+    // cập nhật trong put/remove nên không cần quét bàn cờ
+    private final int[] kingSquares = {-1, -1};
+    private long materialKey;
+    // Phần khóa Zobrist của các quân (XOR theo từng put/remove nên hoàn tác tự khôi phục)
+    private long pieceKey;
+
+    // Ngăn xếp trạng thái để hoàn tác nước đi trong O(1), không cấp phát khi đi/hoàn tác
+    private int[] undoMoves = new int[64];
+    private Piece[] undoMovers = new Piece[64];
+    private Piece[] undoCaptured = new Piece[64];
+    // bit 0..6: enPassantSquare + 1, bit 7..10: quyền nhập thành trước nước này
+    private int[] undoState = new int[64];
+    private int undoSize = 0;
 
     // Thiết lập vị trí ban đầu
     public Board() {
         setupInitial();
     }
 
+    private Board(boolean setup) {
+        if (setup) setupInitial();
+        else castlingRights = 0;
+    }
+
+    // Bàn cờ trống, không có quyền nhập thành (dùng khi dựng thế cờ từ FEN)
+    public static Board empty() {
+        return new Board(false);
+    }
+
+    // Sao chép nông: quân cờ bất biến nên chỉ cần chép mảng
+    private Board(Board other) {
+        System.arraycopy(other.board, 0, board, 0, 64);
+        for (int c = 0; c < 2; c++) {
+            System.arraycopy(other.pieces[c], 0, pieces[c], 0, 6);
+        }
+        System.arraycopy(other.colors, 0, colors, 0, 2);
+        occupied = other.occupied;
+        kingSquares[0] = other.kingSquares[0];
+        kingSquares[1] = other.kingSquares[1];
+        materialKey = other.materialKey;
+        pieceKey = other.pieceKey;
+        enPassantSquare = other.enPassantSquare;
+        castlingRights = other.castlingRights;
+    }
+
     private void setupInitial() {
         // pawns
         for (int c = 0; c < 8; c++) {
-            board[6][c] = new Pawn(Color.WHITE);
-            board[1][c] = new Pawn(Color.BLACK);
+            put(6 * 8 + c, Piece.of(Color.WHITE, PieceType.PAWN));
+            put(8 + c, Piece.of(Color.BLACK, PieceType.PAWN));
         }
         // rooks
-        board[7][0] = new Rook(Color.WHITE);
-        board[7][7] = new Rook(Color.WHITE);
-        board[0][0] = new Rook(Color.BLACK);
-        board[0][7] = new Rook(Color.BLACK);
+        put(7 * 8, Piece.of(Color.WHITE, PieceType.ROOK));
+        put(7 * 8 + 7, Piece.of(Color.WHITE, PieceType.ROOK));
+        put(0, Piece.of(Color.BLACK, PieceType.ROOK));
+        put(7, Piece.of(Color.BLACK, PieceType.ROOK));
         // knights
-        board[7][1] = new Knight(Color.WHITE);
-        board[7][6] = new Knight(Color.WHITE);
-        board[0][1] = new Knight(Color.BLACK);
-        board[0][6] = new Knight(Color.BLACK);
+        put(7 * 8 + 1, Piece.of(Color.WHITE, PieceType.KNIGHT));
+        put(7 * 8 + 6, Piece.of(Color.WHITE, PieceType.KNIGHT));
+        put(1, Piece.of(Color.BLACK, PieceType.KNIGHT));
+        put(6, Piece.of(Color.BLACK, PieceType.KNIGHT));
         // bishops
-        board[7][2] = new Bishop(Color.WHITE);
-        board[7][5] = new Bishop(Color.WHITE);
-        board[0][2] = new Bishop(Color.BLACK);
-        board[0][5] = new Bishop(Color.BLACK);
+        put(7 * 8 + 2, Piece.of(Color.WHITE, PieceType.BISHOP));
+        put(7 * 8 + 5, Piece.of(Color.WHITE, PieceType.BISHOP));
+        put(2, Piece.of(Color.BLACK, PieceType.BISHOP));
+        put(5, Piece.of(Color.BLACK, PieceType.BISHOP));
         // queens & kings
-        board[7][3] = new Queen(Color.WHITE);
-        board[7][4] = new King(Color.WHITE);
-        board[0][3] = new Queen(Color.BLACK);
-        board[0][4] = new King(Color.BLACK);
+        put(7 * 8 + 3, Piece.of(Color.WHITE, PieceType.QUEEN));
+        put(7 * 8 + 4, Piece.of(Color.WHITE, PieceType.KING));
+        put(3, Piece.of(Color.BLACK, PieceType.QUEEN));
+        put(4, Piece.of(Color.BLACK, PieceType.KING));
         // others null
     }
 
+    // Đặt quân vào ô trống và cập nhật bitboard
+    private void put(int sq, Piece piece) {
+        long bit = 1L << sq;
+        int c = piece.getColor().ordinal();
+        int t = piece.getType().ordinal();
+        board[sq] = piece;
+        pieces[c][t] |= bit;
+        colors[c] |= bit;
+        occupied |= bit;
+        materialKey += 1L << materialShift(c, t);
+        pieceKey ^= Zobrist.PIECE[c * 6 + t][sq];
+        if (piece.getType() == PieceType.KING) kingSquares[c] = sq;
+    }
+
+    // Nhấc quân khỏi ô (nếu có) và cập nhật bitboard, trả về quân bị nhấc
+    private Piece remove(int sq) {
+        Piece piece = board[sq];
+        if (piece == null) return null;
+        long bit = ~(1L << sq);
+        int c = piece.getColor().ordinal();
+        int t = piece.getType().ordinal();
+        board[sq] = null;
+        pieces[c][t] &= bit;
+        colors[c] &= bit;
+        occupied &= bit;
+        materialKey -= 1L << materialShift(c, t);
+        pieceKey ^= Zobrist.PIECE[c * 6 + t][sq];
+        if (piece.getType() == PieceType.KING && kingSquares[c] == sq) kingSquares[c] = -1;
+        return piece;
+    }
 
     // Lấy quân cờ tại vị trí p
     public Piece getPiece(Position p) {
-        return board[p.row()][p.col()];
+        return board[p.index()];
+    }
+
+    @Override
+    public Piece getPiece(int square) {
+        return board[square];
     }
 
     // Đặt quân cờ p vào vị trí
     public void setPiece(Position p, Piece piece) {
-        board[p.row()][p.col()] = piece;
+        remove(p.index());
+        if (piece != null) put(p.index(), piece);
+    }
+
+    // Đặt quân cờ vào ô theo chỉ số (null = xóa ô)
+    public void setPiece(int square, Piece piece) {
+        remove(square);
+        if (piece != null) put(square, piece);
     }
 
     // Xóa quân cờ tại vị trí
     public void clear(Position p) {
-        board[p.row()][p.col()] = null;
+        remove(p.index());
     }
 
     // BoardView implementations
     @Override
     public boolean isEmpty(Position p) {
-        return getPiece(p) == null;
+        return board[p.index()] == null;
+    }
+
+    @Override
+    public boolean isEmpty(int square) {
+        return board[square] == null;
     }
 
     @Override
     public boolean isEnemyPiece(Position p, Color myColor) {
-        Piece piece = getPiece(p);
+        return isEnemyPiece(p.index(), myColor);
+    }
+
+    @Override
+    public boolean isEnemyPiece(int square, Color myColor) {
+        Piece piece = board[square];
         return piece != null && piece.getColor() != myColor;
     }
 
     @Override
     public Position getEnPassantTarget() {
-        return enPassantTarget;
+        return enPassantSquare < 0 ? null : Position.ofIndex(enPassantSquare);
+    }
+
+    @Override
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    // Đặt ô en passant khi dựng thế cờ tùy ý (-1 = không có), sau khi đã đặt quân.
+    // Chỉ giữ ô mà một con tốt vừa đi hai bước qua: tốt đứng ngay sau ô đó, ô đó và ô xuất phát còn trống
+    public void setEnPassantSquare(int square) {
+        enPassantSquare = -1;
+        int row = square >> 3;
+        if (square < 0 || (row != 2 && row != 5)) return;
+        Color mover = row == 5 ? Color.WHITE : Color.BLACK;
+        int pawn = row == 5 ? square - 8 : square + 8;
+        int origin = row == 5 ? square + 8 : square - 8;
+        if (board[pawn] != Piece.of(mover, PieceType.PAWN) || board[square] != null || board[origin] != null) return;
+        enPassantSquare = square;
     }
 
     // Kiểm tra xem vua của màu color có đang bị chiếu không
     @Override
     public boolean isInCheck(Color color) {
         // find king pos
-        Position kingPos = findKing(color);
-        if (kingPos == null) return false; // không tìm thấy vua, lý thuyết không xảy ra
-
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece p = board[r][c];
-                if (p != null && p.getColor() != color) {
-                    Position from = Position.of(r, c);
-                    // Tránh đệ quy: riêng KING, tính ô tấn công trực tiếp (không xét nhập thành)
-                    if (p.getType() == PieceType.KING) {
-                        if (kingAdjacentAttacks(from, kingPos)) return true;
-                    } else {
-                        for (var mv : p.generateMoves(from, this)) {
-                            if (mv.getTo().equals(kingPos)) return true;
-                        }
-                    }
-                }
-            }
+        int kingSq = kingSquare(color);
+        if (kingSq < 0) return false; // không tìm thấy vua, lý thuyết không xảy ra
+        return squareAttacked(kingSq, color.opposite());
+    }
+
+    // Ô của vua màu color (-1 nếu không có)
+    public int kingSquare(Color color) {
+        return kingSquares[color.ordinal()];
+    }
+
+    // Số quân loại type của màu color còn trên bàn
+    public int pieceCount(Color color, PieceType type) {
+        return (int) (materialKey >>> materialShift(color.ordinal(), type.ordinal())) & 0xF;
+    }
+
+    /**
+     * Khóa Zobrist của thế cờ: quân, quyền nhập thành và cột en passant.
+     * Không gồm lượt đi; bên gọi XOR thêm Zobrist.SIDE khi Đen tới lượt.
+     */
+    public long zobristKey() {
+        long key = pieceKey ^ Zobrist.CASTLING[castlingRights];
+        if (enPassantSquare >= 0) key ^= Zobrist.EN_PASSANT_FILE[enPassantSquare & 7];
+        return key;
+    }
+
+    /**
+     * Chữ ký vật chất: số quân của mỗi (màu, loại) gói 4 bit một ô.
+     * Hai thế cờ có cùng chữ ký khi và chỉ khi có cùng số lượng từng loại quân.
+     */
+    public long materialKey() {
+        return materialKey;
+    }
+
+    /**
+     * Thế cờ chết do thiếu quân: chỉ còn vua và quân nhẹ, và không bên nào có thể chiếu hết
+     * (K-K, K + một quân nhẹ - K, hoặc chỉ còn Tượng và tất cả cùng màu ô).
+     */
+    public boolean isInsufficientMaterial() {
+        if ((materialKey & HEAVY_OR_PAWN_MASK) != 0) return false;
+        int knights = pieceCount(Color.WHITE, PieceType.KNIGHT) + pieceCount(Color.BLACK, PieceType.KNIGHT);
+        int bishops = pieceCount(Color.WHITE, PieceType.BISHOP) + pieceCount(Color.BLACK, PieceType.BISHOP);
+        if (knights + bishops <= 1) return true;
+        if (knights > 0) return false;
+        long allBishops = pieces[0][PieceType.BISHOP.ordinal()] | pieces[1][PieceType.BISHOP.ordinal()];
+        return (allBishops & DARK_SQUARES) == 0 || (allBishops & ~DARK_SQUARES) == 0;
+    }
+
+    private static int materialShift(int color, int type) {
+        return (color * 6 + type) * 4;
+    }
+
+    private static long materialNibbles(PieceType... types) {
+        long mask = 0L;
+        for (PieceType t : types) {
+            for (int c = 0; c < 2; c++) mask |= 0xFL << materialShift(c, t.ordinal());
         }
-        return false;
+        return mask;
     }
 
-    private Position findKing(Color color) {
-        // Tìm vị trí vua theo màu
-        for (int r = 0; r < 8; r++)
-            for (int c = 0; c < 8; c++) {
-                Piece p = board[r][c];
-                if (p != null && p.getType() == PieceType.KING && p.getColor() == color) return Position.of(r, c);
-            }
-        return null;
+    @Override
+    public long occupied() {
+        return occupied;
+    }
+
+    @Override
+    public long colorBitboard(Color color) {
+        return colors[color.ordinal()];
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    // Đặt quyền nhập thành khi dựng thế cờ tùy ý (tổ hợp WHITE_KINGSIDE..BLACK_QUEENSIDE), sau khi đã đặt quân.
+    // Bỏ quyền mà vua hoặc xe không ở ô ban đầu: canCastle* chỉ xét bit quyền
+    public void setCastlingRights(int rights) {
+        rights &= ALL_CASTLING;
+        for (int sq : CASTLING_SQUARES) {
+            Piece expected = Piece.of(sq < 8 ? Color.BLACK : Color.WHITE, (sq & 7) == 4 ? PieceType.KING : PieceType.ROOK);
+            if (board[sq] != expected) rights &= ~CASTLING_MASK[sq];
+        }
+        castlingRights = rights;
+    }
+
+    public long pieceBitboard(Color color, PieceType type) {
+        return pieces[color.ordinal()][type.ordinal()];
+    }
+
+    /**
+     * Các quân màu byColor đang tấn công ô sq, với tập ô bị chiếm occ
+     * (cho phép bỏ bớt quân, ví dụ nhấc vua ra khi xét ô vua đi tới).
+     */
+    public long attackersTo(int sq, Color byColor, long occ) {
+        long[] p = pieces[byColor.ordinal()];
+        long queens = p[PieceType.QUEEN.ordinal()];
+        return (Attacks.PAWN[byColor.opposite().ordinal()][sq] & p[PieceType.PAWN.ordinal()])
+                | (Attacks.KNIGHT[sq] & p[PieceType.KNIGHT.ordinal()])
+                | (Attacks.KING[sq] & p[PieceType.KING.ordinal()])
+                | (Attacks.bishop(sq, occ) & (p[PieceType.BISHOP.ordinal()] | queens))
+                | (Attacks.rook(sq, occ) & (p[PieceType.ROOK.ordinal()] | queens));
     }
 
     // Kiểm tra điều kiện nhập thành bên vua
     @Override
     public boolean canCastleKingSide(Color color) {
+        if ((castlingRights & (color == Color.WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE)) == 0) return false;
         int row = (color == Color.WHITE) ? 7 : 0;
+        int base = row * 8;
 
-        Piece king = getPiece(Position.of(row, 4));
-        Piece rook = getPiece(Position.of(row, 7));
-        if (king == null || rook == null) return false;
-        if (king.hasMoved() || rook.hasMoved()) return false;
-
-        if (!isEmpty(Position.of(row, 5)) || !isEmpty(Position.of(row, 6))) return false;
+        if (!isEmpty(base + 5) || !isEmpty(base + 6)) return false;
 
         if (isInCheck(color)) return false;
-        if (squareAttacked(Position.of(row, 5), color.opposite())) return false;
-        if (squareAttacked(Position.of(row, 6), color.opposite())) return false;
+        if (squareAttacked(base + 5, color.opposite())) return false;
+        if (squareAttacked(base + 6, color.opposite())) return false;
         return true;
     }
 
     // Kiểm tra điều kiện nhập thành bên hậu
     @Override
     public boolean canCastleQueenSide(Color color) {
+        if ((castlingRights & (color == Color.WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE)) == 0) return false;
         int row = (color == Color.WHITE) ? 7 : 0;
-        Piece king = getPiece(Position.of(row, 4));
-        Piece rook = getPiece(Position.of(row, 0));
-        if (king == null || rook == null) return false;
-        if (king.hasMoved() || rook.hasMoved()) return false;
-        if (!isEmpty(Position.of(row, 1)) || !isEmpty(Position.of(row, 2)) || !isEmpty(Position.of(row, 3)))
+        int base = row * 8;
+        if (!isEmpty(base + 1) || !isEmpty(base + 2) || !isEmpty(base + 3))
             return false;
         if (isInCheck(color)) return false;
-        if (squareAttacked(Position.of(row, 3), color.opposite())) return false;
-        if (squareAttacked(Position.of(row, 2), color.opposite())) return false;
+        if (squareAttacked(base + 3, color.opposite())) return false;
+        if (squareAttacked(base + 2, color.opposite())) return false;
         return true;
     }
 
-    private boolean squareAttacked(Position pos, Color byColor) {
-        // Kiểm tra xem ô pos có bị quân byColor tấn công không
-        for (int r = 0; r < 8; r++)
-            for (int c = 0; c < 8; c++) {
-                Piece p = board[r][c];
-                if (p != null && p.getColor() == byColor) {
-                    Position from = Position.of(r, c);
-                    if (p.getType() == PieceType.KING) {
-                        if (kingAdjacentAttacks(from, pos)) return true;
-                    } else {
-                        for (var mv : p.generateMoves(from, this)) {
-                            if (mv.getTo().equals(pos)) return true;
-                        }
-                    }
-                }
-            }
-        return false;
-    }
-
-    private boolean kingAdjacentAttacks(Position from, Position target) {
-        int[][] DELTAS = {
-                {-1, -1}, {-1, 0}, {-1, 1},
-                {0, -1},           {0, 1},
-                {1, -1},  {1, 0},  {1, 1}
-        };
-        for (int[] d : DELTAS) {
-            Position to = Position.of(from.row() + d[0], from.col() + d[1]);
-            if (!to.isValid()) continue;
-            if (to.equals(target)) return true;
-        }
-        return false;
+    private boolean squareAttacked(int target, Color byColor) {
+        // Kiểm tra xem ô target có bị quân byColor tấn công không
+        return attackersTo(target, byColor, occupied) != 0;
     }
 
-    // Áp dụng nước đi
-    public void applyMove(Move m) {
-        Position f = m.getFrom(), t = m.getTo();
-        Piece p = getPiece(f);
-        if (p == null) throw new IllegalStateException("No piece at from: " + f);
+    // Áp dụng nước đi (dạng PackedMove)
+    public void applyMove(int m) {
+        int f = PackedMove.from(m), t = PackedMove.to(m);
+        Piece p = board[f];
+        if (p == null) throw new IllegalStateException("No piece at from: " + Position.ofIndex(f));
 
-        switch (m.getType()) {
+        pushUndo(m, p, f, t);
+        switch (PackedMove.type(m)) {
             case NORMAL -> {
-                setPiece(t, p);
-                clear(f);
-                if (m.getPromotionTo() != null) {
+                movePiece(f, t);
+                if (PackedMove.promotion(m) != null) {
                     // Phong cấp quân cờ
-                    Piece promoted = switch (m.getPromotionTo()) {
-                        case QUEEN -> new Queen(p.getColor());
-                        case ROOK -> new Rook(p.getColor());
-                        case BISHOP -> new Bishop(p.getColor());
-                        case KNIGHT -> new Knight(p.getColor());
-                        default -> new Queen(p.getColor());
-                    };
-                    setPiece(t, promoted);
+                    remove(t);
+                    put(t, promote(PackedMove.promotion(m), p.getColor()));
                 }
-                p.setMoved(true);
-                enPassantTarget = null;
+                enPassantSquare = -1;
             }
             case CAPTURE -> {
-                setPiece(t, p);
-                clear(f);
-                p.setMoved(true);
-                enPassantTarget = null;
+                movePiece(f, t);
+                enPassantSquare = -1;
             }
             case DOUBLE_PAWN -> {
-                setPiece(t, p);
-                clear(f);
-                p.setMoved(true);
+                movePiece(f, t);
                 // set en passant target to square behind pawn (where enemy pawn would land)
-                int midRow = (f.row() + t.row()) / 2;
-                enPassantTarget = Position.of(midRow, t.col());
+                enPassantSquare = (f + t) / 2;
             }
             case EN_PASSANT -> {
                 // pawn moves to ep target, capture the pawn behind target
-                setPiece(t, p);
-                clear(f);
-                int capturedRow = f.row(); // captured pawn is on same row as moving pawn originally
-                clear(Position.of(capturedRow, t.col()));
-                p.setMoved(true);
-                enPassantTarget = null;
+                movePiece(f, t);
+                // captured pawn is on same row as moving pawn originally
+                remove((f & ~7) | (t & 7));
+                enPassantSquare = -1;
             }
             case CASTLE_KINGSIDE -> {
                 // move king 2 to right, rook to left of king
-                setPiece(t, p);
-                clear(f);
-                p.setMoved(true);
-                int row = f.row();
+                movePiece(f, t);
+                int base = f & ~7;
                 // rook from col 7 to col 5
-                Piece rook = getPiece(Position.of(row, 7));
-                setPiece(Position.of(row, 5), rook);
-                clear(Position.of(row, 7));
-                if (rook != null) rook.setMoved(true);
-                enPassantTarget = null;
+                if (board[base + 7] != null) movePiece(base + 7, base + 5);
+                enPassantSquare = -1;
             }
             case CASTLE_QUEENSIDE -> {
-                setPiece(t, p);
-                clear(f);
-                p.setMoved(true);
-                int row = f.row();
-                Piece rook = getPiece(Position.of(row, 0));
-                setPiece(Position.of(row, 3), rook);
-                clear(Position.of(row, 0));
-                if (rook != null) rook.setMoved(true);
-                enPassantTarget = null;
+                movePiece(f, t);
+                int base = f & ~7;
+                if (board[base] != null) movePiece(base, base + 3);
+                enPassantSquare = -1;
             }
             case PROMOTION -> {
-                setPiece(t, p);
-                clear(f);
-                Piece promoted = switch (m.getPromotionTo()) {
-                    case QUEEN -> new Queen(p.getColor());
-                    case ROOK -> new Rook(p.getColor());
-                    case BISHOP -> new Bishop(p.getColor());
-                    case KNIGHT -> new Knight(p.getColor());
-                    default -> new Queen(p.getColor());
-                };
-                setPiece(t, promoted);
-                enPassantTarget = null;
+                remove(f);
+                remove(t);
+                put(t, promote(PackedMove.promotion(m), p.getColor()));
+                enPassantSquare = -1;
             }
         }
+        castlingRights &= ~(CASTLING_MASK[f] | CASTLING_MASK[t]);
     }
 
-    @Override
-    public Board clone() {
-        // Tạo Board mới rồi sao chép từng phần tử để tránh chia sẻ mảng nội bộ
-        Board copy = new Board();
-        // Xóa thiết lập mặc định từ constructor
-        for (int r = 0; r < 8; r++)
-            for (int c = 0; c < 8; c++)
-                copy.board[r][c] = null;
-
-        for (int r = 0; r < 8; r++)
-            for (int c = 0; c < 8; c++) {
-                Piece p = this.board[r][c];
-                copy.board[r][c] = (p == null) ? null : p.clone();
+    // Lưu trạng thái cần thiết để undoMove() khôi phục chính xác
+    private void pushUndo(int m, Piece mover, int f, int t) {
+        if (undoSize == undoMoves.length) {
+            int cap = undoSize * 2;
+            undoMoves = Arrays.copyOf(undoMoves, cap);
+            undoMovers = Arrays.copyOf(undoMovers, cap);
+            undoCaptured = Arrays.copyOf(undoCaptured, cap);
+            undoState = Arrays.copyOf(undoState, cap);
+        }
+        int capturedSq = PackedMove.type(m) == MoveType.EN_PASSANT ? (f & ~7) | (t & 7) : t;
+        undoMoves[undoSize] = m;
+        undoMovers[undoSize] = mover;
+        undoCaptured[undoSize] = board[capturedSq];
+        undoState[undoSize] = (enPassantSquare + 1) | (castlingRights << 7);
+        undoSize++;
+    }
+
+    /**
+     * Hoàn tác nước đi gần nhất đã áp dụng bằng applyMove() trong O(1).
+     *
+     * @return nước đi (PackedMove) vừa được hoàn tác, hoặc PackedMove.NONE nếu không còn gì để hoàn tác
+     */
+    public int undoMove() {
+        if (undoSize == 0) return PackedMove.NONE;
+        undoSize--;
+        int m = undoMoves[undoSize];
+        Piece mover = undoMovers[undoSize];
+        Piece captured = undoCaptured[undoSize];
+        int state = undoState[undoSize];
+        undoMovers[undoSize] = null;
+        undoCaptured[undoSize] = null;
+
+        int f = PackedMove.from(m), t = PackedMove.to(m);
+        switch (PackedMove.type(m)) {
+            case EN_PASSANT -> {
+                remove(t);
+                put(f, mover);
+                put((f & ~7) | (t & 7), captured);
+            }
+            case CASTLE_KINGSIDE -> {
+                remove(t);
+                put(f, mover);
+                int base = f & ~7;
+                Piece rook = remove(base + 5);
+                if (rook != null) put(base + 7, rook);
+            }
+            case CASTLE_QUEENSIDE -> {
+                remove(t);
+                put(f, mover);
+                int base = f & ~7;
+                Piece rook = remove(base + 3);
+                if (rook != null) put(base, rook);
             }
+            default -> {
+                // NORMAL, CAPTURE, DOUBLE_PAWN, PROMOTION: quân ở t có thể là quân đã phong cấp
+                remove(t);
+                put(f, mover);
+                if (captured != null) put(t, captured);
+            }
+        }
+        castlingRights = state >>> 7;
+        enPassantSquare = (state & 0x7F) - 1;
+        return m;
+    }
+
+    // Số nước có thể hoàn tác
+    public int undoDepth() {
+        return undoSize;
+    }
+
+    // Di chuyển quân từ f đến t, quân đang đứng ở t (nếu có) bị bắt
+    private void movePiece(int f, int t) {
+        remove(t);
+        put(t, remove(f));
+    }
+
+    private static Piece promote(PieceType type, Color color) {
+        return switch (type == null ? PieceType.QUEEN : type) {
+            case ROOK, BISHOP, KNIGHT -> Piece.of(color, type);
+            default -> Piece.of(color, PieceType.QUEEN);
+        };
+    }
 
-        copy.enPassantTarget = this.enPassantTarget;
-        return copy;
+    @Override
+    public Board clone() {
+        // Không chép lịch sử hoàn tác: bản sao bắt đầu từ thế cờ hiện tại
+        return new Board(this);
     }
 }
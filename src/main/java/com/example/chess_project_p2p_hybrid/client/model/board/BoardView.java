@@ -22,6 +22,14 @@ public interface BoardView {
      */
     boolean isEmpty(Position p);
 
+    /**
+     * Kiểm tra ô có trống không (theo chỉ số ô).
+     *
+     * @param square chỉ số ô 0..63 (row * 8 + col)
+     * @return true nếu ô không có quân
+     */
+    boolean isEmpty(int square);
+
     /**
      * Kiểm tra ô có chứa quân địch không.
      *
@@ -31,6 +39,15 @@ public interface BoardView {
      */
     boolean isEnemyPiece(Position p, Color myColor);
 
+    /**
+     * Kiểm tra ô có chứa quân địch không (theo chỉ số ô).
+     *
+     * @param square  chỉ số ô 0..63
+     * @param myColor màu quân đang xét
+     * @return true nếu quân ở ô là quân địch
+     */
+    boolean isEnemyPiece(int square, Color myColor);
+
     /**
      * Lấy quân ở vị trí p.
      *
@@ -39,6 +56,29 @@ public interface BoardView {
      */
     Piece getPiece(Position p);
 
+    /**
+     * Lấy quân ở ô theo chỉ số.
+     *
+     * @param square chỉ số ô 0..63
+     * @return Piece ở ô hoặc null nếu trống
+     */
+    Piece getPiece(int square);
+
+    /**
+     * Bitboard mọi ô đang có quân (bit i = ô i).
+     *
+     * @return bitboard ô có quân
+     */
+    long occupied();
+
+    /**
+     * Bitboard các ô có quân của một màu.
+     *
+     * @param color màu quân
+     * @return bitboard quân của color
+     */
+    long colorBitboard(Color color);
+
     /**
      * Lấy vị trí có thể thực hiện en passant (nếu có)
      *
@@ -46,6 +86,13 @@ public interface BoardView {
      */
     Position getEnPassantTarget();
 
+    /**
+     * Lấy chỉ số ô en passant (nếu có)
+     *
+     * @return chỉ số ô 0..63 hoặc -1 nếu không có
+     */
+    int getEnPassantSquare();
+
     /**
      * Kiểm tra vua của màu color có đang bị chiếu không.
      *
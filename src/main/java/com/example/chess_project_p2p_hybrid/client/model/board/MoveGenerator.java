@@ -0,0 +1,190 @@
+package com.example.chess_project_p2p_hybrid.client.model.board;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Piece;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+/**
+ * Sinh nước đi hợp lệ hoàn toàn (fully legal) cho một thế cờ.
+ * Quân chiếu và quân bị ghim được tính một lần trong analyze(), sau đó mỗi nước
+ * giả hợp lệ chỉ cần kiểm tra bằng mặt nạ bitboard, không phải đi thử rồi gọi isInCheck:
+ * - Đang bị chiếu đôi: chỉ vua được đi.
+ * - Đang bị chiếu đơn: quân khác phải bắt quân chiếu hoặc chặn đường chiếu.
+ * - Quân bị ghim: chỉ được đi dọc theo tia ghim.
+ * - Vua: ô đến không bị tấn công (tính cả khi nhấc vua khỏi tia chiếu).
+ * - En passant: mô phỏng bitboard để bắt trường hợp lộ chiếu theo hàng ngang.
+ */
+public final class MoveGenerator {
+    private final Board board;
+    // Buffer riêng cho hasAnyLegalMove(), không đụng tới buffer của người gọi
+    private final int[] scratch = new int[PackedMove.MAX_MOVES];
+
+    // Thứ tự thử quân khi chỉ cần biết có nước hợp lệ hay không: quân có nhiều nước/ít bị ghim trước
+    private static final PieceType[] ANY_MOVE_ORDER = {
+            PieceType.KNIGHT, PieceType.PAWN, PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP
+    };
+
+    private Color side;
+    private int kingSq;
+    private long checkers;
+    private long pinned;
+    // Ô mà quân (khác vua) được phép đi tới để giải chiếu (tất cả nếu không bị chiếu)
+    private long checkMask;
+
+    public MoveGenerator(Board board) {
+        this.board = board;
+    }
+
+    /**
+     * Tính quân chiếu, quân bị ghim cho bên side. Phải gọi lại mỗi khi thế cờ thay đổi.
+     */
+    public void analyze(Color side) {
+        this.side = side;
+        Color them = side.opposite();
+        long occ = board.occupied();
+        kingSq = board.kingSquare(side);
+        if (kingSq < 0) {
+            // Không có vua (thế cờ dựng tay): không có ràng buộc chiếu/ghim
+            checkers = 0L;
+            pinned = 0L;
+            checkMask = -1L;
+            return;
+        }
+
+        checkers = board.attackersTo(kingSq, them, occ);
+        if (checkers == 0) {
+            checkMask = -1L;
+        } else if (Long.bitCount(checkers) == 1) {
+            checkMask = checkers | Attacks.BETWEEN[kingSq][Long.numberOfTrailingZeros(checkers)];
+        } else {
+            checkMask = 0L;
+        }
+
+        // Quân ghim: quân trượt của đối thủ nhìn thấy vua nếu bỏ qua mọi quân cản
+        long queens = board.pieceBitboard(them, PieceType.QUEEN);
+        long snipers = (Attacks.rook(kingSq, 0L) & (board.pieceBitboard(them, PieceType.ROOK) | queens))
+                | (Attacks.bishop(kingSq, 0L) & (board.pieceBitboard(them, PieceType.BISHOP) | queens));
+        long own = board.colorBitboard(side);
+        pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.BETWEEN[kingSq][sniper] & occ;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & own) != 0) {
+                pinned |= blockers;
+            }
+        }
+    }
+
+    public boolean isInCheck() {
+        return checkers != 0;
+    }
+
+    public long getCheckers() {
+        return checkers;
+    }
+
+    public long getPinned() {
+        return pinned;
+    }
+
+    /**
+     * Sinh tất cả nước hợp lệ của bên đã analyze().
+     */
+    public int generate(int[] moves, int count) {
+        long own = board.colorBitboard(side);
+        while (own != 0) {
+            int from = Long.numberOfTrailingZeros(own);
+            own &= own - 1;
+            count = generateFrom(from, moves, count);
+        }
+        return count;
+    }
+
+    /**
+     * Sinh nước hợp lệ của quân ở ô from (nếu là quân của bên đã analyze()).
+     */
+    public int generateFrom(int from, int[] moves, int count) {
+        Piece p = board.getPiece(from);
+        if (p == null || p.getColor() != side) return count;
+        // Chiếu đôi: chỉ vua được đi
+        if (checkMask == 0 && from != kingSq) return count;
+
+        int end = p.generateMoves(from, board, moves, count);
+        int kept = count;
+        for (int i = count; i < end; i++) {
+            if (isLegal(moves[i])) moves[kept++] = moves[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Kiểm tra bên đã analyze() còn ít nhất một nước hợp lệ không, dừng ngay ở nước đầu tiên tìm được.
+     * Thử vua trước (thường có nước thoát), sau đó các quân không bị ghim, cuối cùng mới tới quân bị ghim.
+     */
+    public boolean hasAnyLegalMove() {
+        if (kingSq >= 0 && anyLegalFrom(kingSq)) return true;
+        // Chiếu đôi: vua không đi được thì hết nước
+        if (checkMask == 0) return false;
+
+        for (int pass = 0; pass < 2; pass++) {
+            // Lượt 1: quân tự do, lượt 2: quân bị ghim
+            long pinFilter = pass == 0 ? ~pinned : pinned;
+            for (PieceType type : ANY_MOVE_ORDER) {
+                long bb = board.pieceBitboard(side, type) & pinFilter;
+                while (bb != 0) {
+                    int from = Long.numberOfTrailingZeros(bb);
+                    bb &= bb - 1;
+                    if (anyLegalFrom(from)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean anyLegalFrom(int from) {
+        int end = board.getPiece(from).generateMoves(from, board, scratch, 0);
+        for (int i = 0; i < end; i++) {
+            if (isLegal(scratch[i])) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Kiểm tra một nước giả hợp lệ (pseudo-legal) của bên đã analyze() có hợp lệ không.
+     */
+    public boolean isLegal(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Color them = side.opposite();
+
+        if (from == kingSq) {
+            // Nhập thành đã được kiểm tra ô đi qua trong canCastle*
+            MoveType type = PackedMove.type(move);
+            if (type == MoveType.CASTLE_KINGSIDE || type == MoveType.CASTLE_QUEENSIDE) return true;
+            long occ = board.occupied() & ~(1L << from);
+            return board.attackersTo(to, them, occ) == 0;
+        }
+
+        if (PackedMove.type(move) == MoveType.EN_PASSANT) {
+            return isLegalEnPassant(from, to, them);
+        }
+
+        if ((checkMask & (1L << to)) == 0) return false;
+        return (pinned & (1L << from)) == 0 || (Attacks.LINE[kingSq][from] & (1L << to)) != 0;
+    }
+
+    private boolean isLegalEnPassant(int from, int to, Color them) {
+        int captured = (from & ~7) | (to & 7);
+        if ((checkMask & ((1L << to) | (1L << captured))) == 0) return false;
+        if (kingSq < 0) return true;
+
+        // Mô phỏng thế cờ sau khi bắt: tốt rời from, tốt bị bắt biến mất, tốt đứng ở to
+        long occ = (board.occupied() & ~(1L << from) & ~(1L << captured)) | (1L << to);
+        long queens = board.pieceBitboard(them, PieceType.QUEEN);
+        return (Attacks.rook(kingSq, occ) & (board.pieceBitboard(them, PieceType.ROOK) | queens)) == 0
+                && (Attacks.bishop(kingSq, occ) & (board.pieceBitboard(them, PieceType.BISHOP) | queens)) == 0;
+    }
+}
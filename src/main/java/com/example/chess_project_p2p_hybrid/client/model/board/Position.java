@@ -16,4 +16,14 @@ public record Position(int row, int col) {
     public static Position of(int row, int col) {
         return new Position(row, col);
     }
+
+    // Chỉ số ô 0..63 (row * 8 + col), dùng cho biểu diễn nước đi dạng int
+    public int index() {
+        return row * 8 + col;
+    }
+
+    // Tạo Position từ chỉ số ô 0..63
+    public static Position ofIndex(int square) {
+        return new Position(square >> 3, square & 7);
+    }
 }
@@ -0,0 +1,43 @@
+package com.example.chess_project_p2p_hybrid.client.model.board;
+
+/**
+ * Khóa ngẫu nhiên Zobrist để băm thế cờ thành một số 64 bit (dùng cho bảng chuyển vị và phát hiện lặp).
+ * Khóa sinh từ seed cố định nên cùng thế cờ luôn cho cùng giá trị giữa các lần chạy.
+ */
+public final class Zobrist {
+    // PIECE[color * 6 + type][sq]
+    static final long[][] PIECE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EN_PASSANT_FILE = new long[8];
+    // XOR vào khóa khi Đen tới lượt (Board không biết lượt đi, bên gọi tự thêm)
+    public static final long SIDE;
+
+    static {
+        long[] state = {0x9E3779B97F4A7C15L};
+        for (long[] keys : PIECE) {
+            for (int sq = 0; sq < 64; sq++) keys[sq] = next(state);
+        }
+        // Không có quyền nhập thành nào thì khóa = 0, các tổ hợp khác ghép từ 4 khóa đơn
+        long[] single = {next(state), next(state), next(state), next(state)};
+        for (int rights = 1; rights < 16; rights++) {
+            for (int bit = 0; bit < 4; bit++) {
+                if ((rights & (1 << bit)) != 0) CASTLING[rights] ^= single[bit];
+            }
+        }
+        for (int file = 0; file < 8; file++) EN_PASSANT_FILE[file] = next(state);
+        SIDE = next(state);
+    }
+
+    private Zobrist() {
+    }
+
+    // xorshift64*
+    private static long next(long[] state) {
+        long s = state[0];
+        s ^= s >>> 12;
+        s ^= s << 25;
+        s ^= s >>> 27;
+        state[0] = s;
+        return s * 2685821657736338717L;
+    }
+}
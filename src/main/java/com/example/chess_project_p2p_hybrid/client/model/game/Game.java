@@ -1,11 +1,14 @@
 package com.example.chess_project_p2p_hybrid.client.model.game;
 
 import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.board.MoveGenerator;
 import com.example.chess_project_p2p_hybrid.client.model.board.Position;
 import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
 import com.example.chess_project_p2p_hybrid.client.model.piece.Piece;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,17 +17,221 @@ import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
 
 public class Game {
     private Board board;
+    private MoveGenerator generator;
+    // generator đã analyze() cho thế cờ hiện tại chưa (dùng chung giữa kiểm tra kết quả và validate nước tiếp theo)
+    private boolean analyzed = false;
     private Color turn = Color.WHITE;
     private GameResult result = GameResult.ONGOING;
     private List<Move> history = new ArrayList<>();
+    // SAN của từng nước trong history (tính lúc đi vì cần ngữ cảnh thế cờ trước nước đi)
+    private final List<String> sanHistory = new ArrayList<>();
+    // Thế cờ bắt đầu ván (FEN), dùng khi xuất PGN
+    private String startFen = START_FEN;
     
     // 50-move rule: đếm số bán nước đi (half-moves) không có bắt quân hoặc đi tốt
     private int halfMoveClock = 0;
+    // Số nước đầy đủ theo FEN, tăng sau mỗi nước của Đen
+    private int fullMoveNumber = 1;
     // 3-fold repetition: lưu trạng thái bàn cờ và số lần xuất hiện
     private Map<String, Integer> positionHistory = new HashMap<>();
 
+    // Ngăn xếp trạng thái có thể hoàn tác, mỗi nước đi một bản ghi (bàn cờ tự lưu phần của nó)
+    private final Deque<UndoEntry> undoStack = new ArrayDeque<>();
+
+    /**
+     * Trạng thái cấp Game trước một nước đi, đủ để undoLastMove() khôi phục chính xác.
+     *
+     * @param halfMoveClock  đồng hồ 50 nước trước nước đi
+     * @param positionKey    khóa thế cờ được cộng vào positionHistory sau nước đi
+     * @param result         kết quả trước nước đi
+     */
+    private record UndoEntry(int halfMoveClock, String positionKey, GameResult result) {
+    }
+
+    // Buffer nước đi (PackedMove) dùng lại cho mỗi lần sinh nước, tránh cấp phát Move/Position
+    private final int[] moveBuffer = new int[PackedMove.MAX_MOVES];
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Ký tự FEN của quân Trắng theo thứ tự PieceType (Đen là chữ thường)
+    private static final String FEN_PIECES = "PNBRQK";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
     public Game() {
         board = new Board();
+        generator = new MoveGenerator(board);
+    }
+
+    /**
+     * Tạo ván cờ bắt đầu từ thế cờ FEN.
+     *
+     * @param fen chuỗi FEN (hai trường đồng hồ cuối có thể bỏ qua)
+     * @throws IllegalArgumentException nếu FEN không hợp lệ
+     */
+    public static Game fromFen(String fen) {
+        Game game = new Game();
+        game.loadFen(fen);
+        return game;
+    }
+
+    /**
+     * Thay thế thế cờ hiện tại bằng thế cờ FEN, xóa lịch sử nước đi.
+     * Đọc một lượt qua chuỗi, chỉ cấp phát bàn cờ mới; nếu FEN lỗi thì ván hiện tại giữ nguyên.
+     *
+     * @throws IllegalArgumentException nếu FEN không hợp lệ
+     */
+    public void loadFen(String fen) {
+        if (fen == null) throw new IllegalArgumentException("FEN is null");
+        Board b = Board.empty();
+        int n = fen.length();
+        int i = 0;
+
+        // 1. Vị trí quân: hàng 8 trước (row 0), mỗi hàng từ cột a
+        int row = 0, col = 0;
+        for (; i < n && fen.charAt(i) != ' '; i++) {
+            char ch = fen.charAt(i);
+            if (ch == '/') {
+                if (col != 8) throw invalidFen(fen);
+                row++;
+                col = 0;
+            } else if (ch >= '1' && ch <= '8') {
+                col += ch - '0';
+            } else {
+                int type = FEN_PIECES.indexOf(Character.toUpperCase(ch));
+                if (type < 0 || row > 7 || col > 7) throw invalidFen(fen);
+                Color color = Character.isUpperCase(ch) ? Color.WHITE : Color.BLACK;
+                b.setPiece(row * 8 + col, Piece.of(color, PIECE_TYPES[type]));
+                col++;
+            }
+            if (col > 8) throw invalidFen(fen);
+        }
+        if (row != 7 || col != 8) throw invalidFen(fen);
+        for (Color c : Color.values()) {
+            if (b.pieceCount(c, PieceType.KING) != 1) throw invalidFen(fen);
+        }
+
+        // 2. Lượt đi
+        i++;
+        if (i >= n) throw invalidFen(fen);
+        Color side = switch (fen.charAt(i++)) {
+            case 'w' -> Color.WHITE;
+            case 'b' -> Color.BLACK;
+            default -> throw invalidFen(fen);
+        };
+
+        // 3. Quyền nhập thành
+        int rights = 0;
+        i++;
+        for (; i < n && fen.charAt(i) != ' '; i++) {
+            rights |= switch (fen.charAt(i)) {
+                case 'K' -> Board.WHITE_KINGSIDE;
+                case 'Q' -> Board.WHITE_QUEENSIDE;
+                case 'k' -> Board.BLACK_KINGSIDE;
+                case 'q' -> Board.BLACK_QUEENSIDE;
+                case '-' -> 0;
+                default -> throw invalidFen(fen);
+            };
+        }
+        // Board bỏ quyền mà vua/xe không ở ô ban đầu (FEN từ sync_state của đối thủ có thể sai)
+        b.setCastlingRights(rights);
+
+        // 4. Ô en passant
+        i++;
+        if (i < n && fen.charAt(i) != '-') {
+            if (i + 1 >= n) throw invalidFen(fen);
+            int file = fen.charAt(i) - 'a', rank = fen.charAt(i + 1) - '1';
+            if (file < 0 || file > 7 || (rank != 2 && rank != 5)) throw invalidFen(fen);
+            // Ô của bên vừa đi mới có nghĩa; Board bỏ ô không có tốt vừa đi hai bước
+            if (rank == (side == Color.WHITE ? 5 : 2)) b.setEnPassantSquare((7 - rank) * 8 + file);
+            i += 2;
+        } else {
+            i++;
+        }
+
+        // 5, 6. Đồng hồ 50 nước và số nước đầy đủ (mặc định 0 và 1)
+        int[] counters = {0, 1};
+        for (int k = 0; k < 2 && i < n; k++) {
+            i++;
+            int value = 0, digits = 0;
+            for (; i < n && fen.charAt(i) != ' '; i++, digits++) {
+                char ch = fen.charAt(i);
+                if (ch < '0' || ch > '9' || digits > 5) throw invalidFen(fen);
+                value = value * 10 + (ch - '0');
+            }
+            if (digits == 0) throw invalidFen(fen);
+            counters[k] = value;
+        }
+
+        this.board = b;
+        this.generator = new MoveGenerator(b);
+        invalidateAnalysis();
+        this.turn = side;
+        this.history.clear();
+        this.sanHistory.clear();
+        this.undoStack.clear();
+        this.positionHistory.clear();
+        this.halfMoveClock = counters[0];
+        this.fullMoveNumber = Math.max(1, counters[1]);
+        this.startFen = toFen();
+        computeResult();
+    }
+
+    /**
+     * Xuất thế cờ hiện tại dạng FEN (đủ 6 trường), dùng làm snapshot gọn để đồng bộ.
+     */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece p = board.getPiece(row * 8 + col);
+                if (p == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                char ch = FEN_PIECES.charAt(p.getType().ordinal());
+                sb.append(p.getColor() == Color.WHITE ? ch : Character.toLowerCase(ch));
+            }
+            if (empty > 0) sb.append((char) ('0' + empty));
+            if (row < 7) sb.append('/');
+        }
+
+        sb.append(turn == Color.WHITE ? " w " : " b ");
+
+        int rights = board.getCastlingRights();
+        if (rights == 0) sb.append('-');
+        if ((rights & Board.WHITE_KINGSIDE) != 0) sb.append('K');
+        if ((rights & Board.WHITE_QUEENSIDE) != 0) sb.append('Q');
+        if ((rights & Board.BLACK_KINGSIDE) != 0) sb.append('k');
+        if ((rights & Board.BLACK_QUEENSIDE) != 0) sb.append('q');
+
+        int ep = board.getEnPassantSquare();
+        sb.append(' ');
+        if (ep < 0) sb.append('-');
+        else sb.append((char) ('a' + (ep & 7))).append((char) ('8' - (ep >> 3)));
+
+        sb.append(' ').append(halfMoveClock).append(' ').append(fullMoveNumber);
+        return sb.toString();
+    }
+
+    private static IllegalArgumentException invalidFen(String fen) {
+        return new IllegalArgumentException("Invalid FEN: " + fen);
+    }
+
+    public int getHalfMoveClock() {
+        return halfMoveClock;
+    }
+
+    public int getFullMoveNumber() {
+        return fullMoveNumber;
+    }
+
+    public String getStartFen() {
+        return startFen;
     }
 
     public Board getBoard() {
@@ -45,39 +252,77 @@ public class Game {
 
     /**
      * Trả về danh sách legal moves (đã lọc không để vua bị chiếu).
+     * Đây là biên UI nên mới chuyển PackedMove sang Move.
      *
      * @param from Vị trí quân cờ
      * @return Danh sách các nước đi hợp lệ (đã lọc)
      */
     public List<Move> legalMovesFor(Position from) {
-        Piece p = board.getPiece(from);
-        if (p == null || p.getColor() != turn) return List.of();
+        int count = legalMovesFrom(from.index(), moveBuffer, 0);
+        return toMoveList(moveBuffer, count);
+    }
 
-        List<Move> candidates = p.generateMoves(from, board);
+    /**
+     * Tất cả legal moves cho player hiện tại (dạng Move, dùng ở biên UI/mạng)
+     */
+    public List<Move> allLegalMoves() {
+        int count = generateLegalMoves(moveBuffer);
+        return toMoveList(moveBuffer, count);
+    }
 
-        List<Move> legal = new ArrayList<>();
-        for (Move m : candidates) {
-            Board copy = board.clone();
-            copy.applyMove(m);
-            if (!copy.isInCheck(turn)) legal.add(m);
-        }
-        return legal;
+    /**
+     * Sinh tất cả legal moves (PackedMove) cho player hiện tại vào buffer.
+     *
+     * @param moves buffer có ít nhất PackedMove.MAX_MOVES phần tử
+     * @return số nước hợp lệ
+     */
+    public int generateLegalMoves(int[] moves) {
+        ensureAnalyzed();
+        return generator.generate(moves, 0);
     }
 
     /**
-     * Tất cả legal moves cho player hiện tại (dùng để kiểm tra checkmate/stalemate)
+     * Bên đang tới lượt còn nước hợp lệ nào không (dừng ở nước đầu tiên tìm được).
      */
-    public List<Move> allLegalMoves() {
-        List<Move> all = new ArrayList<>();
-        for (int r = 0; r < 8; r++)
-            for (int c = 0; c < 8; c++) {
-                Position from = Position.of(r, c);
-                Piece p = board.getPiece(from);
-                if (p != null && p.getColor() == turn) {
-                    all.addAll(legalMovesFor(from));
-                }
-            }
-        return all;
+    public boolean hasAnyLegalMove() {
+        ensureAnalyzed();
+        return generator.hasAnyLegalMove();
+    }
+
+    // Tính quân chiếu/quân ghim một lần cho thế cờ hiện tại
+    private void ensureAnalyzed() {
+        if (!analyzed) {
+            generator.analyze(turn);
+            analyzed = true;
+        }
+    }
+
+    // Gọi mỗi khi bàn cờ hoặc lượt thay đổi
+    private void invalidateAnalysis() {
+        analyzed = false;
+    }
+
+    // Sinh legal moves của quân tại ô from, ghi tiếp vào buffer từ vị trí count
+    private int legalMovesFrom(int from, int[] moves, int count) {
+        ensureAnalyzed();
+        return generator.generateFrom(from, moves, count);
+    }
+
+    // Kiểm tra nước đi (PackedMove) có nằm trong danh sách legal moves không
+    private boolean isLegal(int move) {
+        int count = legalMovesFrom(PackedMove.from(move), moveBuffer, 0);
+        for (int i = 0; i < count; i++) {
+            if (moveBuffer[i] == move) return true;
+        }
+        return false;
+    }
+
+    private static List<Move> toMoveList(int[] moves, int count) {
+        List<Move> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(PackedMove.toMove(moves[i]));
+        }
+        return list;
     }
 
     /**
@@ -91,37 +336,68 @@ public class Game {
         Piece p = board.getPiece(m.getFrom());
         if (p == null || p.getColor() != turn) return false;
 
-        List<Move> legal = legalMovesFor(m.getFrom());
-        if (!legal.contains(m)) return false;
+        int packed = PackedMove.fromMove(m);
+        if (!isLegal(packed)) return false;
 
-        applyMoveInternal(m);
+        applyMoveInternal(m, packed);
         return true;
     }
 
-    private void applyMoveInternal(Move m) {
+    /**
+     * Áp dụng nước đi đã biết là hợp lệ trong thế cờ hiện tại (lấy từ generateLegalMoves()), không kiểm tra lại.
+     */
+    void applyMove(int packed) {
+        applyMoveInternal(PackedMove.toMove(packed), packed);
+    }
+
+    // Quân ở ô from có nước hợp lệ tới ô to không (khử nhập nhằng SAN)
+    boolean canMoveTo(int from, int to) {
+        int count = legalMovesFrom(from, moveBuffer, 0);
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.to(moveBuffer[i]) == to) return true;
+        }
+        return false;
+    }
+
+    private void applyMoveInternal(Move m, int packed) {
         // Check for 50-move rule reset (Pawn move or Capture)
-        Piece p = board.getPiece(m.getFrom());
+        Piece p = board.getPiece(PackedMove.from(packed));
         boolean isPawnMove = p != null && p.getType() == PieceType.PAWN;
-        boolean isCapture = m.getType() == MoveType.CAPTURE || m.getType() == MoveType.EN_PASSANT;
-        
+        MoveType type = PackedMove.type(packed);
+        boolean isCapture = type == MoveType.CAPTURE || type == MoveType.EN_PASSANT;
+        int previousClock = halfMoveClock;
+        GameResult previousResult = result;
+
         if (isPawnMove || isCapture) {
             halfMoveClock = 0;
-            positionHistory.clear(); // Quy tắc: 50-move reset thì thường repetition cũng bị ảnh hưởng (do không thể quay lại trạng thái trước khi tốt đã đi hoặc quân đã mất)
-            // Tuy nhiên, 3-fold repetition tính trên toàn bộ ván, nhưng nếu tốt đi hoặc ăn quân thì trạng thái cũ không bao giờ lặp lại được nữa.
-            // Nên clear map là hợp lý để tiết kiệm memory và đúng logic.
+            // Không xóa positionHistory: thế cờ cũ không thể lặp lại sau khi đi tốt/ăn quân,
+            // nhưng giữ lại số đếm để undoLastMove() khôi phục chính xác
         } else {
             halfMoveClock++;
         }
 
-        board.applyMove(m);
+        // SAN cần thế cờ trước nước đi để khử nhập nhằng
+        StringBuilder san = new StringBuilder(8);
+        San.appendBase(san, this, packed);
+
+        board.applyMove(packed);
         history.add(m);
+        if (turn == Color.BLACK) fullMoveNumber++;
         turn = turn.opposite();
+        invalidateAnalysis();
         
         // Update position history for 3-fold repetition
         String stateKey = generateStateKey();
-        positionHistory.put(stateKey, positionHistory.getOrDefault(stateKey, 0) + 1);
+        positionHistory.merge(stateKey, 1, Integer::sum);
+        undoStack.push(new UndoEntry(previousClock, stateKey, previousResult));
         
         computeResult();
+        // computeResult() đã analyze() thế cờ mới nên biết ngay có chiếu hay không
+        if (generator.isInCheck()) {
+            boolean mate = result == GameResult.CHECKMATE_WHITE || result == GameResult.CHECKMATE_BLACK;
+            san.append(mate ? '#' : '+');
+        }
+        sanHistory.add(san.toString());
     }
 
     public boolean applyRemoteMove(Move move) {
@@ -135,53 +411,55 @@ public class Game {
         }
 
         // 2. Validate move legality
-        List<Move> legalMoves = legalMovesFor(move.getFrom());
-        if (!legalMoves.contains(move)) {
+        int packed = PackedMove.fromMove(move);
+        if (!isLegal(packed)) {
             System.err.println("Illegal remote move detected: " + move);
             return false;
         }
 
         // 3. Apply
-        applyMoveInternal(move);
+        applyMoveInternal(move, packed);
         return true;
     }
 
+    /**
+     * Hoàn tác nước đi cuối trong O(1): bàn cờ, lượt, đồng hồ 50 nước, số lần lặp thế cờ
+     * và kết quả đều được khôi phục từ ngăn xếp, không phải đi lại từ đầu ván.
+     *
+     * @return true nếu có nước để hoàn tác
+     */
     public boolean undoLastMove() {
-        if (history.isEmpty()) return false;
+        if (undoStack.isEmpty()) return false;
+        UndoEntry entry = undoStack.pop();
+
+        positionHistory.computeIfPresent(entry.positionKey(), (key, count) -> count > 1 ? count - 1 : null);
+        board.undoMove();
         history.remove(history.size() - 1);
-        Board fresh = new Board();
-        Color currentTurn = Color.WHITE;
-        List<Move> replay = new ArrayList<>(history);
-        history.clear();
-        this.board = fresh;
-        this.board = fresh;
-        this.turn = Color.WHITE;
-        this.halfMoveClock = 0;
-        this.positionHistory.clear();
-        for (Move move : replay) {
-            board.applyMove(move);
-            history.add(move);
-            currentTurn = currentTurn.opposite();
-        }
-        this.turn = currentTurn;
-        computeResult();
+        sanHistory.remove(sanHistory.size() - 1);
+        turn = turn.opposite();
+        if (turn == Color.BLACK) fullMoveNumber--;
+        halfMoveClock = entry.halfMoveClock();
+        result = entry.result();
+        invalidateAnalysis();
         return true;
     }
 
     private void computeResult() {
-
-        if (board.isInCheck(turn)) {
-            var moves = allLegalMoves();
-            if (moves.isEmpty()) {
+        // Một lần analyze() dùng cho cả kiểm tra chiếu lẫn tìm nước hợp lệ,
+        // và được giữ lại để validate nước đi tiếp theo trong cùng thế cờ
+        ensureAnalyzed();
+        if (!generator.hasAnyLegalMove()) {
+            if (generator.isInCheck()) {
                 result = (turn == Color.WHITE) ? GameResult.CHECKMATE_BLACK : GameResult.CHECKMATE_WHITE;
-                return;
-            }
-        } else {
-
-            if (allLegalMoves().isEmpty()) {
+            } else {
                 result = GameResult.STALEMATE;
-                return;
             }
+            return;
+        }
+        // Không đủ quân để chiếu hết: đọc từ chữ ký vật chất, không cần sinh nước
+        if (board.isInsufficientMaterial()) {
+            result = GameResult.DRAW_INSUFFICIENT_MATERIAL;
+            return;
         }
         // Check 50-move rule
         if (halfMoveClock >= 100) { // 50 moves each side = 100 half moves
@@ -215,25 +493,9 @@ public class Game {
         }
         // 2. Turn
         sb.append("|").append(turn);
-        // 3. Castling rights (check hasMoved of Kings and Rooks)
-        // Simple check: just append hasMoved status of relevant pieces
-        // White King
-        Piece wk = board.getPiece(Position.of(7, 4));
-        sb.append("|WK").append(wk != null && !wk.hasMoved() ? "1" : "0");
-        // White Rooks
-        Piece wr1 = board.getPiece(Position.of(7, 0));
-        sb.append("WR1").append(wr1 != null && !wr1.hasMoved() ? "1" : "0");
-        Piece wr2 = board.getPiece(Position.of(7, 7));
-        sb.append("WR2").append(wr2 != null && !wr2.hasMoved() ? "1" : "0");
-        // Black King
-        Piece bk = board.getPiece(Position.of(0, 4));
-        sb.append("|BK").append(bk != null && !bk.hasMoved() ? "1" : "0");
-        // Black Rooks
-        Piece br1 = board.getPiece(Position.of(0, 0));
-        sb.append("BR1").append(br1 != null && !br1.hasMoved() ? "1" : "0");
-        Piece br2 = board.getPiece(Position.of(0, 7));
-        sb.append("BR2").append(br2 != null && !br2.hasMoved() ? "1" : "0");
-        
+        // 3. Castling rights
+        sb.append("|C").append(board.getCastlingRights());
+
         // 4. En Passant target
         Position ep = board.getEnPassantTarget();
         sb.append("|EP").append(ep != null ? ep.toString() : "None");
@@ -245,12 +507,22 @@ public class Game {
         return history;
     }
 
+    public List<String> getSanHistory() {
+        return sanHistory;
+    }
+
     public void resetGame() {
         this.board = new Board();
+        this.generator = new MoveGenerator(board);
+        invalidateAnalysis();
         this.turn = Color.WHITE;
         this.result = GameResult.ONGOING;
         this.history.clear();
+        this.sanHistory.clear();
+        this.startFen = START_FEN;
+        this.undoStack.clear();
         this.halfMoveClock = 0;
+        this.fullMoveNumber = 1;
         this.positionHistory.clear();
     }
 }
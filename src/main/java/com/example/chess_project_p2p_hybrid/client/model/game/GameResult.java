@@ -7,5 +7,6 @@ public enum GameResult {
     STALEMATE, // Hòa do bế tắc – không có nước đi hợp lệ nhưng vua không bị chiếu.
     DRAW_BY_AGREEMENT, // Hòa do hai bên đồng ý (giống luật cờ vua thật, khi hai người chơi thống nhất dừng ván).
     DRAW_50_MOVES, // Hòa do quy tắc 50 nước đi.
-    DRAW_THREEFOLD_REPETITION // Hòa do lặp lại nước đi 3 lần.
+    DRAW_THREEFOLD_REPETITION, // Hòa do lặp lại nước đi 3 lần.
+    DRAW_INSUFFICIENT_MATERIAL // Hòa do không đủ quân để chiếu hết (K-K, K+B/K+N - K, Tượng cùng màu ô).
 }
@@ -0,0 +1,64 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Position;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+/**
+ * Biểu diễn nước đi nội bộ dạng int để tránh cấp phát Move/Position khi sinh nước.
+ * Bố cục bit:
+ * - bit 0..5   : ô đi (0..63, row * 8 + col)
+ * - bit 6..11  : ô đến
+ * - bit 12..14 : MoveType.ordinal()
+ * - bit 15..17 : quân phong cấp (PieceType.ordinal() + 1, 0 = không phong cấp)
+ * Giá trị 0 (ô đi == ô đến) không phải nước hợp lệ nên dùng làm NONE.
+ * Chỉ chuyển sang/ từ Move ở biên UI và mạng.
+ */
+public final class PackedMove {
+    public static final int NONE = 0;
+
+    // Số nước hợp lệ tối đa của một thế cờ là 218, làm tròn lên để đủ chỗ cho nước giả hợp lệ
+    public static final int MAX_MOVES = 256;
+
+    private static final MoveType[] TYPES = MoveType.values();
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
+    private PackedMove() {
+    }
+
+    public static int encode(int from, int to, MoveType type, PieceType promotion) {
+        int promo = promotion == null ? 0 : promotion.ordinal() + 1;
+        return from | (to << 6) | (type.ordinal() << 12) | (promo << 15);
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static MoveType type(int move) {
+        return TYPES[(move >>> 12) & 0x7];
+    }
+
+    // null nếu không phải nước phong cấp
+    public static PieceType promotion(int move) {
+        int promo = (move >>> 15) & 0x7;
+        return promo == 0 ? null : PIECE_TYPES[promo - 1];
+    }
+
+    // Chuyển từ Move (UI/mạng) sang dạng int
+    public static int fromMove(Move m) {
+        return encode(m.getFrom().index(), m.getTo().index(), m.getType(), m.getPromotionTo());
+    }
+
+    // Chuyển từ dạng int sang Move (UI/mạng)
+    public static Move toMove(int move) {
+        return new Move(Position.ofIndex(from(move)), Position.ofIndex(to(move)), type(move), promotion(move));
+    }
+
+    public static String toString(int move) {
+        return toMove(move).toString();
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Attacks;
+import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.board.MoveGenerator;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Piece;
+import com.example.chess_project_p2p_hybrid.client.model.piece.PieceType;
+
+/**
+ * Ký hiệu đại số chuẩn (SAN), ví dụ e4, Nbd7, R1e2, exd6, e8=Q, O-O, Qh5#.
+ * Khác với Move.toAlgebraicNotation(), SAN cần ngữ cảnh bàn cờ để khử nhập nhằng và thêm hậu tố chiếu.
+ */
+public final class San {
+    // Chữ cái quân theo thứ tự PieceType (Tốt không có chữ)
+    private static final String PIECE_LETTERS = "PNBRQK";
+    private static final PieceType[] PIECE_TYPES = PieceType.values();
+
+    private San() {
+    }
+
+    /**
+     * SAN đầy đủ (kèm + / #) của nước đi move trong thế cờ hiện tại của game, trước khi đi.
+     */
+    public static String toSan(Game game, int move) {
+        StringBuilder sb = new StringBuilder(8);
+        appendBase(sb, game, move);
+
+        Board after = game.getBoard().clone();
+        after.applyMove(move);
+        MoveGenerator generator = new MoveGenerator(after);
+        generator.analyze(game.getTurn().opposite());
+        if (generator.isInCheck()) sb.append(generator.hasAnyLegalMove() ? '+' : '#');
+        return sb.toString();
+    }
+
+    /**
+     * Ghi phần SAN không có hậu tố chiếu của nước move trong thế cờ hiện tại của game (trước khi đi).
+     * Khử nhập nhằng chỉ xét các quân cùng loại đang tấn công ô đến, không sinh toàn bộ nước hợp lệ.
+     */
+    static void appendBase(StringBuilder sb, Game game, int move) {
+        Board board = game.getBoard();
+        MoveType type = PackedMove.type(move);
+        if (type == MoveType.CASTLE_KINGSIDE) {
+            sb.append("O-O");
+            return;
+        }
+        if (type == MoveType.CASTLE_QUEENSIDE) {
+            sb.append("O-O-O");
+            return;
+        }
+
+        int from = PackedMove.from(move), to = PackedMove.to(move);
+        Piece piece = board.getPiece(from);
+        if (piece.getType() == PieceType.PAWN) {
+            // Tốt ăn quân luôn ghi cột xuất phát, kể cả ăn tốt qua đường và phong cấp khi ăn
+            if ((from & 7) != (to & 7)) sb.append(fileChar(from)).append('x');
+            appendSquare(sb, to);
+            PieceType promotion = PackedMove.promotion(move);
+            if (promotion != null) sb.append('=').append(PIECE_LETTERS.charAt(promotion.ordinal()));
+            return;
+        }
+
+        sb.append(PIECE_LETTERS.charAt(piece.getType().ordinal()));
+        if (piece.getType() != PieceType.KING) {
+            // Có quân cùng loại khác cũng đi được tới ô to không? Quân bị ghim thì không tính
+            boolean ambiguous = false, sameFile = false, sameRank = false;
+            long others = sameTypeAttackers(board, piece, to) & ~(1L << from);
+            while (others != 0) {
+                int otherFrom = Long.numberOfTrailingZeros(others);
+                others &= others - 1;
+                if (!game.canMoveTo(otherFrom, to)) continue;
+                ambiguous = true;
+                if ((otherFrom & 7) == (from & 7)) sameFile = true;
+                if ((otherFrom >> 3) == (from >> 3)) sameRank = true;
+            }
+            if (ambiguous) {
+                if (!sameFile) sb.append(fileChar(from));
+                else if (!sameRank) sb.append(rankChar(from));
+                else appendSquare(sb, from);
+            }
+        }
+        if (board.getPiece(to) != null) sb.append('x');
+        appendSquare(sb, to);
+    }
+
+    // Các quân cùng màu, cùng loại với piece tấn công ô to (chưa xét ghim)
+    private static long sameTypeAttackers(Board board, Piece piece, int to) {
+        long occupied = board.occupied();
+        long attacks = switch (piece.getType()) {
+            case KNIGHT -> Attacks.KNIGHT[to];
+            case BISHOP -> Attacks.bishop(to, occupied);
+            case ROOK -> Attacks.rook(to, occupied);
+            case QUEEN -> Attacks.queen(to, occupied);
+            default -> 0L;
+        };
+        return attacks & board.pieceBitboard(piece.getColor(), piece.getType());
+    }
+
+    /**
+     * Đi nước SAN san trên game: nước lấy từ danh sách nước hợp lệ nên không kiểm tra lại khi áp dụng.
+     *
+     * @return false nếu chuỗi không khớp đúng một nước hợp lệ (game giữ nguyên)
+     */
+    public static boolean play(Game game, String san) {
+        int move = parse(game, san);
+        if (move == PackedMove.NONE) return false;
+        game.applyMove(move);
+        return true;
+    }
+
+    /**
+     * Tìm nước hợp lệ của game khớp với chuỗi SAN (chấp nhận thiếu/thừa hậu tố +, #, !, ?
+     * và phong cấp không có dấu '=').
+     *
+     * @return PackedMove hoặc PackedMove.NONE nếu không khớp đúng một nước
+     */
+    public static int parse(Game game, String san) {
+        int[] legal = new int[PackedMove.MAX_MOVES];
+        int count = game.generateLegalMoves(legal);
+        return parse(game.getBoard(), legal, count, san);
+    }
+
+    static int parse(Board board, int[] legal, int count, String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) end--;
+        if (end < 2) return PackedMove.NONE;
+
+        if (san.startsWith("O-O-O") || san.startsWith("0-0-0")) return findType(legal, count, MoveType.CASTLE_QUEENSIDE);
+        if (san.startsWith("O-O") || san.startsWith("0-0")) return findType(legal, count, MoveType.CASTLE_KINGSIDE);
+
+        int start = 0;
+        PieceType type = PieceType.PAWN;
+        int letter = "NBRQK".indexOf(san.charAt(0));
+        if (letter >= 0) {
+            type = PIECE_TYPES[letter + 1];
+            start = 1;
+        }
+
+        PieceType promotion = null;
+        int promo = PIECE_LETTERS.indexOf(san.charAt(end - 1));
+        if (type == PieceType.PAWN && promo > 0) {
+            promotion = PIECE_TYPES[promo];
+            end--;
+            if (end > 0 && san.charAt(end - 1) == '=') end--;
+        }
+        if (end - start < 2) return PackedMove.NONE;
+
+        int toFile = san.charAt(end - 2) - 'a', toRank = san.charAt(end - 1) - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) return PackedMove.NONE;
+        int to = (7 - toRank) * 8 + toFile;
+
+        // Phần khử nhập nhằng giữa chữ quân và ô đích (bỏ qua 'x' và '-')
+        int fromFile = -1, fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char ch = san.charAt(i);
+            if (ch >= 'a' && ch <= 'h') fromFile = ch - 'a';
+            else if (ch >= '1' && ch <= '8') fromRank = ch - '1';
+            else if (ch != 'x' && ch != '-') return PackedMove.NONE;
+        }
+
+        int found = PackedMove.NONE;
+        for (int i = 0; i < count; i++) {
+            int m = legal[i];
+            int from = PackedMove.from(m);
+            if (PackedMove.to(m) != to || board.getPiece(from).getType() != type) continue;
+            if (PackedMove.promotion(m) != promotion) continue;
+            if (fromFile >= 0 && (from & 7) != fromFile) continue;
+            if (fromRank >= 0 && 7 - (from >> 3) != fromRank) continue;
+            if (found != PackedMove.NONE) return PackedMove.NONE;
+            found = m;
+        }
+        return found;
+    }
+
+    private static int findType(int[] legal, int count, MoveType type) {
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.type(legal[i]) == type) return legal[i];
+        }
+        return PackedMove.NONE;
+    }
+
+    private static void appendSquare(StringBuilder sb, int sq) {
+        sb.append(fileChar(sq)).append(rankChar(sq));
+    }
+
+    private static char fileChar(int sq) {
+        return (char) ('a' + (sq & 7));
+    }
+
+    private static char rankChar(int sq) {
+        return (char) ('8' - (sq >> 3));
+    }
+}
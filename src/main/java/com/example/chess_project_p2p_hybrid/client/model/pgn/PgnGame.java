@@ -0,0 +1,84 @@
+package com.example.chess_project_p2p_hybrid.client.model.pgn;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.San;
+
+import java.util.Map;
+
+/**
+ * Một ván đọc từ PGN: các tag và phần movetext chưa phân tích.
+ * Việc đi lại các nước (replay) tách riêng để có thể chạy song song trên nhiều ván.
+ *
+ * @param tags     tag theo thứ tự xuất hiện (Event, Site, White, FEN...)
+ * @param movetext phần nước đi, gồm cả số nước, chú thích và kết quả
+ */
+public record PgnGame(Map<String, String> tags, String movetext) {
+
+    /**
+     * Đi lại toàn bộ mạch chính của ván (bỏ qua chú thích, biến và NAG).
+     *
+     * @return Game ở thế cờ cuối ván
+     * @throws IllegalArgumentException nếu có nước SAN không hợp lệ hoặc FEN lỗi
+     */
+    public Game replay() {
+        String fen = tags.get("FEN");
+        Game game = fen != null ? Game.fromFen(fen) : new Game();
+
+        String text = movetext;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+            } else if (ch == '{') {
+                // Chú thích {…}
+                int close = text.indexOf('}', i);
+                i = close < 0 ? n : close + 1;
+            } else if (ch == ';') {
+                // Chú thích đến hết dòng
+                int eol = text.indexOf('\n', i);
+                i = eol < 0 ? n : eol + 1;
+            } else if (ch == '(') {
+                // Biến phụ, có thể lồng nhau
+                int depth = 0;
+                for (; i < n; i++) {
+                    char c = text.charAt(i);
+                    if (c == '{') {
+                        int close = text.indexOf('}', i);
+                        i = close < 0 ? n - 1 : close;
+                    } else if (c == '(') {
+                        depth++;
+                    } else if (c == ')' && --depth == 0) {
+                        i++;
+                        break;
+                    }
+                }
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(text.charAt(i)) && "{;(".indexOf(text.charAt(i)) < 0) i++;
+                String token = text.substring(start, i);
+                if (isResult(token)) break;
+                playToken(game, token);
+            }
+        }
+        return game;
+    }
+
+    private static void playToken(Game game, String token) {
+        if (token.charAt(0) == '$') return; // NAG
+        // Bỏ số nước dính liền ("12.", "12...", "12.e4")
+        int s = 0;
+        while (s < token.length() && (Character.isDigit(token.charAt(s)) || token.charAt(s) == '.')) s++;
+        if (s == token.length()) return;
+        String san = s == 0 ? token : token.substring(s);
+
+        if (!San.play(game, san)) {
+            throw new IllegalArgumentException("Illegal SAN '" + san + "' at ply " + (game.getHistory().size() + 1));
+        }
+    }
+
+    private static boolean isResult(String token) {
+        return token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*");
+    }
+}
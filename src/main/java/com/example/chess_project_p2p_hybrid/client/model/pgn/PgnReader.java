@@ -0,0 +1,77 @@
+package com.example.chess_project_p2p_hybrid.client.model.pgn;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Đọc PGN tuần tự từng ván một, chỉ giữ ván đang đọc trong bộ nhớ
+ * nên dùng được với file nhiều GB.
+ */
+public class PgnReader implements Closeable {
+    private final BufferedReader in;
+    // Dòng tag của ván kế tiếp đã đọc lố (khi giữa hai ván không có dòng trống)
+    private String pending;
+
+    public PgnReader(Reader source) {
+        this.in = source instanceof BufferedReader br ? br : new BufferedReader(source, 1 << 16);
+    }
+
+    /**
+     * Đọc ván tiếp theo.
+     *
+     * @return ván PGN, hoặc null khi hết dữ liệu
+     */
+    public PgnGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        StringBuilder moves = new StringBuilder();
+
+        String line = pending;
+        pending = null;
+        if (line == null) line = in.readLine();
+        for (; line != null; line = in.readLine()) {
+            line = line.strip();
+            if (line.isEmpty()) {
+                if (moves.length() > 0) break;
+                continue;
+            }
+            char first = line.charAt(0);
+            if (first == '[') {
+                if (moves.length() > 0) {
+                    pending = line;
+                    break;
+                }
+                parseTag(line, tags);
+            } else if (first != '%') { // dòng bắt đầu bằng '%' là escape, bỏ qua
+                moves.append(line).append('\n');
+            }
+        }
+
+        if (tags.isEmpty() && moves.length() == 0) return null;
+        return new PgnGame(tags, moves.toString());
+    }
+
+    // [Name "Value"], trong Value có thể có \" và \\
+    private static void parseTag(String line, Map<String, String> tags) {
+        int space = line.indexOf(' ');
+        int open = line.indexOf('"');
+        int close = line.lastIndexOf('"');
+        if (space < 0 || open < 0 || close <= open) return;
+
+        StringBuilder value = new StringBuilder(close - open);
+        for (int i = open + 1; i < close; i++) {
+            char ch = line.charAt(i);
+            if (ch == '\\' && i + 1 < close) ch = line.charAt(++i);
+            value.append(ch);
+        }
+        tags.put(line.substring(1, space), value.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.chess_project_p2p_hybrid.client.model.pgn;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Đi lại hàng loạt ván từ file PGN lớn bằng fork/join.
+ * Luồng gọi đọc file tuần tự theo lô; trong khi lô trước đang được replay song song thì lô sau được đọc,
+ * nên bộ nhớ chỉ giữ tối đa hai lô.
+ */
+public final class PgnReplay {
+    private static final int BATCH_SIZE = 1024;
+    // Dưới ngưỡng này một task tự replay, không chia nhỏ thêm
+    private static final int SPLIT_THRESHOLD = 32;
+
+    /**
+     * Thống kê sau khi replay.
+     *
+     * @param games    số ván replay thành công
+     * @param plies    tổng số nước đã đi
+     * @param failures số ván có nước/FEN không hợp lệ
+     */
+    public record Summary(long games, long plies, long failures) {
+    }
+
+    private PgnReplay() {
+    }
+
+    public static Summary replay(Path pgn, Consumer<Game> sink) throws IOException {
+        return replay(Files.newBufferedReader(pgn, StandardCharsets.UTF_8), sink, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param source nguồn PGN (sẽ được đóng khi xong)
+     * @param sink   nhận từng Game đã replay (có thể null); được gọi từ nhiều luồng cùng lúc
+     * @param pool   pool fork/join để replay
+     */
+    public static Summary replay(Reader source, Consumer<Game> sink, ForkJoinPool pool) throws IOException {
+        Counters counters = new Counters();
+        try (PgnReader reader = new PgnReader(source)) {
+            ForkJoinTask<Void> running = null;
+            List<PgnGame> batch = new ArrayList<>(BATCH_SIZE);
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                batch.add(game);
+                if (batch.size() == BATCH_SIZE) {
+                    if (running != null) running.join();
+                    running = pool.submit(new ReplayTask(batch, 0, batch.size(), sink, counters));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (running != null) running.join();
+            if (!batch.isEmpty()) pool.invoke(new ReplayTask(batch, 0, batch.size(), sink, counters));
+        }
+        return new Summary(counters.games.sum(), counters.plies.sum(), counters.failures.sum());
+    }
+
+    private static final class Counters {
+        final LongAdder games = new LongAdder();
+        final LongAdder plies = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+
+    // Chia đôi dải [lo, hi) của lô cho tới khi đủ nhỏ. Task chỉ sống trong pool, không bao giờ được serialize
+    private static final class ReplayTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<PgnGame> batch;
+        private final int lo, hi;
+        private final transient Consumer<Game> sink;
+        private final transient Counters counters;
+
+        ReplayTask(List<PgnGame> batch, int lo, int hi, Consumer<Game> sink, Counters counters) {
+            this.batch = batch;
+            this.lo = lo;
+            this.hi = hi;
+            this.sink = sink;
+            this.counters = counters;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= SPLIT_THRESHOLD) {
+                for (int i = lo; i < hi; i++) {
+                    try {
+                        Game game = batch.get(i).replay();
+                        counters.games.increment();
+                        counters.plies.add(game.getHistory().size());
+                        if (sink != null) sink.accept(game);
+                    } catch (IllegalArgumentException e) {
+                        counters.failures.increment();
+                    }
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ReplayTask(batch, lo, mid, sink, counters),
+                    new ReplayTask(batch, mid, hi, sink, counters));
+        }
+    }
+}
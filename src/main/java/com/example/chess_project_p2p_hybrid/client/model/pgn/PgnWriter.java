@@ -0,0 +1,96 @@
+package com.example.chess_project_p2p_hybrid.client.model.pgn;
+
+import com.example.chess_project_p2p_hybrid.client.model.game.Game;
+import com.example.chess_project_p2p_hybrid.client.model.game.GameResult;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Xuất ván cờ ra PGN: đủ 7 tag bắt buộc, movetext SAN, dòng không quá 80 ký tự.
+ */
+public final class PgnWriter {
+    private static final int MAX_LINE = 79;
+
+    private PgnWriter() {
+    }
+
+    public static String write(Game game, Map<String, String> tags) {
+        StringBuilder sb = new StringBuilder(512);
+        try {
+            write(sb, game, tags);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder không ném IOException
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ghi ván cờ ra out.
+     *
+     * @param tags tag bổ sung / ghi đè (có thể null); Result luôn lấy theo kết quả ván
+     */
+    public static void write(Appendable out, Game game, Map<String, String> tags) throws IOException {
+        String result = resultToken(game.getResult());
+
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("Event", "?");
+        all.put("Site", "?");
+        all.put("Date", "????.??.??");
+        all.put("Round", "?");
+        all.put("White", "?");
+        all.put("Black", "?");
+        if (tags != null) all.putAll(tags);
+        all.put("Result", result);
+        if (!Game.START_FEN.equals(game.getStartFen())) {
+            all.put("SetUp", "1");
+            all.put("FEN", game.getStartFen());
+        }
+        for (Map.Entry<String, String> tag : all.entrySet()) {
+            out.append('[').append(tag.getKey()).append(" \"")
+                    .append(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\"]\n");
+        }
+        out.append('\n');
+
+        // Số nước và bên đi đầu lấy từ thế cờ bắt đầu
+        Game start = Game.fromFen(game.getStartFen());
+        int moveNumber = start.getFullMoveNumber();
+        boolean white = start.getTurn() == Color.WHITE;
+
+        StringBuilder line = new StringBuilder(MAX_LINE + 16);
+        List<String> sans = game.getSanHistory();
+        for (int i = 0; i < sans.size(); i++) {
+            if (white) appendToken(out, line, moveNumber + ".");
+            else if (i == 0) appendToken(out, line, moveNumber + "...");
+            appendToken(out, line, sans.get(i));
+            if (!white) moveNumber++;
+            white = !white;
+        }
+        appendToken(out, line, result);
+        out.append(line).append("\n\n");
+    }
+
+    // Thêm token vào dòng hiện tại, xuống dòng nếu vượt quá độ dài cho phép
+    private static void appendToken(Appendable out, StringBuilder line, String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > MAX_LINE) {
+            out.append(line).append('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) line.append(' ');
+        line.append(token);
+    }
+
+    private static String resultToken(GameResult result) {
+        return switch (result) {
+            case ONGOING -> "*";
+            case CHECKMATE_WHITE -> "1-0";
+            case CHECKMATE_BLACK -> "0-1";
+            default -> "1/2-1/2";
+        };
+    }
+}
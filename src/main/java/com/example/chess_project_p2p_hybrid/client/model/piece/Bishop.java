@@ -1,11 +1,7 @@
 package com.example.chess_project_p2p_hybrid.client.model.piece;
 
+import com.example.chess_project_p2p_hybrid.client.model.board.Attacks;
 import com.example.chess_project_p2p_hybrid.client.model.board.BoardView;
-import com.example.chess_project_p2p_hybrid.client.model.board.Position;
-import com.example.chess_project_p2p_hybrid.client.model.game.Move;
-
-import java.util.ArrayList;
-import java.util.List;
 
 
 /**
@@ -13,20 +9,7 @@ import java.util.List;
  * */
 public class Bishop extends Piece {
 
-    /**
-     * 4 hướng di chuyển chéo của Tượng.
-     *     (-1, -1) → Lên-trái
-     *     (-1,  1) → Lên-phải
-     *     ( 1, -1) → Xuống-trái
-     *     ( 1,  1) → Xuống-phải
-     * Mỗi phần tử là một vector (deltaRow, deltaCol).
-     */
-    private static final int[][] DIRS = {
-            {-1, -1}, {-1, 1},
-             {1, -1}, {1, 1}
-    };
-
-    public Bishop(Color color) {
+    Bishop(Color color) {
         super(color, PieceType.BISHOP);
     }
 
@@ -38,28 +21,15 @@ public class Bishop extends Piece {
      *     Gặp quân đồng minh → dừng lại.
      *     Gặp quân địch → thêm nước ăn, rồi dừng lại.
      *
-     * @param from vị trí hiện tại của Tượng
-     * @param b    trạng thái bàn cờ
-     * @return danh sách các nước đi hợp lệ tạm thời
+     * @param from  chỉ số ô hiện tại của Tượng
+     * @param b     trạng thái bàn cờ
+     * @param moves buffer nước đi
+     * @param count số nước đã có trong buffer
+     * @return số nước trong buffer sau khi thêm
      */
     @Override
-    public List<Move> generateMoves(Position from, BoardView b) {
-        List<Move> moves = new ArrayList<>();
-        for (int[] dir : DIRS) {
-            int r = from.row() + dir[0], c = from.col() + dir[1];
-            while (true) {
-                Position to = Position.of(r, c);
-                if (!to.isValid()) break;
-                if (b.isEmpty(to)) {
-                    moves.add(Move.normal(from, to, null));
-                } else {
-                    if (b.isEnemyPiece(to, color)) moves.add(Move.capture(from, to, null));
-                    break;
-                }
-                r += dir[0];
-                c += dir[1];
-            }
-        }
-        return moves;
+    public int generateMoves(int from, BoardView b, int[] moves, int count) {
+        long targets = Attacks.bishop(from, b.occupied()) & ~b.colorBitboard(color);
+        return generateTargets(from, targets, b, moves, count);
     }
 }
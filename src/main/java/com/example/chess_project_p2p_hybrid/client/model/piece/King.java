@@ -1,11 +1,8 @@
 package com.example.chess_project_p2p_hybrid.client.model.piece;
 
 import com.example.chess_project_p2p_hybrid.client.model.board.BoardView;
-import com.example.chess_project_p2p_hybrid.client.model.board.Position;
-import com.example.chess_project_p2p_hybrid.client.model.game.Move;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
 
 public class King extends Piece {
 
@@ -18,7 +15,7 @@ public class King extends Piece {
             {1, -1}, {1, 0}, {1, 1}
     };
 
-    public King(Color color) {
+    King(Color color) {
         super(color, PieceType.KING);
     }
 
@@ -26,38 +23,29 @@ public class King extends Piece {
     /**
      * Sinh ra tất cả các nước đi khả dĩ (pseudo-legal) của quân vua.
      * Bao gồm cả di chuyển bình thường, ăn quân và nhập thành.
-     * Vua chưa từng di chuyển.
+     * Còn quyền nhập thành bên tương ứng (vua và xe chưa di chuyển).
      * Vua không đang bị chiếu.
-     * Quân xe liên quan chưa di chuyển.
      * Không có quân nào đứng giữa vua và xe.
      * Các ô vua đi qua không bị chiếu.
      *
-     * @param from vị trí hiện tại của vua
-     * @param b    trạng thái bàn cờ
-     * @return danh sách các nước đi hợp lệ tạm thời (sẽ được lọc check sau)
+     * @param from  chỉ số ô hiện tại của vua
+     * @param b     trạng thái bàn cờ
+     * @param moves buffer nước đi
+     * @param count số nước đã có trong buffer
+     * @return số nước trong buffer sau khi thêm (sẽ được lọc check sau)
      */
     @Override
-    public List<Move> generateMoves(Position from, BoardView b) {
-        List<Move> moves = new ArrayList<>();
-        for (int[] d : DELTAS) {
-            Position to = Position.of(from.row() + d[0], from.col() + d[1]);
-            if (!to.isValid()) continue;
-            if (b.isEmpty(to)) moves.add(Move.normal(from, to, null));
-            else if (b.isEnemyPiece(to, color)) moves.add(Move.capture(from, to, null));
-        }
+    public int generateMoves(int from, BoardView b, int[] moves, int count) {
+        count = generateStepping(from, DELTAS, b, moves, count);
 
-        // Nhập thành
-        if (!hasMoved() && !b.isInCheck(color)) {
-            // King-side
-            if (b.canCastleKingSide(color)) {
-                moves.add(Move.castleKingSide(from, Position.of(from.row(), from.col() + 2)));
-            }
-            // Queen-side
-            if (b.canCastleQueenSide(color)) {
-                moves.add(Move.castleQueenSide(from, Position.of(from.row(), from.col() - 2)));
-            }
+        // Nhập thành (quyền nhập thành và ô bị chiếu do Board kiểm tra)
+        if (b.canCastleKingSide(color)) {
+            moves[count++] = PackedMove.encode(from, from + 2, MoveType.CASTLE_KINGSIDE, null);
+        }
+        if (b.canCastleQueenSide(color)) {
+            moves[count++] = PackedMove.encode(from, from - 2, MoveType.CASTLE_QUEENSIDE, null);
         }
 
-        return moves;
+        return count;
     }
 }
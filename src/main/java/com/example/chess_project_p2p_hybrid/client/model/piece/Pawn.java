@@ -1,17 +1,14 @@
 package com.example.chess_project_p2p_hybrid.client.model.piece;
 
 import com.example.chess_project_p2p_hybrid.client.model.board.BoardView;
-import com.example.chess_project_p2p_hybrid.client.model.board.Position;
-import com.example.chess_project_p2p_hybrid.client.model.game.Move;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
 
 /**
  * Lớp đại diện cho quân Tốt (Pawn) trong bàn cờ vua.
  */
 public class Pawn extends Piece {
-    public Pawn(Color color) {
+    Pawn(Color color) {
         super(color, PieceType.PAWN);
     }
 
@@ -25,13 +22,15 @@ public class Pawn extends Piece {
      *   Có thể bắt chéo (en passant) trong trường hợp đặc biệt.
      *
      *
-     * @param from Vị trí hiện tại của quân Tốt.
-     * @param b    Bàn cờ (BoardView) — chứa thông tin quân cờ, lượt chơi, en passant, v.v.
-     * @return Danh sách các nước đi hợp lệ (List<Move>).
+     * @param from  Chỉ số ô hiện tại của quân Tốt.
+     * @param b     Bàn cờ (BoardView) — chứa thông tin quân cờ, lượt chơi, en passant, v.v.
+     * @param moves Buffer nước đi (PackedMove).
+     * @param count Số nước đã có trong buffer.
+     * @return Số nước trong buffer sau khi thêm.
      */
     @Override
-    public List<Move> generateMoves(Position from, BoardView b) {
-        List<Move> moves = new ArrayList<>();
+    public int generateMoves(int from, BoardView b, int[] moves, int count) {
+        int row = from >> 3, col = from & 7;
 
         // Hướng di chuyển: Trắng đi lên (-1), Đen đi xuống (+1)
         int dir = (color == Color.WHITE) ? -1 : 1;
@@ -42,52 +41,57 @@ public class Pawn extends Piece {
         // Hàng phong cấp: hàng 0 (Trắng) hoặc hàng 7 (Đen)
         int promotionRow = (color == Color.WHITE) ? 0 : 7;
 
+        int nextRow = row + dir;
+        if (nextRow < 0 || nextRow >= 8) return count;
+
         // Di chuyển thẳng một ô phía trước
-        Position one = Position.of(from.row() + dir, from.col());
-        if (one.isValid() && b.isEmpty(one)) {
-            boolean promote = one.row() == promotionRow;// đến hàng cuối → phong cấp
-            if (promote) {
-                // sinh đủ 4 lựa chọn phong cấp
-                moves.add(Move.normal(from, one, PieceType.QUEEN));
-                moves.add(Move.normal(from, one, PieceType.ROOK));
-                moves.add(Move.normal(from, one, PieceType.BISHOP));
-                moves.add(Move.normal(from, one, PieceType.KNIGHT));
+        int one = nextRow * 8 + col;
+        if (b.isEmpty(one)) {
+            if (nextRow == promotionRow) {
+                // đến hàng cuối → sinh đủ 4 lựa chọn phong cấp
+                count = addPromotions(from, one, moves, count);
             } else {
-                moves.add(Move.normal(from, one, null));
+                moves[count++] = PackedMove.encode(from, one, MoveType.NORMAL, null);
             }
             // Hai ô từ vị trí xuất phát
-            Position two = Position.of(from.row() + 2 * dir, from.col());
-            if (from.row() == startRow && two.isValid() && b.isEmpty(two)) {
-                moves.add(Move.doublePawn(from, two));
+            int two = one + dir * 8;
+            if (row == startRow && b.isEmpty(two)) {
+                moves[count++] = PackedMove.encode(from, two, MoveType.DOUBLE_PAWN, null);
             }
         }
 
         // Ăn chéo
-        int[] dc = {-1, 1};
-        for (int d : dc) {
-            Position cap = Position.of(from.row() + dir, from.col() + d);
-            if (cap.isValid() && b.isEnemyPiece(cap, color)) {
-                boolean promote = cap.row() == promotionRow;
-                if (promote) {
-                    moves.add(Move.capture(from, cap, PieceType.QUEEN));
-                    moves.add(Move.capture(from, cap, PieceType.ROOK));
-                    moves.add(Move.capture(from, cap, PieceType.BISHOP));
-                    moves.add(Move.capture(from, cap, PieceType.KNIGHT));
+        for (int d = -1; d <= 1; d += 2) {
+            int c = col + d;
+            if (c < 0 || c >= 8) continue;
+            int cap = nextRow * 8 + c;
+            if (b.isEnemyPiece(cap, color)) {
+                if (nextRow == promotionRow) {
+                    count = addPromotions(from, cap, moves, count);
                 } else {
-                    moves.add(Move.capture(from, cap, null));
+                    moves[count++] = PackedMove.encode(from, cap, MoveType.CAPTURE, null);
                 }
             }
         }
 
         // Bắt chéo
-        Position epTarget = b.getEnPassantTarget();
-        if (epTarget != null) {
+        int epTarget = b.getEnPassantSquare();
+        if (epTarget >= 0) {
             // Kiểm tra xem quân tốt hiện tại có thể bắt chéo tại vị trí này không
-            if (epTarget.row() == from.row() + dir && Math.abs(epTarget.col() - from.col()) == 1) {
-                moves.add(Move.enPassant(from, epTarget));
+            if ((epTarget >> 3) == nextRow && Math.abs((epTarget & 7) - col) == 1) {
+                moves[count++] = PackedMove.encode(from, epTarget, MoveType.EN_PASSANT, null);
             }
         }
 
-        return moves;
+        return count;
+    }
+
+    // Thứ tự phong cấp: Hậu, Xe, Tượng, Mã
+    private static int addPromotions(int from, int to, int[] moves, int count) {
+        moves[count++] = PackedMove.encode(from, to, MoveType.PROMOTION, PieceType.QUEEN);
+        moves[count++] = PackedMove.encode(from, to, MoveType.PROMOTION, PieceType.ROOK);
+        moves[count++] = PackedMove.encode(from, to, MoveType.PROMOTION, PieceType.BISHOP);
+        moves[count++] = PackedMove.encode(from, to, MoveType.PROMOTION, PieceType.KNIGHT);
+        return count;
     }
 }
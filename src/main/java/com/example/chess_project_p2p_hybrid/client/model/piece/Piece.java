@@ -1,21 +1,43 @@
 package com.example.chess_project_p2p_hybrid.client.model.piece;
 
 import com.example.chess_project_p2p_hybrid.client.model.board.BoardView;
-import com.example.chess_project_p2p_hybrid.client.model.board.Position;
-import com.example.chess_project_p2p_hybrid.client.model.game.Move;
+import com.example.chess_project_p2p_hybrid.client.model.game.MoveType;
+import com.example.chess_project_p2p_hybrid.client.model.game.PackedMove;
 
-import java.util.List;
+/**
+ * Quân cờ bất biến, dùng chung (flyweight): cả bàn cờ chỉ có 12 đối tượng, lấy qua {@link #of(Color, PieceType)}.
+ * Trạng thái thay đổi theo ván (quyền nhập thành, en passant) nằm trong Board.
+ */
+public abstract class Piece {
+    // PIECES[color][type]
+    private static final Piece[][] PIECES = new Piece[2][6];
+
+    static {
+        for (Color c : Color.values()) {
+            PIECES[c.ordinal()][PieceType.PAWN.ordinal()] = new Pawn(c);
+            PIECES[c.ordinal()][PieceType.KNIGHT.ordinal()] = new Knight(c);
+            PIECES[c.ordinal()][PieceType.BISHOP.ordinal()] = new Bishop(c);
+            PIECES[c.ordinal()][PieceType.ROOK.ordinal()] = new Rook(c);
+            PIECES[c.ordinal()][PieceType.QUEEN.ordinal()] = new Queen(c);
+            PIECES[c.ordinal()][PieceType.KING.ordinal()] = new King(c);
+        }
+    }
 
-public abstract class Piece implements Cloneable {
     protected final Color color;
     protected final PieceType type;
-    protected boolean hasMoved = false;
 
-    public Piece(Color color, PieceType type) {
+    Piece(Color color, PieceType type) {
         this.color = color;
         this.type = type;
     }
 
+    /**
+     * Lấy quân dùng chung theo màu và loại.
+     */
+    public static Piece of(Color color, PieceType type) {
+        return PIECES[color.ordinal()][type.ordinal()];
+    }
+
     public Color getColor() {
         return color;
     }
@@ -24,28 +46,44 @@ public abstract class Piece implements Cloneable {
         return type;
     }
 
-    public boolean hasMoved() {
-        return hasMoved;
-    }
+    /**
+     * Sinh các pseudo-legal moves (cần lọc check sau) dạng PackedMove.
+     *
+     * @param from       chỉ số ô hiện tại (0..63)
+     * @param boardState tham chiếu để đọc ô
+     * @param moves      buffer nước đi dùng lại giữa các lần gọi
+     * @param count      số nước đã có trong buffer
+     * @return số nước trong buffer sau khi thêm
+     */
+    public abstract int generateMoves(int from, BoardView boardState, int[] moves, int count);
 
-    public void setMoved(boolean moved) {
-        this.hasMoved = moved;
+    /**
+     * Sinh nước từ bitboard ô đích (đã loại ô có quân mình): ô trống là NORMAL, ô có quân địch là CAPTURE.
+     * Quân trượt lấy bitboard này từ bảng magic trong Attacks.
+     */
+    protected int generateTargets(int from, long targets, BoardView b, int[] moves, int count) {
+        long enemies = b.colorBitboard(color.opposite());
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            MoveType type = (enemies & (1L << to)) != 0 ? MoveType.CAPTURE : MoveType.NORMAL;
+            moves[count++] = PackedMove.encode(from, to, type, null);
+        }
+        return count;
     }
 
     /**
-     * Sinh các pseudo-legal moves (cần lọc check sau)
-     *
-     * @param from       vị trí hiện tại
-     * @param boardState tham chiếu để đọc ô
+     * Sinh nước cho quân đi một bước (Mã, Vua).
      */
-    public abstract List<Move> generateMoves(Position from, BoardView boardState);
-
-    @Override
-    public Piece clone() {
-        try {
-            return (Piece) super.clone();
-        } catch (CloneNotSupportedException e) {
-            throw new RuntimeException(e);
+    protected int generateStepping(int from, int[][] deltas, BoardView b, int[] moves, int count) {
+        int row = from >> 3, col = from & 7;
+        for (int[] d : deltas) {
+            int r = row + d[0], c = col + d[1];
+            if (r < 0 || r >= 8 || c < 0 || c >= 8) continue;
+            int to = r * 8 + c;
+            if (b.isEmpty(to)) moves[count++] = PackedMove.encode(from, to, MoveType.NORMAL, null);
+            else if (b.isEnemyPiece(to, color)) moves[count++] = PackedMove.encode(from, to, MoveType.CAPTURE, null);
         }
+        return count;
     }
 }
@@ -142,7 +142,11 @@ public class GameSyncManager {
         // Dùng applyRemoteMove để bypass local validation nếu cần
         try {
             Color turnBefore = game.getTurn();
-            game.applyRemoteMove(move);
+            if (!game.applyRemoteMove(move)) {
+                // Nước đi không khớp với thế cờ cục bộ: hai bên đã lệch nhau, cần đồng bộ lại bằng snapshot
+                updateStatus("Nước đi của " + fromPlayer + " không khớp bàn cờ, đang đồng bộ lại...");
+                return false;
+            }
             Color turnAfter = game.getTurn();
             moveHistory.add(move);
             System.out.println("[GameSyncManager] ✓ Successfully applied remote move");
@@ -173,6 +177,41 @@ public class GameSyncManager {
         }
     }
     
+    /**
+     * Hoàn tác nước đi cuối (O(1)) và giữ move history của sync manager khớp với Game.
+     */
+    public boolean undoLastMove() {
+        if (!game.undoLastMove()) return false;
+        if (!moveHistory.isEmpty()) {
+            moveHistory.remove(moveHistory.size() - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Snapshot gọn của thế cờ hiện tại (FEN) để gửi cho đối thủ khi cần đồng bộ lại.
+     */
+    public String snapshot() {
+        return game.toFen();
+    }
+
+    /**
+     * Thay thế thế cờ cục bộ bằng snapshot FEN nhận từ đối thủ.
+     *
+     * @return false nếu FEN không hợp lệ (thế cờ giữ nguyên)
+     */
+    public boolean loadSnapshot(String fen) {
+        try {
+            game.loadFen(fen);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[GameSyncManager] ✗ Invalid snapshot: " + e.getMessage());
+            return false;
+        }
+        moveHistory.clear();
+        updateStatus("Đã đồng bộ lại thế cờ với đối thủ");
+        return true;
+    }
+
     /**
      * Kiểm tra xem có phải lượt của player không.
      */
@@ -3,6 +3,7 @@ package com.example.chess_project_p2p_hybrid.server;
 import com.example.chess_project_p2p_hybrid.client.connection.Message;
 
 import java.io.IOException;
+import java.net.SocketException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.List;
@@ -10,9 +11,26 @@ import java.util.List;
 public class ChessServer {
     private static final int PORT = 9999;
     private final RoomManager roomManager;
+    // Rendezvous UDP cho đục lỗ NAT, cùng số port với TCP; null nếu không mở được port
+    private final RendezvousService rendezvous;
 
     public ChessServer() {
-        this.roomManager = new RoomManager();
+        this.rendezvous = openRendezvous();
+        this.roomManager = new RoomManager(rendezvous);
+    }
+
+    private static RendezvousService openRendezvous() {
+        try {
+            RendezvousService service = new RendezvousService(PORT);
+            Thread thread = new Thread(service, "rendezvous");
+            thread.setDaemon(true);
+            thread.start();
+            System.out.println("UDP rendezvous running on port " + service.getPort());
+            return service;
+        } catch (SocketException e) {
+            System.err.println("UDP rendezvous disabled: " + e.getMessage());
+            return null;
+        }
     }
 
     public void start() {
@@ -33,6 +51,10 @@ public class ChessServer {
         return roomManager;
     }
 
+    public RendezvousService getRendezvous() {
+        return rendezvous;
+    }
+
     // Relay message cho các thành viên khác trong phòng
     public void relayMessage(ClientHandler sender, Message msg) {
         String roomId = sender.getRoomId();
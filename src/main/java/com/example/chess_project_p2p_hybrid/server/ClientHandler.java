@@ -1,26 +1,41 @@
 package com.example.chess_project_p2p_hybrid.server;
 
+import com.example.chess_project_p2p_hybrid.client.connection.FrameReader;
 import com.example.chess_project_p2p_hybrid.client.connection.Message;
 import com.example.chess_project_p2p_hybrid.client.connection.MessageType;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
 
 public class ClientHandler implements Runnable {
     private final Socket socket;
     private final ChessServer server;
     private PrintWriter out;
-    private BufferedReader in;
+    private InputStream in;
     
     private String playerName;
     private int p2pPort; // Port mà client này đang lắng nghe P2P
+    private List<String> p2pCandidates = List.of(); // Địa chỉ LAN client tự báo (ngoài IP server nhìn thấy)
     private String roomId;
+    private String resumeToken; // Cấp khi đăng nhập, dùng để khôi phục phiên sau khi rớt mạng
+
+    // Rớt mạng khi đang trong phòng: vẫn giữ chỗ trong phòng, tin relay tới được đệm lại cho phiên khôi phục
+    private static final int MAX_MISSED_MESSAGES = 512;
+    private boolean detached;
+    private ClientHandler resumedBy; // Kết nối mới đã nhận phiên này
+    private final Deque<String> missed = new ArrayDeque<>(); // Frame đã mã hóa, không giữ Message của vòng đọc
     
     private static final Gson GSON = new Gson();
 
@@ -32,16 +47,28 @@ public class ClientHandler implements Runnable {
     @Override
     public void run() {
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // UTF-8 tường minh, khớp với client (tránh phụ thuộc charset mặc định của máy chủ)
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            in = socket.getInputStream();
             
-            String line;
-            while ((line = in.readLine()) != null) {
-                try {
-                    Message msg = Message.fromJson(line);
-                    handleMessage(msg);
-                } catch (Exception e) {
-                    System.err.println("Invalid message format: " + line);
+            FrameReader reader = new FrameReader();
+            while (reader.read(in) >= 0) {
+                while (true) {
+                    Message msg;
+                    try {
+                        msg = reader.next();
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid message format: " + e.getMessage());
+                        continue;
+                    }
+                    if (msg == null) break;
+                    try {
+                        handleMessage(msg);
+                    } catch (Exception e) {
+                        System.err.println("Invalid message format: " + msg);
+                    }
+                    // Relay đã mã hóa xong, không nơi nào giữ msg: trả về bể cho frame sau
+                    msg.recycle();
                 }
             }
         } catch (IOException e) {
@@ -55,7 +82,7 @@ public class ClientHandler implements Runnable {
         switch (msg.getType()) {
             case LOGIN -> handleLogin(msg);
             case SYSTEM -> handleSystem(msg);
-            case MOVE, CHAT -> server.relayMessage(this, msg); // Relay nếu client gửi lên
+            case MOVE, CHAT, ACK, PING, PONG -> server.relayMessage(this, msg); // Relay nếu client gửi lên
             default -> {}
         }
     }
@@ -67,12 +94,27 @@ public class ClientHandler implements Runnable {
             if (json.has("p2p_port")) {
                 this.p2pPort = json.get("p2p_port").getAsInt();
             }
+            if (json.has("p2p_candidates")) {
+                List<String> candidates = new ArrayList<>();
+                json.getAsJsonArray("p2p_candidates").forEach(e -> candidates.add(e.getAsString()));
+                this.p2pCandidates = candidates;
+            }
+
+            // Kết nối lại sau khi rớt mạng: nhận lại phòng và các tin bị lỡ thay vì đăng nhập mới
+            if (json.has("resumeToken")
+                    && server.getRoomManager().resume(this, json.get("resumeToken").getAsString())) {
+                return;
+            }
             
             System.out.println("Player logged in: " + playerName + " (P2P Port: " + p2pPort + ")");
+            resumeToken = UUID.randomUUID().toString();
+            server.getRoomManager().registerSession(this);
             
             // Gửi thông báo đăng nhập thành công về cho Client
             JsonObject response = new JsonObject();
             response.addProperty("event", "login_success");
+            response.addProperty("resumeToken", resumeToken);
+            response.addProperty("graceSeconds", RoomManager.GRACE_SECONDS);
             send(new Message("server", playerName, MessageType.SYSTEM, response.toString()));
             
             // Không tự động ghép cặp nữa
@@ -99,6 +141,12 @@ public class ClientHandler implements Runnable {
                         server.getRoomManager().joinPrivateRoom(this, roomId);
                     }
                 }
+                case "punch_result" -> {
+                    // Client báo kết quả đục lỗ NAT (không chuyển cho đối thủ)
+                    if (server.getRendezvous() != null && json.has("success")) {
+                        server.getRendezvous().recordResult(json.get("success").getAsBoolean());
+                    }
+                }
                 case "leave_room" -> {
                     server.getRoomManager().removeClient(this);
                     // Reset roomId for this client
@@ -115,19 +163,69 @@ public class ClientHandler implements Runnable {
     }
 
     public void send(Message msg) {
-        if (out != null) {
-            out.println(msg.toJson());
+        send(msg.toJson());
+    }
+
+    private synchronized void send(String frame) {
+        if (resumedBy != null) {
+            resumedBy.send(frame);
+        } else if (detached) {
+            if (missed.size() == MAX_MISSED_MESSAGES) missed.removeFirst();
+            missed.addLast(frame);
+        } else if (out != null) {
+            out.println(frame);
         }
     }
 
     private void cleanup() {
-        server.getRoomManager().removeClient(this);
+        // Không xóa khỏi phòng ngay: RoomManager giữ chỗ trong thời gian ân hạn để client kết nối lại
+        server.getRoomManager().detach(this);
+        try { socket.close(); } catch (IOException e) {}
+    }
+
+    synchronized void markDetached() {
+        detached = true;
+    }
+
+    synchronized boolean isDetached() {
+        return detached && resumedBy == null;
+    }
+
+    synchronized boolean isResumed() {
+        return resumedBy != null;
+    }
+
+    /**
+     * Nhận phiên của kết nối cũ (cùng resume token): cùng tên, cùng phòng.
+     */
+    void adopt(ClientHandler old) {
+        this.playerName = old.playerName;
+        this.roomId = old.roomId;
+        this.resumeToken = old.resumeToken;
+        if (this.p2pPort == 0) this.p2pPort = old.p2pPort;
+        if (this.p2pCandidates.isEmpty()) this.p2pCandidates = old.p2pCandidates;
+    }
+
+    /**
+     * Chuyển phiên sang kết nối mới: gửi lại các tin đã lỡ theo thứ tự, từ nay mọi tin gửi tới đây đều chuyển tiếp.
+     * Kết nối cũ (nếu server chưa phát hiện nó đã chết) bị đóng.
+     */
+    synchronized int handOver(ClientHandler successor) {
+        int flushed = missed.size();
+        for (String frame : missed) {
+            successor.send(frame);
+        }
+        missed.clear();
+        resumedBy = successor;
         try { socket.close(); } catch (IOException e) {}
+        return flushed;
     }
 
     public String getPlayerName() { return playerName; }
     public int getP2pPort() { return p2pPort; }
+    public List<String> getP2pCandidates() { return p2pCandidates; }
     public String getIpAddress() { return socket.getInetAddress().getHostAddress(); }
     public String getRoomId() { return roomId; }
+    public String getResumeToken() { return resumeToken; }
     public void setRoomId(String roomId) { this.roomId = roomId; }
 }
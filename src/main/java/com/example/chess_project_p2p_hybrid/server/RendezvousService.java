@@ -0,0 +1,190 @@
+package com.example.chess_project_p2p_hybrid.server;
+
+import com.example.chess_project_p2p_hybrid.client.connection.RendezvousProtocol;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dịch vụ rendezvous UDP để hai client sau NAT nối P2P trực tiếp thay vì đi qua Relay.
+ * Khi tạo phòng, RoomManager mở một cặp token (gửi kèm PEER_INFO). Mỗi client gửi REGISTER từ chính socket P2P;
+ * server ghi lại địa chỉ nguồn nhìn thấy (địa chỉ ngoài NAT). Đủ hai bên thì gửi cho mỗi bên địa chỉ của bên kia,
+ * hai bên cùng gửi HELLO cho nhau và NAT mở lỗ theo hai chiều.
+ * Cặp token sống cùng phòng (RoomManager gọi closePairing khi phòng đóng), nên client kết nối lại Server giữa ván
+ * vẫn đăng ký lại được; mỗi REGISTER mới lại gửi địa chỉ cho cả hai bên.
+ * <p>
+ * Client báo kết quả qua sự kiện SYSTEM "punch_result". Thống kê (metrics()) được ghi log mỗi phút và trả lời
+ * gói STATS để công cụ bên ngoài lấy về.
+ */
+public class RendezvousService implements Runnable, AutoCloseable {
+    private static final long METRICS_LOG_INTERVAL_MILLIS = 60_000;
+
+    private final DatagramSocket socket;
+    private final Map<String, Pairing> pairings = new ConcurrentHashMap<>();
+
+    private final AtomicLong registrations = new AtomicLong();
+    private final AtomicLong coordinated = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private static final class Pairing {
+        final String roomId;
+        final String[] tokens;
+        final InetSocketAddress[] endpoints = new InetSocketAddress[2];
+        boolean counted;
+        boolean closed;
+
+        Pairing(String roomId, String[] tokens) {
+            this.roomId = roomId;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Thống kê đục lỗ NAT.
+     *
+     * @param registrations số gói REGISTER hợp lệ
+     * @param coordinated   số cặp đã được gửi địa chỉ cho nhau
+     * @param successes     số client báo nối P2P thành công
+     * @param failures      số client báo thất bại
+     * @param expired       số cặp đóng cùng phòng khi chưa đủ hai bên đăng ký
+     */
+    public record Metrics(long registrations, long coordinated, long successes, long failures, long expired) {
+        public double successRate() {
+            long reported = successes + failures;
+            return reported == 0 ? 0 : (double) successes / reported;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("registrations=%d coordinated=%d successes=%d failures=%d expired=%d success_rate=%.3f",
+                    registrations, coordinated, successes, failures, expired, successRate());
+        }
+    }
+
+    public RendezvousService(int port) throws SocketException {
+        socket = new DatagramSocket(port);
+        socket.setSoTimeout(1000);
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Mở một cặp token cho hai người chơi của phòng (thứ tự như danh sách thành viên).
+     */
+    public String[] openPairing(String roomId) {
+        String[] tokens = {UUID.randomUUID().toString(), UUID.randomUUID().toString()};
+        Pairing pairing = new Pairing(roomId, tokens);
+        pairings.put(tokens[0], pairing);
+        pairings.put(tokens[1], pairing);
+        return tokens;
+    }
+
+    /**
+     * Phòng đã đóng: bỏ cặp token của phòng.
+     */
+    public void closePairing(String roomId) {
+        pairings.values().removeIf(p -> {
+            if (!p.roomId.equals(roomId)) return false;
+            // Mỗi cặp nằm dưới hai token: chỉ đếm một lần
+            synchronized (p) {
+                if (!p.counted && !p.closed) expired.incrementAndGet();
+                p.closed = true;
+            }
+            return true;
+        });
+    }
+
+    public void recordResult(boolean success) {
+        (success ? successes : failures).incrementAndGet();
+    }
+
+    public Metrics metrics() {
+        return new Metrics(registrations.get(), coordinated.get(), successes.get(), failures.get(), expired.get());
+    }
+
+    @Override
+    public void run() {
+        byte[] data = new byte[1500];
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        long nextLog = System.currentTimeMillis() + METRICS_LOG_INTERVAL_MILLIS;
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(data.length);
+                socket.receive(packet);
+                handle(ByteBuffer.wrap(data, 0, packet.getLength()), (InetSocketAddress) packet.getSocketAddress());
+            } catch (SocketTimeoutException e) {
+                // Hết thời gian chờ: chỉ để ghi log
+            } catch (IOException e) {
+                if (!socket.isClosed()) System.err.println("[Rendezvous] Receive error: " + e.getMessage());
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextLog) {
+                System.out.println("[Rendezvous] " + metrics());
+                nextLog = now + METRICS_LOG_INTERVAL_MILLIS;
+            }
+        }
+    }
+
+    private void handle(ByteBuffer packet, InetSocketAddress from) throws IOException {
+        if (!packet.hasRemaining()) return;
+        byte type = packet.get();
+        if (type == RendezvousProtocol.STATS) {
+            byte[] text = metrics().toString().getBytes(StandardCharsets.UTF_8);
+            send(ByteBuffer.allocate(text.length + 1).put(RendezvousProtocol.STATS).put(text), from);
+            return;
+        }
+        if (type != RendezvousProtocol.REGISTER) return;
+
+        String token = StandardCharsets.UTF_8.decode(packet).toString();
+        Pairing pairing = pairings.get(token);
+        if (pairing == null) return;
+        registrations.incrementAndGet();
+
+        InetSocketAddress a, b;
+        synchronized (pairing) {
+            int slot = token.equals(pairing.tokens[0]) ? 0 : 1;
+            pairing.endpoints[slot] = from;
+            a = pairing.endpoints[0];
+            b = pairing.endpoints[1];
+            if (a == null || b == null) return;
+            if (!pairing.counted) {
+                pairing.counted = true;
+                coordinated.incrementAndGet();
+                System.out.println("[Rendezvous] Room " + pairing.roomId + ": " + a + " <-> " + b);
+            }
+        }
+        // Gửi lại cho cả hai mỗi lần có REGISTER: gói trước có thể đã mất
+        sendEndpoint(a, b);
+        sendEndpoint(b, a);
+    }
+
+    private void sendEndpoint(InetSocketAddress to, InetSocketAddress peer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        buffer.put(RendezvousProtocol.PEER_ENDPOINT);
+        RendezvousProtocol.putAddress(buffer, peer);
+        send(buffer, to);
+    }
+
+    private void send(ByteBuffer buffer, InetSocketAddress to) throws IOException {
+        socket.send(new DatagramPacket(buffer.array(), buffer.position(), to));
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
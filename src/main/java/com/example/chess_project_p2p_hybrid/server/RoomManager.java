@@ -3,6 +3,7 @@ package com.example.chess_project_p2p_hybrid.server;
 import com.example.chess_project_p2p_hybrid.client.connection.Message;
 import com.example.chess_project_p2p_hybrid.client.connection.MessageType;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
@@ -10,13 +11,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class RoomManager {
     private final Map<String, List<ClientHandler>> rooms = new ConcurrentHashMap<>();
     private ClientHandler waitingClient = null; // Hàng đợi đơn giản (1 người)
+    private final RendezvousService rendezvous; // null: không hỗ trợ đục lỗ NAT
+
+    // Người chơi rớt mạng khi đang trong phòng được giữ chỗ trong thời gian này để kết nối lại bằng resume token
+    static final int GRACE_SECONDS = 30;
+    private final Map<String, ClientHandler> sessions = new ConcurrentHashMap<>(); // resume token -> phiên
+    private final ScheduledExecutorService graceTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-grace");
+        t.setDaemon(true);
+        return t;
+    });
     
     private static final Gson GSON = new Gson();
 
+    public RoomManager(RendezvousService rendezvous) {
+        this.rendezvous = rendezvous;
+    }
+
     public synchronized void quickMatch(ClientHandler client) {
         if (waitingClient != null && waitingClient != client) {
             // Ghép cặp
@@ -58,22 +76,126 @@ public class RoomManager {
         
         // 2. Trao đổi thông tin P2P (PEER_INFO)
         // P1 (White) sẽ chủ động kết nối tới P2 (Black)
-        sendPeerInfo(p1, p2, true);  // P1 connect to P2
-        sendPeerInfo(p2, p1, false); // P2 wait
+        // Kèm token rendezvous để client UDP đục lỗ NAT khi kết nối thẳng không được
+        String[] tokens = rendezvous != null ? rendezvous.openPairing(roomId) : new String[2];
+        sendPeerInfo(p1, p2, true, tokens[0]);  // P1 connect to P2
+        sendPeerInfo(p2, p1, false, tokens[1]); // P2 wait
     }
 
-    private void sendPeerInfo(ClientHandler recipient, ClientHandler target, boolean isHost) {
+    private void sendPeerInfo(ClientHandler recipient, ClientHandler target, boolean isHost, String punchToken) {
         JsonObject json = new JsonObject();
         // Sử dụng IP mà Server nhìn thấy (Public IP nếu qua Internet)
         // thay vì IP mà Client tự báo (thường là Local IP)
         json.addProperty("host", target.getIpAddress());
         json.addProperty("port", target.getP2pPort());
         json.addProperty("isHost", isHost);
+        json.add("candidates", candidates(recipient, target));
+        if (punchToken != null) {
+            json.addProperty("punchToken", punchToken);
+            json.addProperty("rendezvousPort", rendezvous.getPort());
+        }
         
         recipient.send(new Message("server", recipient.getPlayerName(), MessageType.PEER_INFO, json.toString()));
     }
 
-    public void removeClient(ClientHandler client) {
+    /**
+     * Địa chỉ ứng viên của target theo thứ tự nên thử: cùng IP ngoài (cùng mạng LAN sau một NAT, NAT thường
+     * không cho đi vòng ra ngoài rồi vào lại) thì địa chỉ LAN trước, nếu không thì IP server nhìn thấy trước.
+     */
+    private static JsonArray candidates(ClientHandler recipient, ClientHandler target) {
+        List<String> ordered = new ArrayList<>();
+        String observed = target.getIpAddress();
+        boolean sameNetwork = observed.equals(recipient.getIpAddress());
+        if (!sameNetwork) ordered.add(observed);
+        for (String address : target.getP2pCandidates()) {
+            if (!ordered.contains(address)) ordered.add(address);
+        }
+        if (!ordered.contains(observed)) ordered.add(observed);
+        JsonArray array = new JsonArray();
+        ordered.forEach(array::add);
+        return array;
+    }
+
+    public void registerSession(ClientHandler client) {
+        sessions.put(client.getResumeToken(), client);
+    }
+
+    /**
+     * Kết nối của client đã đóng. Nếu đang trong phòng thì giữ chỗ GRACE_SECONDS giây (tin relay được đệm lại)
+     * và báo đối thủ chờ; hết hạn mà chưa kết nối lại mới xóa khỏi phòng như trước.
+     */
+    public synchronized void detach(ClientHandler client) {
+        if (client.isResumed()) return; // Phiên đã chuyển sang kết nối mới
+        String roomId = client.getRoomId();
+        if (roomId == null || !rooms.containsKey(roomId) || client.getResumeToken() == null) {
+            endSession(client);
+            return;
+        }
+        client.markDetached();
+        System.out.println("Player " + client.getPlayerName() + " disconnected, holding room " + roomId
+                + " for " + GRACE_SECONDS + "s");
+        JsonObject notice = new JsonObject();
+        notice.addProperty("event", "opponent_disconnected");
+        notice.addProperty("graceSeconds", GRACE_SECONDS);
+        notifyOthers(client, roomId, notice.toString());
+        graceTimer.schedule(() -> expire(client), GRACE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private synchronized void expire(ClientHandler client) {
+        if (!client.isDetached()) return;
+        System.out.println("Grace period expired for " + client.getPlayerName());
+        endSession(client);
+    }
+
+    private void endSession(ClientHandler client) {
+        if (client.getResumeToken() != null) sessions.remove(client.getResumeToken(), client);
+        removeClient(client);
+    }
+
+    /**
+     * Kết nối mới đăng nhập bằng resume token: thay kết nối cũ trong phòng, gửi login_success (resumed)
+     * rồi các tin đã lỡ theo đúng thứ tự.
+     * @return false nếu token không hợp lệ hoặc đã hết hạn (client đăng nhập như mới)
+     */
+    public synchronized boolean resume(ClientHandler client, String token) {
+        ClientHandler old = sessions.get(token);
+        if (old == null || old == client) return false;
+        client.adopt(old);
+        sessions.put(token, client);
+        String roomId = old.getRoomId();
+        List<ClientHandler> members = roomId != null ? rooms.get(roomId) : null;
+        if (members != null) {
+            int index = members.indexOf(old);
+            if (index >= 0) members.set(index, client);
+        }
+        if (waitingClient == old) waitingClient = client;
+
+        JsonObject response = new JsonObject();
+        response.addProperty("event", "login_success");
+        response.addProperty("resumed", true);
+        response.addProperty("resumeToken", token);
+        response.addProperty("graceSeconds", GRACE_SECONDS);
+        if (roomId != null) response.addProperty("roomId", roomId);
+        client.send(new Message("server", client.getPlayerName(), MessageType.SYSTEM, response.toString()));
+        int flushed = old.handOver(client);
+        System.out.println("Player " + client.getPlayerName() + " resumed session"
+                + (roomId != null ? " in room " + roomId : "") + ", flushed " + flushed + " missed message(s)");
+
+        if (members != null) notifyOthers(client, roomId, "{\"event\":\"opponent_resumed\"}");
+        return true;
+    }
+
+    private void notifyOthers(ClientHandler client, String roomId, String content) {
+        List<ClientHandler> members = rooms.get(roomId);
+        if (members == null) return;
+        for (ClientHandler other : members) {
+            if (other != client) {
+                other.send(new Message("server", other.getPlayerName(), MessageType.SYSTEM, content));
+            }
+        }
+    }
+
+    public synchronized void removeClient(ClientHandler client) {
         if (waitingClient == client) {
             waitingClient = null;
         }
@@ -89,6 +211,7 @@ public class RoomManager {
             
             if (members.isEmpty()) {
                 rooms.remove(roomId);
+                if (rendezvous != null) rendezvous.closePairing(roomId);
             }
         }
     }
@@ -0,0 +1,209 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import com.example.chess_project_p2p_hybrid.server.ChessServer;
+import com.example.chess_project_p2p_hybrid.server.ClientHandler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Đo số byte cấp phát cho mỗi frame nhận được (ThreadMXBean.getThreadAllocatedBytes của luồng đọc), sau một lượt
+ * làm nóng cho JIT và cache chuỗi:
+ * - Trong bộ nhớ: readLine() + Gson (cách đọc cũ) so với FrameReader, với frame điều khiển ở trạng thái ổn định
+ *   (PING/PONG/ACK, người nhận recycle()) và với MOVE (giao cho game nên không recycle, content là JSON riêng mỗi nước).
+ * - Vòng đọc thật trên socket localhost: ServerConnection, DirectPeer và ClientHandler của server, chỉ frame điều khiển.
+ * <p>
+ * Nằm trong mã test, không đóng gói cùng ứng dụng. Chạy: FrameReaderBench [số frame, mặc định 200000]
+ */
+public final class FrameReaderBench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static long sink; // Giữ kết quả giải mã để JIT không bỏ qua
+
+    private FrameReaderBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        byte[] control = encode(frames, FrameReaderBench::control);
+        byte[] moves = encode(frames / 10, FrameReaderBench::move);
+        System.out.printf("%d control frames (%.0f B avg), %d MOVE frames (%.0f B avg), bytes allocated per frame:%n",
+                frames, (double) control.length / frames, frames / 10, (double) moves.length / (frames / 10));
+        System.out.printf("  %-22s control %7.1f   MOVE %7.1f%n", "readLine + Gson",
+                perFrame(() -> gson(control), frames), perFrame(() -> gson(moves), frames / 10));
+        FrameReader reader = new FrameReader();
+        System.out.printf("  %-22s control %7.1f   MOVE %7.1f%n", "FrameReader",
+                perFrame(() -> frameReader(reader, control, true), frames),
+                perFrame(() -> frameReader(reader, moves, false), frames / 10));
+        System.out.printf("  %-22s control %7.1f%n", "ServerConnection loop", serverConnection(frames));
+        System.out.printf("  %-22s control %7.1f%n", "DirectPeer loop", directPeer(frames));
+        System.out.printf("  %-22s control %7.1f%n", "ClientHandler loop", clientHandler(control, frames));
+        System.exit(0);
+    }
+
+    // Frame ở trạng thái ổn định: PING/PONG (mốc thời gian ở seq) và ACK tích lũy
+    private static Message control(int i) {
+        Message message = switch (i % 3) {
+            case 0 -> new Message(null, "opponent", MessageType.PING, null);
+            case 1 -> new Message(null, "opponent", MessageType.PONG, null);
+            default -> new Message("bob", "alice", MessageType.ACK, null);
+        };
+        message.setStream(i % 3 == 2 ? 7_341_925_083_112L : 0);
+        message.setSeq(i % 3 == 2 ? i : 1_000_000_000L + i * 500_000L);
+        return message;
+    }
+
+    // Giống MainController.sendMoveToPeer: content là JSON của nước đi kèm đồng hồ
+    private static Message move(int i) {
+        String json = "{\"fromRow\":" + (i % 8) + ",\"fromCol\":4,\"toRow\":" + ((i + 2) % 8)
+                + ",\"toCol\":4,\"whiteTime\":" + (600 - i % 600) + ",\"blackTime\":" + (600 - i % 599) + "}";
+        Message message = new Message("alice", "opponent", MessageType.MOVE, json);
+        message.setStream(7_341_925_083_112L);
+        message.setSeq(i + 1);
+        return message;
+    }
+
+    private static byte[] encode(int count, IntFunction<Message> factory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.writeBytes((factory.apply(i).toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private interface Pass {
+        void run() throws IOException;
+    }
+
+    // Lượt đầu làm nóng, lượt sau đo trên luồng hiện tại
+    private static double perFrame(Pass pass, int frames) throws IOException {
+        pass.run();
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        pass.run();
+        return (double) (THREADS.getCurrentThreadAllocatedBytes() - before) / frames;
+    }
+
+    private static void gson(byte[] bytes) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            Message msg = Message.fromJson(line);
+            sink += msg.getSeq() + (msg.getContent() == null ? 0 : msg.getContent().length());
+        }
+    }
+
+    private static void frameReader(FrameReader reader, byte[] bytes, boolean recycle) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        while (reader.read(in) >= 0) {
+            Message msg;
+            while ((msg = reader.next()) != null) {
+                sink += msg.getSeq() + (msg.getContent() == null ? 0 : msg.getContent().length());
+                if (recycle) msg.recycle();
+            }
+        }
+    }
+
+    // Người nhận đo ngay trên luồng đọc: mốc đầu sau lượt làm nóng, mốc cuối ở frame cuối
+    private static final class Probe {
+        final int warmup;
+        final int total;
+        final CountDownLatch done = new CountDownLatch(1);
+        int received;
+        long start;
+        double result;
+
+        Probe(int frames) {
+            warmup = frames;
+            total = 2 * frames;
+        }
+
+        void accept(Message msg) {
+            sink += msg.getSeq();
+            msg.recycle();
+            received++;
+            if (received == warmup) {
+                start = THREADS.getCurrentThreadAllocatedBytes();
+            } else if (received == total) {
+                result = (double) (THREADS.getCurrentThreadAllocatedBytes() - start) / (total - warmup);
+                done.countDown();
+            }
+        }
+
+        double await() throws InterruptedException {
+            if (!done.await(60, TimeUnit.SECONDS)) throw new IllegalStateException("only " + received + " frames arrived");
+            return result;
+        }
+    }
+
+    private static double serverConnection(int frames) throws Exception {
+        byte[] bytes = encode(2 * frames, FrameReaderBench::control);
+        try (ServerSocket server = new ServerSocket(0)) {
+            ServerConnection connection = new ServerConnection("127.0.0.1", server.getLocalPort());
+            Probe probe = new Probe(frames);
+            connection.setOnMessageReceived(probe::accept);
+            connection.connect();
+            try (Socket socket = server.accept()) {
+                socket.getOutputStream().write(bytes);
+                return probe.await();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    private static double directPeer(int frames) throws Exception {
+        DirectPeer sender = new DirectPeer(0, Runnable::run), receiver = new DirectPeer(0, Runnable::run);
+        try {
+            CountDownLatch established = new CountDownLatch(2);
+            sender.setOnConnectionEstablished(established::countDown);
+            receiver.setOnConnectionEstablished(established::countDown);
+            // Runnable::run: callback chạy ngay trên luồng selector của bên nhận, nên đo được cả vòng đọc
+            Probe probe = new Probe(frames);
+            receiver.setOnMessageReceived(probe::accept);
+            sender.connect("127.0.0.1", receiver.getListeningPort());
+            if (!established.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("P2P not established");
+            for (int i = 0; i < 2 * frames; i++) sender.send(control(i));
+            return probe.await();
+        } finally {
+            sender.shutdown();
+            receiver.shutdown();
+        }
+    }
+
+    // ClientHandler không có callback: mỗi lượt kết thúc bằng LOGIN, lượt xong khi server trả login_success
+    private static double clientHandler(byte[] control, int frames) throws Exception {
+        ChessServer chessServer = new ChessServer();
+        try (ServerSocket server = new ServerSocket(0);
+             Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+            Thread handler = new Thread(new ClientHandler(server.accept(), chessServer), "bench-client-handler");
+            handler.setDaemon(true);
+            handler.start();
+            OutputStream out = client.getOutputStream();
+            BufferedReader replies = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            byte[] login = (new Message("bench", "server", MessageType.LOGIN, "{\"name\":\"bench\"}").toJson() + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            out.write(control);
+            out.write(login);
+            replies.readLine();
+            long start = THREADS.getThreadAllocatedBytes(handler.threadId());
+            out.write(control);
+            out.write(login);
+            replies.readLine();
+            // Gồm cả phần xử lý một LOGIN, chia đều cho số frame
+            return (double) (THREADS.getThreadAllocatedBytes(handler.threadId()) - start) / frames;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import com.example.chess_project_p2p_hybrid.server.RendezvousService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Đục lỗ NAT trên một máy: RendezvousService chạy ở port tạm, hai UdpPeer đứng sau hai NatSimulator.
+ */
+class HolePunchTest {
+    private static RendezvousService rendezvous;
+
+    @BeforeAll
+    static void startRendezvous() throws Exception {
+        rendezvous = new RendezvousService(0);
+        Thread server = new Thread(rendezvous, "rendezvous");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @AfterAll
+    static void stopRendezvous() {
+        rendezvous.close();
+    }
+
+    @Test
+    void coneNatIsPunchedAndCarriesMoves() throws Exception {
+        assertTrue(attempt(NatSimulator.Type.CONE, rendezvous.openPairing("cone")));
+    }
+
+    @Test
+    void symmetricNatFails() throws Exception {
+        assertFalse(attempt(NatSimulator.Type.SYMMETRIC, rendezvous.openPairing("symmetric")));
+    }
+
+    @Test
+    void pairingOutlivesFirstPunch() throws Exception {
+        // Kết nối lại Server giữa ván: peer và mapping NAT mới, đục lại bằng token cũ của phòng
+        String[] tokens = rendezvous.openPairing("resume");
+        assertTrue(attempt(NatSimulator.Type.CONE, tokens));
+        assertTrue(attempt(NatSimulator.Type.CONE, tokens));
+    }
+
+    private static boolean attempt(NatSimulator.Type type, String[] tokens) throws Exception {
+        UdpPeer a = new UdpPeer(0, Runnable::run), b = new UdpPeer(0, Runnable::run);
+        try (NatSimulator natA = new NatSimulator(type); NatSimulator natB = new NatSimulator(type)) {
+            InetSocketAddress server = new InetSocketAddress("127.0.0.1", rendezvous.getPort());
+            InetSocketAddress viaA = natA.alias(server), viaB = natB.alias(server);
+            CompletableFuture<Boolean> resultA = new CompletableFuture<>(), resultB = new CompletableFuture<>();
+            a.setOnPunchResult(resultA::complete);
+            b.setOnPunchResult(resultB::complete);
+            CountDownLatch moved = new CountDownLatch(1);
+            b.setOnMessageReceived(m -> {
+                if ("e2e4".equals(m.getContent())) moved.countDown();
+            });
+            a.punch(viaA.getHostString(), viaA.getPort(), tokens[0]);
+            b.punch(viaB.getHostString(), viaB.getPort(), tokens[1]);
+            boolean success = resultA.get(15, TimeUnit.SECONDS) & resultB.get(15, TimeUnit.SECONDS);
+            if (success) {
+                assertTrue(a.send(new Message("a", "b", MessageType.MOVE, "e2e4")));
+                assertTrue(moved.await(2, TimeUnit.SECONDS));
+            } else {
+                assertEquals(NatSimulator.Type.SYMMETRIC, type);
+                assertTrue(natA.dropped() + natB.dropped() > 0);
+            }
+            return success;
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NAT giả lập trên localhost, là một proxy UDP thật đứng trước một UdpPeer: peer không biết gì về nó.
+ * Mỗi địa chỉ ngoài S mà host liên lạc có một cổng đại diện phía trong (alias). Gói host gửi tới alias(S) được NAT
+ * gửi ra S từ socket của một mapping (đổi port nguồn), gói S gửi vào mapping được chuyển cho host như thể đến từ
+ * alias(S). Địa chỉ đối thủ trong gói PEER_ENDPOINT được đổi thành alias tương ứng (như ALG của NAT thật),
+ * nếu không host sẽ gửi thẳng, vòng qua NAT.
+ * <p>
+ * Gói từ ngoài vào chỉ được cho qua nếu mapping đó đã từng gửi tới đúng ip:port nguồn (port-restricted),
+ * nên hai bên phải cùng gửi thì mới mở được lỗ.
+ * - CONE: một mapping cho mọi đích, địa chỉ ngoài server nhìn thấy cũng là địa chỉ đối thủ dùng → đục lỗ được.
+ * - SYMMETRIC: mỗi đích một mapping mới, địa chỉ server báo cho đối thủ không còn đúng → đục lỗ thất bại.
+ */
+final class NatSimulator implements AutoCloseable {
+
+    enum Type { CONE, SYMMETRIC }
+
+    private static final InetSocketAddress ANY_DESTINATION = new InetSocketAddress(0);
+
+    private final Type type;
+    private final Map<InetSocketAddress, Alias> aliases = new ConcurrentHashMap<>();
+    private final Map<InetSocketAddress, Mapping> mappings = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile InetSocketAddress host;
+    private volatile boolean running = true;
+
+    // Cổng phía trong đại diện cho một địa chỉ ngoài
+    private final class Alias {
+        final InetSocketAddress outside;
+        final DatagramChannel inside;
+
+        Alias(InetSocketAddress outside) throws IOException {
+            this.outside = outside;
+            inside = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            start(this::outbound, "nat-inside");
+        }
+
+        private void outbound() {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (running) {
+                try {
+                    buffer.clear();
+                    host = (InetSocketAddress) inside.receive(buffer);
+                    Mapping mapping = mappingFor(outside);
+                    mapping.permitted.add(outside);
+                    mapping.external.send(buffer.flip(), outside);
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class Mapping {
+        final DatagramChannel external;
+        // Các đích mapping này đã gửi tới: chỉ chúng được gửi ngược vào
+        final Set<InetSocketAddress> permitted = ConcurrentHashMap.newKeySet();
+
+        Mapping() throws IOException {
+            external = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+            start(this::inbound, "nat-outside");
+        }
+
+        private void inbound() {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (running) {
+                try {
+                    buffer.clear();
+                    InetSocketAddress from = (InetSocketAddress) external.receive(buffer);
+                    InetSocketAddress to = host;
+                    if (to == null || !permitted.contains(from)) {
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    buffer.flip();
+                    ByteBuffer packet = buffer.get(0) == RendezvousProtocol.PEER_ENDPOINT
+                            ? rewriteEndpoint(buffer) : buffer;
+                    aliasFor(from).inside.send(packet, to);
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    NatSimulator(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Địa chỉ phía trong mà host dùng để gửi tới địa chỉ ngoài outside.
+     */
+    InetSocketAddress alias(InetSocketAddress outside) throws IOException {
+        return (InetSocketAddress) aliasFor(outside).inside.getLocalAddress();
+    }
+
+    /**
+     * Số gói từ ngoài bị chặn vì chưa có lỗ.
+     */
+    long dropped() {
+        return dropped.get();
+    }
+
+    private ByteBuffer rewriteEndpoint(ByteBuffer packet) throws IOException {
+        packet.position(1);
+        InetSocketAddress peer = RendezvousProtocol.getAddress(packet);
+        if (peer == null) return packet.rewind();
+        ByteBuffer rewritten = ByteBuffer.allocate(32).put(RendezvousProtocol.PEER_ENDPOINT);
+        RendezvousProtocol.putAddress(rewritten, alias(peer));
+        return rewritten.flip();
+    }
+
+    private synchronized Alias aliasFor(InetSocketAddress outside) throws IOException {
+        Alias alias = aliases.get(outside);
+        if (alias == null) {
+            alias = new Alias(outside);
+            aliases.put(outside, alias);
+        }
+        return alias;
+    }
+
+    private synchronized Mapping mappingFor(InetSocketAddress destination) throws IOException {
+        InetSocketAddress key = type == Type.CONE ? ANY_DESTINATION : destination;
+        Mapping mapping = mappings.get(key);
+        if (mapping == null) {
+            mapping = new Mapping();
+            mappings.put(key, mapping);
+        }
+        return mapping;
+    }
+
+    private static void start(Runnable loop, String name) {
+        Thread t = new Thread(loop, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        for (Alias alias : aliases.values()) alias.inside.close();
+        for (Mapping mapping : mappings.values()) mapping.external.close();
+    }
+}
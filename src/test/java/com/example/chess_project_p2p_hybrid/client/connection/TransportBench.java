@@ -0,0 +1,157 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * So sánh độ trễ đuôi (p50/p99/max) của nước đi qua DirectPeer (TCP) và UdpPeer trên đường truyền mất gói giả lập.
+ * Hai peer nói chuyện qua một proxy cục bộ thêm độ trễ một chiều và bỏ ngẫu nhiên gói:
+ * - UDP: proxy bỏ hẳn datagram (mỗi chiều), lớp tin cậy của UdpPeer tự gửi lại.
+ * - TCP: không bỏ được segment từ user space nên proxy mô phỏng việc TCP gửi lại: đoạn "mất" tới trễ thêm
+ *   tcpRecovery ms (mặc định 200 = RTO tối thiểu của Linux) và mọi byte sau nó phải chờ theo (head-of-line blocking).
+ * <p>
+ * Chạy: TransportBench [tỉ lệ mất, mặc định 0.05] [độ trễ một chiều ms, mặc định 10] [số nước, mặc định 300]
+ * [tcpRecovery ms, mặc định 200]
+ */
+public final class TransportBench {
+    private static final long SEND_INTERVAL_MILLIS = 20;
+
+    private TransportBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double loss = args.length > 0 ? Double.parseDouble(args[0]) : 0.05;
+        int delay = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        int tcpRecovery = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        System.out.printf("loss %.1f%%, one-way delay %d ms, %d moves every %d ms, TCP recovery %d ms%n",
+                loss * 100, delay, moves, SEND_INTERVAL_MILLIS, tcpRecovery);
+
+        DirectPeer tcpA = new DirectPeer(0, Runnable::run), tcpB = new DirectPeer(0, Runnable::run);
+        try (TcpLossProxy proxy = new TcpLossProxy(tcpB.getListeningPort(), delay, loss, tcpRecovery, 1)) {
+            report("TCP", measure(tcpA, tcpB, () -> proxy.port, moves));
+        } finally {
+            tcpA.shutdown();
+            tcpB.shutdown();
+        }
+
+        UdpPeer udpA = new UdpPeer(0, Runnable::run), udpB = new UdpPeer(0, Runnable::run);
+        try (UdpLossProxy proxy = new UdpLossProxy(udpB.getListeningPort(), delay, loss, 1)) {
+            report("UDP", measure(udpA, udpB, () -> proxy.port, moves));
+            System.out.printf("     retransmits %d (fast %d), duplicates dropped %d%n",
+                    udpA.retransmits(), udpA.fastRetransmits(), udpB.duplicates());
+        } finally {
+            udpA.shutdown();
+            udpB.shutdown();
+        }
+    }
+
+    // Gửi từng nước từ a tới b (qua proxy), trả về độ trễ một chiều (ns) của từng nước
+    private static long[] measure(PeerTransport a, PeerTransport b, Supplier<Integer> proxyPort, int moves)
+            throws InterruptedException {
+        long[] latencies = new long[moves];
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch received = new CountDownLatch(moves);
+        a.setOnConnectionEstablished(connected::countDown);
+        b.setOnMessageReceived(m -> {
+            String[] parts = m.getContent().split(":");
+            latencies[Integer.parseInt(parts[0])] = System.nanoTime() - Long.parseLong(parts[1]);
+            received.countDown();
+        });
+        a.connect("127.0.0.1", proxyPort.get());
+        if (!connected.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Peers did not connect");
+
+        for (int i = 0; i < moves; i++) {
+            a.send(new Message("bench", "peer", MessageType.MOVE, i + ":" + System.nanoTime()));
+            Thread.sleep(SEND_INTERVAL_MILLIS);
+        }
+        if (!received.await(30, TimeUnit.SECONDS)) throw new IllegalStateException("Moves were lost");
+        return latencies;
+    }
+
+    private static void report(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s  p50 %6.1f ms  p90 %6.1f ms  p99 %6.1f ms  max %6.1f ms%n", name,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Proxy TCP: mỗi lần đọc được (thường là một segment vì TCP_NODELAY) được giao lại sau delay ms;
+     * với xác suất loss thì trễ thêm recovery ms, và không đoạn nào sau nó được giao trước (giữ thứ tự như TCP).
+     */
+    private static final class TcpLossProxy implements AutoCloseable {
+        final int port;
+        private final ServerSocket server;
+        // Một luồng: các đoạn cùng thời điểm giao vẫn giữ đúng thứ tự
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        TcpLossProxy(int targetPort, int delay, double loss, int recovery, long seed) throws IOException {
+            server = new ServerSocket(0);
+            port = server.getLocalPort();
+            Thread t = new Thread(() -> {
+                try {
+                    Socket client = server.accept();
+                    Socket target = new Socket("127.0.0.1", targetPort);
+                    client.setTcpNoDelay(true);
+                    target.setTcpNoDelay(true);
+                    pump(client.getInputStream(), target.getOutputStream(), delay, loss, recovery, new Random(seed));
+                    pump(target.getInputStream(), client.getOutputStream(), delay, loss, recovery, new Random(seed + 1));
+                } catch (IOException ignored) {
+                }
+            }, "tcp-loss-proxy");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void pump(InputStream in, OutputStream out, int delay, double loss, int recovery, Random random) {
+            Thread t = new Thread(() -> {
+                byte[] buffer = new byte[64 * 1024];
+                long lastDelivery = 0;
+                try {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        byte[] chunk = Arrays.copyOf(buffer, n);
+                        long due = System.nanoTime() + delay * 1_000_000L;
+                        if (random.nextDouble() < loss) due += recovery * 1_000_000L;
+                        // Head-of-line: đoạn sau không thể tới trước đoạn đang chờ gửi lại
+                        due = Math.max(due, lastDelivery);
+                        lastDelivery = due;
+                        scheduler.schedule(() -> {
+                            try {
+                                synchronized (out) {
+                                    out.write(chunk);
+                                    out.flush();
+                                }
+                            } catch (IOException ignored) {
+                            }
+                        }, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                } catch (IOException ignored) {
+                }
+            }, "tcp-loss-proxy-pump");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            scheduler.shutdownNow();
+            server.close();
+        }
+    }
+}
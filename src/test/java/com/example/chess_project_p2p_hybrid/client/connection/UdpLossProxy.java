@@ -0,0 +1,73 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Proxy UDP: client gửi tới port của proxy, proxy chuyển tiếp tới target bằng một socket riêng
+ * (nên target thấy proxy như một peer), mỗi datagram trễ delay ms và có thể bị bỏ.
+ */
+final class UdpLossProxy implements AutoCloseable {
+    final int port;
+    private final DatagramChannel front;
+    private final DatagramChannel back;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private volatile SocketAddress client;
+    private volatile boolean running = true;
+
+    UdpLossProxy(int targetPort, int delay, double loss, long seed) throws IOException {
+        front = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        back = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        port = ((InetSocketAddress) front.getLocalAddress()).getPort();
+        SocketAddress target = new InetSocketAddress("127.0.0.1", targetPort);
+        Random random = new Random(seed);
+        pump(front, () -> target, back, delay, loss, random, true);
+        pump(back, () -> client, front, delay, loss, new Random(seed + 1), false);
+    }
+
+    private void pump(DatagramChannel in, Supplier<SocketAddress> to, DatagramChannel out,
+                      int delay, double loss, Random random, boolean fromClient) {
+        Thread t = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (running) {
+                try {
+                    buffer.clear();
+                    SocketAddress from = in.receive(buffer);
+                    if (fromClient) client = from;
+                    if (random.nextDouble() < loss) continue;
+                    buffer.flip();
+                    ByteBuffer copy = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+                    SocketAddress destination = to.get();
+                    scheduler.schedule(() -> {
+                        try {
+                            out.send(copy, destination);
+                        } catch (IOException ignored) {
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (IOException | RejectedExecutionException e) {
+                    // Proxy đã đóng: gói tới muộn (vd. BYE) không còn chỗ giao
+                    return;
+                }
+            }
+        }, "udp-loss-proxy");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        scheduler.shutdownNow();
+        front.close();
+        back.close();
+    }
+}
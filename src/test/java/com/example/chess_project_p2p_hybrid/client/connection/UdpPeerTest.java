@@ -0,0 +1,51 @@
+package com.example.chess_project_p2p_hybrid.client.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UdpPeerTest {
+    private static final int MOVES = 300;
+
+    @Test
+    void deliversEveryMoveInOrderUnderLoss() throws Exception {
+        UdpPeer a = new UdpPeer(0, Runnable::run), b = new UdpPeer(0, Runnable::run);
+        try (UdpLossProxy proxy = new UdpLossProxy(b.getListeningPort(), 5, 0.2, 7)) {
+            CountDownLatch connected = new CountDownLatch(1);
+            CountDownLatch received = new CountDownLatch(MOVES);
+            List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+            a.setOnConnectionEstablished(connected::countDown);
+            b.setOnMessageReceived(m -> {
+                delivered.add(m.getContent());
+                received.countDown();
+            });
+            a.connect("127.0.0.1", proxy.port);
+            assertTrue(connected.await(10, TimeUnit.SECONDS), "peers did not connect");
+
+            List<String> sent = new ArrayList<>();
+            for (int i = 0; i < MOVES; i++) {
+                sent.add(Integer.toString(i));
+                // Gửi theo lô để có cả frame đang bay lẫn frame chờ trong cửa sổ gửi
+                a.queue(new Message("a", "b", MessageType.MOVE, sent.get(i)));
+                if (i % 10 == 9) {
+                    a.flush();
+                    Thread.sleep(5);
+                }
+            }
+            a.flush();
+            assertTrue(received.await(30, TimeUnit.SECONDS), "moves were lost");
+            assertEquals(sent, delivered);
+            assertTrue(a.retransmits() > 0, "proxy dropped nothing");
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class FenTest {
+
+    private static void assertRoundTrip(String fen) {
+        assertEquals(fen, Game.fromFen(fen).toFen());
+    }
+
+    private static void assertLoadsAs(String expected, String fen) {
+        assertEquals(expected, Game.fromFen(fen).toFen());
+    }
+
+    @Test
+    void validPositionsRoundTrip() {
+        assertRoundTrip(Game.START_FEN);
+        assertRoundTrip("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertRoundTrip("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertRoundTrip("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8");
+        assertRoundTrip("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10");
+        assertRoundTrip("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+        assertRoundTrip("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+    }
+
+    @Test
+    void castlingRightsWithoutKingOrRookAreDropped() {
+        assertLoadsAs("4k3/8/8/8/8/8/8/4K3 w - - 0 1", "4k3/8/8/8/8/8/8/4K3 w K - 0 1");
+        assertLoadsAs("r3k2r/8/8/8/8/8/8/R3K3 w Qkq - 0 1", "r3k2r/8/8/8/8/8/8/R3K3 w KQkq - 0 1");
+        assertLoadsAs("r3k2r/8/8/8/8/8/8/R2K3R w kq - 0 1", "r3k2r/8/8/8/8/8/8/R2K3R w KQkq - 0 1");
+    }
+
+    @Test
+    void castlingRightsNeverProduceCastlingMoves() {
+        Game game = Game.fromFen("4k3/8/8/8/8/8/8/4K3 w KQ - 0 1");
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        int n = game.generateLegalMoves(moves);
+        for (int i = 0; i < n; i++) {
+            MoveType type = PackedMove.type(moves[i]);
+            assertFalse(type == MoveType.CASTLE_KINGSIDE || type == MoveType.CASTLE_QUEENSIDE);
+        }
+    }
+
+    @Test
+    void impossibleEnPassantSquaresAreDropped() {
+        String expected = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+        // Sai hàng cho bên vừa đi
+        assertLoadsAs(expected, "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e6 0 1");
+        // Không có tốt vừa đi hai ô qua ô đó
+        assertLoadsAs(expected, "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq d3 0 1");
+        // Ô bị chiếm
+        assertLoadsAs("rnbqkbnr/pppppppp/8/8/4P3/4N3/PPPP1PPP/R1BQKBNR b KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/4P3/4N3/PPPP1PPP/R1BQKBNR b KQkq e3 0 1");
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import com.example.chess_project_p2p_hybrid.client.model.board.Board;
+import com.example.chess_project_p2p_hybrid.client.model.board.MoveGenerator;
+import com.example.chess_project_p2p_hybrid.client.model.piece.Color;
+
+/**
+ * Đếm số nút (perft) để kiểm tra bộ sinh nước đi với các thế cờ FEN chuẩn.
+ * Đi/hoàn tác trực tiếp trên Board, mỗi tầng dùng một buffer riêng nên không cấp phát trong lúc đếm.
+ */
+public final class Perft {
+
+    // {FEN, độ sâu, số nút mong đợi} — các thế cờ kiểm tra chuẩn (chessprogramming.org/Perft_Results)
+    private static final String[][] SUITE = {
+            {Game.START_FEN, "5", "4865609"},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "4", "4085603"},
+            {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", "6", "11030083"},
+            {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", "4", "422333"},
+            {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", "4", "2103487"},
+            {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", "4", "3894594"},
+    };
+
+    private final Board board;
+    private final MoveGenerator generator;
+    private int[][] buffers = new int[0][];
+
+    private Perft(Board board) {
+        this.board = board;
+        this.generator = new MoveGenerator(board);
+    }
+
+    /**
+     * Số nút lá ở độ sâu depth tính từ thế cờ FEN.
+     */
+    public static long perft(String fen, int depth) {
+        Game game = Game.fromFen(fen);
+        return new Perft(game.getBoard()).run(game.getTurn(), depth);
+    }
+
+    private long run(Color side, int depth) {
+        if (buffers.length < depth) {
+            buffers = new int[depth][PackedMove.MAX_MOVES];
+        }
+        return count(side, depth);
+    }
+
+    private long count(Color side, int depth) {
+        int[] moves = buffers[depth - 1];
+        generator.analyze(side);
+        int n = generator.generate(moves, 0);
+        if (depth == 1) return n;
+
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            board.applyMove(moves[i]);
+            nodes += count(side.opposite(), depth - 1);
+            board.undoMove();
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (String[] test : SUITE) {
+            int depth = Integer.parseInt(test[1]);
+            long expected = Long.parseLong(test[2]);
+            long start = System.nanoTime();
+            long nodes = perft(test[0], depth);
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            boolean pass = nodes == expected;
+            ok &= pass;
+            System.out.printf("%s  d%d = %d (%s) %d ms%n", test[0], depth, nodes, pass ? "OK" : "expected " + expected, ms);
+        }
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Perft ở độ sâu nông cho các thế cờ chuẩn (chessprogramming.org/Perft_Results).
+ * Độ sâu đầy đủ chạy bằng Perft.main.
+ */
+class PerftTest {
+
+    private static void assertPerft(String fen, long... expected) {
+        for (int depth = 1; depth <= expected.length; depth++) {
+            assertEquals(expected[depth - 1], Perft.perft(fen, depth), fen + " depth " + depth);
+        }
+    }
+
+    @Test
+    void startPosition() {
+        assertPerft(Game.START_FEN, 20, 400, 8902, 197281);
+    }
+
+    @Test
+    void kiwipete() {
+        assertPerft("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 48, 2039, 97862);
+    }
+
+    @Test
+    void endgameWithEnPassantPins() {
+        assertPerft("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 14, 191, 2812, 43238);
+    }
+
+    @Test
+    void promotionsAndCastlingThroughCheck() {
+        assertPerft("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 6, 264, 9467);
+    }
+
+    @Test
+    void position5() {
+        assertPerft("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 44, 1486, 62379);
+    }
+
+    @Test
+    void position6() {
+        assertPerft("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 46, 2079, 89890);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.chess_project_p2p_hybrid.client.model.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SanTest {
+
+    // SAN của mọi nước hợp lệ trong thế cờ fen
+    private static List<String> sanMoves(String fen) {
+        Game game = Game.fromFen(fen);
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        int n = game.generateLegalMoves(moves);
+        List<String> san = new ArrayList<>();
+        for (int i = 0; i < n; i++) san.add(San.toSan(game, moves[i]));
+        return san;
+    }
+
+    private static List<String> play(String... moves) {
+        Game game = new Game();
+        for (String san : moves) assertTrue(San.play(game, san), san);
+        return game.getSanHistory();
+    }
+
+    @Test
+    void disambiguatesByFile() {
+        List<String> san = sanMoves("4k3/8/8/8/8/8/8/R4RK1 w - - 0 1");
+        assertTrue(san.contains("Rad1"));
+        assertTrue(san.contains("Rfd1"));
+        assertTrue(san.contains("Rfe1+"));
+    }
+
+    @Test
+    void disambiguatesByRank() {
+        List<String> san = sanMoves("4k3/8/8/R7/8/8/8/R3K3 w - - 0 1");
+        assertTrue(san.contains("R5a3"));
+        assertTrue(san.contains("R1a3"));
+    }
+
+    @Test
+    void disambiguatesBySquare() {
+        // Ba hậu cùng tới e4: Qe1 khác cột, Qh4 khác hàng, Qh1 trùng cột với Qh4 và trùng hàng với Qe1
+        List<String> san = sanMoves("8/8/k7/8/7Q/8/8/K3Q2Q w - - 0 1");
+        assertTrue(san.contains("Qee4"));
+        assertTrue(san.contains("Q4e4"));
+        assertTrue(san.contains("Qh1e4"));
+    }
+
+    @Test
+    void pinnedPieceDoesNotNeedDisambiguation() {
+        // Mã c3 bị ghim vào vua e1 nên chỉ mã g1 đi được e2
+        List<String> san = sanMoves("4k3/8/8/b7/8/2N5/8/4K1N1 w - - 0 1");
+        assertTrue(san.contains("Ne2"));
+    }
+
+    @Test
+    void checkAndMateSuffixes() {
+        assertEquals(List.of("e4", "f5", "Qh5+"), play("e4", "f5", "Qh5+"));
+        assertEquals(List.of("e4", "e5", "Bc4", "Nc6", "Qh5", "Nf6", "Qxf7#"),
+                play("e4", "e5", "Bc4", "Nc6", "Qh5", "Nf6", "Qxf7#"));
+    }
+
+    @Test
+    void everyLegalMoveParsesBackFromItsSan() {
+        Game game = Game.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        int n = game.generateLegalMoves(moves);
+        for (int i = 0; i < n; i++) {
+            assertEquals(moves[i], San.parse(game, San.toSan(game, moves[i])));
+        }
+    }
+}